@@ -0,0 +1,33 @@
+package com.googlecode.jmxtrans;
+
+import com.googlecode.jmxtrans.model.ResultBatch;
+import com.googlecode.jmxtrans.model.Server;
+
+/**
+ * An OutputWriter which takes the results as an immutable batch instead of
+ * reading them off the Query.
+ *
+ * Writers which only implement {@link OutputWriter} keep working: they are
+ * given a copy of the query holding the results of the batch.
+ *
+ * Each run of a server's queries is wrapped in {@link #beginCycle(Server)}
+ * and {@link #endCycle(Server)}, so that a writer can borrow its connection or
+ * take its locks once per run and flush at the end instead of for every
+ * batch. Batches may also come without a cycle, ie: when the queries are run
+ * on their own. Servers sharing a writer can have their cycles overlap.
+ */
+public interface BatchOutputWriter extends OutputWriter {
+
+	public void doWrite(ResultBatch batch) throws Exception;
+
+	/**
+	 * Called before the results of a run of the server's queries.
+	 */
+	public void beginCycle(Server server) throws Exception;
+
+	/**
+	 * Called once the results of the run have all been given to
+	 * {@link #doWrite(ResultBatch)}, even when some of the queries failed.
+	 */
+	public void endCycle(Server server) throws Exception;
+}
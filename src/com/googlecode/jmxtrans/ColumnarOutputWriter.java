@@ -0,0 +1,10 @@
+package com.googlecode.jmxtrans;
+
+/**
+ * A BatchOutputWriter which only reads {@link com.googlecode.jmxtrans.model.ResultBatch#getMetrics()}.
+ *
+ * When every writer of a query is one of these, the worker code fills the
+ * MetricBatch directly and never builds Result objects.
+ */
+public interface ColumnarOutputWriter extends BatchOutputWriter {
+}
@@ -7,9 +7,12 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -21,10 +24,13 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.pool.KeyedObjectPool;
 import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.quartz.CronExpression;
 import org.quartz.CronTrigger;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
+import org.quartz.JobExecutionException;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.Trigger;
@@ -33,18 +39,39 @@ import org.quartz.impl.StdSchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.googlecode.jmxtrans.jmx.ManagedChangeFilter;
+import com.googlecode.jmxtrans.jmx.ManagedCircuitBreakers;
+import com.googlecode.jmxtrans.jmx.ManagedCollectionExecutor;
+import com.googlecode.jmxtrans.jmx.ManagedConnectionWarmup;
 import com.googlecode.jmxtrans.jmx.ManagedGenericKeyedObjectPool;
+import com.googlecode.jmxtrans.jmx.ManagedMBeanServerCache;
+import com.googlecode.jmxtrans.jmx.ManagedRunSpread;
 import com.googlecode.jmxtrans.jmx.ManagedJmxTransformerProcess;
+import com.googlecode.jmxtrans.jmx.ManagedWatchdog;
+import com.googlecode.jmxtrans.jmx.ManagedWheelScheduler;
 import com.googlecode.jmxtrans.jobs.ServerJob;
+import com.googlecode.jmxtrans.jobs.ServerRunStats;
 import com.googlecode.jmxtrans.model.JmxProcess;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.util.BaseOutputWriter;
+import com.googlecode.jmxtrans.util.ChangeFilter;
+import com.googlecode.jmxtrans.util.CircuitBreakers;
+import com.googlecode.jmxtrans.util.CollectionExecutor;
+import com.googlecode.jmxtrans.util.ConnectionWarmup;
+import com.googlecode.jmxtrans.util.JmxConnectionFactory;
 import com.googlecode.jmxtrans.util.JmxUtils;
 import com.googlecode.jmxtrans.util.LifecycleException;
 import com.googlecode.jmxtrans.util.OptionsException;
+import com.googlecode.jmxtrans.util.RunSpread;
 import com.googlecode.jmxtrans.util.ValidationException;
+import com.googlecode.jmxtrans.util.VirtualThreads;
 import com.googlecode.jmxtrans.util.WatchDir;
+import com.googlecode.jmxtrans.util.Watchdog;
 import com.googlecode.jmxtrans.util.WatchedCallback;
+import com.googlecode.jmxtrans.util.WheelScheduler;
+import com.googlecode.jmxtrans.util.WriterDispatcher;
+import com.googlecode.jmxtrans.util.WriterDispatcher.OverflowPolicy;
 
 /**
  * Main() class that takes an argument which is the directory to look in for
@@ -63,6 +90,15 @@ public class JmxTransformer implements WatchedCallback {
 	/** The seconds between server job runs. */
 	private int runPeriod = 60;
 
+	/**
+	 * Whether the first runs of the servers are spread across the run period
+	 * by the hash of their host and port, and how much random to add.
+	 */
+	private boolean staggerRuns = false;
+	private int jitterSeconds = 0;
+	private RunSpread runSpread;
+	private ManagedRunSpread runSpreadMBean;
+
 	/** Json file or dir to watch. */
 	private File jsonDirOrFile;
 
@@ -80,6 +116,82 @@ public class JmxTransformer implements WatchedCallback {
 	private Map<String, KeyedObjectPool> poolMap;
 	private Map<String, ManagedGenericKeyedObjectPool> poolMBeans;
 
+	/**
+	 * How long a pooled JMX connection may go unused before it is checked
+	 * with the server again.
+	 */
+	private int connectionValidationSeconds = (int) (JmxConnectionFactory.DEFAULT_VALIDATION_IDLE_MILLIS / 1000);
+
+	/**
+	 * How long to wait for the connections to the servers, made a few at a
+	 * time before they are scheduled. 0 to not make them ahead.
+	 */
+	private int warmupSeconds = ConnectionWarmup.DEFAULT_DEADLINE_SECONDS;
+	private int warmupConcurrency = ConnectionWarmup.DEFAULT_CONCURRENCY;
+	private ConnectionWarmup connectionWarmup;
+	private ManagedConnectionWarmup connectionWarmupMBean;
+
+	/**
+	 * Threads shared by all the servers for running their queries. The size
+	 * comes from the command line, then from the json, then the default.
+	 */
+	private CollectionExecutor queryExecutor;
+	private ManagedCollectionExecutor queryExecutorMBean;
+	private Integer numSharedQueryThreads;
+	private Integer jsonNumSharedQueryThreads;
+
+	/**
+	 * Whether the server runs and their queries go on virtual threads, when
+	 * the JDK has them. The server runs then leave the Quartz threads right
+	 * away.
+	 */
+	private boolean useVirtualThreads = false;
+	private ExecutorService serverRunExecutor;
+
+	/**
+	 * Whether the servers without a cronExpression are run off a timing wheel
+	 * instead of a Quartz trigger each.
+	 */
+	private boolean useTimingWheel = false;
+	private WheelScheduler wheelScheduler;
+	private ManagedWheelScheduler wheelSchedulerMBean;
+
+	/** The skipped, overrun and misfired server runs, since the process began. */
+	private final ServerRunStats runStats = new ServerRunStats();
+
+	private ManagedMBeanServerCache cacheMBean;
+
+	/** Skips the runs of the servers which can't be reached, for a while. */
+	private CircuitBreakers circuitBreakers;
+	private ManagedCircuitBreakers circuitBreakersMBean;
+
+	/** Abandons the server runs which overrun their deadlines. */
+	private Watchdog watchdog;
+	private ManagedWatchdog watchdogMBean;
+
+	/**
+	 * Queues between the queries and the OutputWriters, configured from the
+	 * json. Null when the writers run on the query threads.
+	 */
+	private WriterDispatcher writerDispatcher;
+	private Integer jsonWriterQueueSize;
+	private OverflowPolicy jsonWriterOverflowPolicy;
+
+	/**
+	 * The OutputWriters shared by the queries, by their json, and the ones
+	 * which were started and validated.
+	 */
+	private Map<JsonNode, OutputWriter> sharedWriters = new HashMap<JsonNode, OutputWriter>();
+	private Map<OutputWriter, Boolean> startedWriters = new IdentityHashMap<OutputWriter, Boolean>();
+	private Map<OutputWriter, Boolean> validatedWriters = new IdentityHashMap<OutputWriter, Boolean>();
+
+	/**
+	 * The counters of the sendOnChange filters of the started writers,
+	 * whether or not they are queued.
+	 */
+	private Map<OutputWriter, ManagedChangeFilter> changeFilterMBeans = new IdentityHashMap<OutputWriter, ManagedChangeFilter>();
+	private final ObjectMapper writerMapper = new ObjectMapper();
+
 	private List<Server> masterServersList = new ArrayList<Server>();
 
 	/** The shutdown hook. */
@@ -142,6 +254,16 @@ public class JmxTransformer implements WatchedCallback {
 
 				this.setupObjectPooling();
 
+				this.setupQueryExecutor();
+
+				this.setupRunSpread();
+
+				this.setupWheelScheduler();
+
+				this.setupConnectionWarmup();
+
+				this.setupCircuitBreakers();
+
 				this.startupSystem();
 
 			} catch (Exception e) {
@@ -202,6 +324,28 @@ public class JmxTransformer implements WatchedCallback {
 				}
 				this.serverScheduler = null;
 			}
+			if (this.wheelScheduler != null) {
+				JmxUtils.unregisterJMX(this.wheelSchedulerMBean);
+				this.wheelSchedulerMBean = null;
+				this.wheelScheduler.shutdown();
+				this.wheelScheduler = null;
+				log.debug("Shutdown wheel scheduler");
+			}
+
+			// Wait for the server runs handed off by the jobs
+			if (this.serverRunExecutor != null) {
+				this.serverRunExecutor.shutdown();
+				try {
+					if (!this.serverRunExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+						this.serverRunExecutor.shutdownNow();
+					}
+				} catch (InterruptedException e) {
+					this.serverRunExecutor.shutdownNow();
+					Thread.currentThread().interrupt();
+				}
+				this.serverRunExecutor = null;
+				log.debug("Shutdown server run executor");
+			}
 
 			// Shutdown the file watch service
 			if (this.watcher != null) {
@@ -210,6 +354,13 @@ public class JmxTransformer implements WatchedCallback {
 				log.debug("Shutdown watch service");
 			}
 
+			// Send what the writers still have queued, while their pools are still open
+			if (this.writerDispatcher != null) {
+				this.writerDispatcher.shutdown();
+				this.writerDispatcher = null;
+				log.debug("Shutdown writer dispatcher");
+			}
+
 			for (String key : poolMap.keySet()) {
 				JmxUtils.unregisterJMX(poolMBeans.get(key));
 			}
@@ -226,10 +377,50 @@ public class JmxTransformer implements WatchedCallback {
 			}
 			this.poolMap = null;
 
-			// Shutdown the outputwriters
+			// Shutdown the query executor
+			if (this.queryExecutorMBean != null) {
+				JmxUtils.unregisterJMX(this.queryExecutorMBean);
+				this.queryExecutorMBean = null;
+			}
+			if (this.queryExecutor != null) {
+				this.queryExecutor.shutdown();
+				this.queryExecutor = null;
+				log.debug("Shutdown query executor");
+			}
+			if (this.cacheMBean != null) {
+				JmxUtils.unregisterJMX(this.cacheMBean);
+				this.cacheMBean = null;
+			}
+			if (this.circuitBreakers != null) {
+				JmxUtils.unregisterJMX(this.circuitBreakersMBean);
+				this.circuitBreakersMBean = null;
+				this.circuitBreakers = null;
+			}
+			if (this.connectionWarmup != null) {
+				JmxUtils.unregisterJMX(this.connectionWarmupMBean);
+				this.connectionWarmupMBean = null;
+				this.connectionWarmup = null;
+			}
+			if (this.runSpread != null) {
+				JmxUtils.unregisterJMX(this.runSpreadMBean);
+				this.runSpreadMBean = null;
+				this.runSpread = null;
+			}
+			if (this.watchdog != null) {
+				JmxUtils.unregisterJMX(this.watchdogMBean);
+				this.watchdogMBean = null;
+				this.watchdog.shutdown();
+				this.watchdog = null;
+				log.debug("Shutdown watchdog");
+			}
+
+			// Shutdown the outputwriters, the shared ones only once
 			for (Server server : this.masterServersList) {
 				for (Query query : server.getQueries()) {
 					for (OutputWriter writer : query.getOutputWriters()) {
+						if (this.startedWriters.remove(writer) == null) {
+							continue;
+						}
 						try {
 							writer.stop();
 							log.debug("Stopped writer: " + writer.getClass().getSimpleName() + " for query: " + query);
@@ -239,7 +430,18 @@ public class JmxTransformer implements WatchedCallback {
 					}
 				}
 			}
+			for (ManagedChangeFilter mbean : this.changeFilterMBeans.values()) {
+				try {
+					JmxUtils.unregisterJMX(mbean);
+				} catch (Exception ex) {
+					log.error("Error unregistering change filter: " + mbean.getObjectName(), ex);
+				}
+			}
+			this.changeFilterMBeans.clear();
 			this.masterServersList.clear();
+			this.sharedWriters.clear();
+			this.startedWriters.clear();
+			this.validatedWriters.clear();
 
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
@@ -276,6 +478,7 @@ public class JmxTransformer implements WatchedCallback {
 		}
 		serverSchedFact.initialize(stream);
 		this.serverScheduler = serverSchedFact.getScheduler();
+		this.serverScheduler.addGlobalTriggerListener(this.runStats);
 		this.serverScheduler.start();
 	}
 
@@ -287,6 +490,14 @@ public class JmxTransformer implements WatchedCallback {
 
 		this.startupScheduler();
 		this.setupObjectPooling();
+		this.setupQueryExecutor();
+		this.setupRunSpread();
+		this.setupWheelScheduler();
+		this.setupConnectionWarmup();
+		this.setupCircuitBreakers();
+		this.jsonNumSharedQueryThreads = process.getNumSharedQueryThreads();
+		this.resizeQueryExecutor();
+		this.warmUpConnections();
 
 		this.processServersIntoJobs(this.serverScheduler);
 
@@ -303,6 +514,12 @@ public class JmxTransformer implements WatchedCallback {
 		// process all the json files into Server objects
 		this.processFilesIntoServers(this.getJsonFiles());
 
+		this.resizeQueryExecutor();
+		this.setupWriterDispatcher();
+
+		// connect to the new servers before their first runs
+		this.warmUpConnections();
+
 		// process the servers into jobs
 		this.processServersIntoJobs(this.serverScheduler);
 	}
@@ -314,7 +531,7 @@ public class JmxTransformer implements WatchedCallback {
 	 */
 	protected void setupObjectPooling() throws Exception {
 		if (this.poolMap == null) {
-			this.poolMap = JmxUtils.getDefaultPoolMap();
+			this.poolMap = JmxUtils.getDefaultPoolMap(this.connectionValidationSeconds * 1000L);
 
 			this.poolMBeans = new HashMap<String, ManagedGenericKeyedObjectPool>();
 
@@ -327,6 +544,138 @@ public class JmxTransformer implements WatchedCallback {
 		}
 	}
 
+	/**
+	 * Creates the thread pool shared by all the servers for running their
+	 * queries, or the virtual threads when asked for.
+	 */
+	private void setupQueryExecutor() throws Exception {
+		if (this.useVirtualThreads && (this.queryExecutor == null)) {
+			ExecutorService virtualExecutor = VirtualThreads.newExecutor("jmxtrans-query-");
+			if (virtualExecutor != null) {
+				this.queryExecutor = new CollectionExecutor(virtualExecutor);
+				this.serverRunExecutor = VirtualThreads.newExecutor("jmxtrans-server-");
+				log.info("Running the servers and their queries on virtual threads");
+			} else {
+				log.warn("This JDK has no virtual threads, running the queries on " + this.getNumSharedQueryThreads() + " shared threads");
+			}
+		}
+		if (this.queryExecutor == null) {
+			this.queryExecutor = new CollectionExecutor(this.getNumSharedQueryThreads());
+		}
+		if (this.queryExecutorMBean == null) {
+			// on virtual threads too, for the active and completed counts
+			this.queryExecutorMBean = new ManagedCollectionExecutor(this.queryExecutor);
+			JmxUtils.registerJMX(this.queryExecutorMBean);
+		}
+		if (this.cacheMBean == null) {
+			this.cacheMBean = new ManagedMBeanServerCache();
+			JmxUtils.registerJMX(this.cacheMBean);
+		}
+		if (this.watchdog == null) {
+			this.watchdog = new Watchdog();
+			this.watchdogMBean = new ManagedWatchdog(this.watchdog);
+			JmxUtils.registerJMX(this.watchdogMBean);
+		}
+	}
+
+	/**
+	 * Creates what spreads the server runs across the period and measures
+	 * how evenly they are spread.
+	 */
+	private void setupRunSpread() throws Exception {
+		if (this.runSpread == null) {
+			this.runSpread = new RunSpread(this.runPeriod * 1000L);
+			this.runSpreadMBean = new ManagedRunSpread(this.runSpread);
+			JmxUtils.registerJMX(this.runSpreadMBean);
+		}
+	}
+
+	/**
+	 * Creates the timing wheel for the servers run every runPeriod, when
+	 * asked for. The runs go to the virtual threads if there are some, or else
+	 * to as many threads as Quartz has by default.
+	 */
+	private void setupWheelScheduler() throws Exception {
+		if (this.useTimingWheel && (this.wheelScheduler == null)) {
+			if (this.serverRunExecutor != null) {
+				this.wheelScheduler = new WheelScheduler(this.serverRunExecutor);
+			} else {
+				this.wheelScheduler = new WheelScheduler(WheelScheduler.DEFAULT_NUM_THREADS);
+			}
+			this.wheelSchedulerMBean = new ManagedWheelScheduler(this.wheelScheduler);
+			JmxUtils.registerJMX(this.wheelSchedulerMBean);
+		}
+	}
+
+	/**
+	 * Creates what connects to the servers ahead of their first runs, unless
+	 * that is turned off.
+	 */
+	private void setupConnectionWarmup() throws Exception {
+		if ((this.warmupSeconds > 0) && (this.connectionWarmup == null)) {
+			this.connectionWarmup = new ConnectionWarmup(this.warmupConcurrency, this.warmupSeconds * 1000L);
+			this.connectionWarmupMBean = new ManagedConnectionWarmup(this.connectionWarmup);
+			JmxUtils.registerJMX(this.connectionWarmupMBean);
+		}
+	}
+
+	/**
+	 * Creates the circuit breakers of the servers.
+	 */
+	private void setupCircuitBreakers() throws Exception {
+		if (this.circuitBreakers == null) {
+			this.circuitBreakers = new CircuitBreakers();
+			this.circuitBreakersMBean = new ManagedCircuitBreakers(this.circuitBreakers);
+			JmxUtils.registerJMX(this.circuitBreakersMBean);
+		}
+	}
+
+	/**
+	 * Makes the pooled connections of the servers which have none yet, ie:
+	 * all of them at startup and the added ones after a reload.
+	 */
+	private void warmUpConnections() {
+		KeyedObjectPool pool = (this.poolMap != null) ? this.poolMap.get(Server.JMX_CONNECTION_FACTORY_POOL) : null;
+		if ((this.connectionWarmup == null) || !(pool instanceof GenericKeyedObjectPool)) {
+			return;
+		}
+		try {
+			this.connectionWarmup.warm((GenericKeyedObjectPool) pool, this.masterServersList);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Applies the size found in the json files, unless it was given on the
+	 * command line.
+	 */
+	private void resizeQueryExecutor() {
+		if (this.queryExecutor != null) {
+			this.queryExecutor.setNumThreads(this.getNumSharedQueryThreads());
+		}
+	}
+
+	/**
+	 * Creates or reconfigures the queues of the OutputWriters when the json
+	 * sets a writerQueueSize. Otherwise the writers run on the query threads.
+	 */
+	private void setupWriterDispatcher() {
+		int queueSize = (this.jsonWriterQueueSize != null) ? this.jsonWriterQueueSize : 0;
+		OverflowPolicy policy = (this.jsonWriterOverflowPolicy != null) ? this.jsonWriterOverflowPolicy : OverflowPolicy.BLOCK;
+		if (queueSize <= 0) {
+			if (this.writerDispatcher != null) {
+				this.writerDispatcher.shutdown();
+				this.writerDispatcher = null;
+			}
+		} else if (this.writerDispatcher == null) {
+			this.writerDispatcher = new WriterDispatcher(queueSize, policy);
+		} else {
+			this.writerDispatcher.setQueueSize(queueSize);
+			this.writerDispatcher.setOverflowPolicy(policy);
+		}
+	}
+
 	/** */
 	private void validateSetup(List<Query> queries) throws ValidationException {
 		for (Query q : queries) {
@@ -334,12 +683,17 @@ public class JmxTransformer implements WatchedCallback {
 		}
 	}
 
-	/** */
+	/**
+	 * Validates the writers of the query, the shared ones only the first
+	 * time.
+	 */
 	private void validateSetup(Query query) throws ValidationException {
 		List<OutputWriter> writers = query.getOutputWriters();
 		if (writers != null) {
 			for (OutputWriter w : writers) {
-				w.validateSetup(query);
+				if (this.validatedWriters.put(w, Boolean.TRUE) == null) {
+					w.validateSetup(query);
+				}
 			}
 		}
 	}
@@ -348,6 +702,11 @@ public class JmxTransformer implements WatchedCallback {
 	 * Processes all the json files and manages the dedup process
 	 */
 	private void processFilesIntoServers(List<File> jsonFiles) throws LifecycleException {
+		// the settings found in the json are read again from the files as
+		// they are now
+		this.jsonNumSharedQueryThreads = null;
+		this.jsonWriterQueueSize = null;
+		this.jsonWriterOverflowPolicy = null;
 
 		for (File jsonFile : jsonFiles) {
 			JmxProcess process;
@@ -357,6 +716,17 @@ public class JmxTransformer implements WatchedCallback {
 					log.debug("Loaded file: " + jsonFile.getAbsolutePath());
 				}
 				JmxUtils.mergeServerLists(this.masterServersList, process.getServers());
+
+				Integer numThreads = process.getNumSharedQueryThreads();
+				if ((numThreads != null) && ((this.jsonNumSharedQueryThreads == null) || (numThreads > this.jsonNumSharedQueryThreads))) {
+					this.jsonNumSharedQueryThreads = numThreads;
+				}
+				if (process.getWriterQueueSize() != null) {
+					this.jsonWriterQueueSize = process.getWriterQueueSize();
+				}
+				if (process.getWriterOverflowPolicy() != null) {
+					this.jsonWriterOverflowPolicy = OverflowPolicy.valueOf(process.getWriterOverflowPolicy().toUpperCase());
+				}
 			} catch (Exception ex) {
 				if (isContinueOnJsonError()) {
 					throw new LifecycleException("Error parsing json: " + jsonFile, ex);
@@ -381,10 +751,14 @@ public class JmxTransformer implements WatchedCallback {
 				// need to inject the poolMap
 				for (Query query : server.getQueries()) {
 					query.setServer(server);
+					this.shareOutputWriters(query);
 
 					for (OutputWriter writer : query.getOutputWriters()) {
-						writer.setObjectPoolMap(this.poolMap);
-						writer.start();
+						if (this.startedWriters.put(writer, Boolean.TRUE) == null) {
+							writer.setObjectPoolMap(this.poolMap);
+							writer.start();
+							this.registerChangeFilter(writer);
+						}
 					}
 				}
 
@@ -404,6 +778,67 @@ public class JmxTransformer implements WatchedCallback {
 		}
 	}
 
+	/**
+	 * Publishes the counters of the sendOnChange filter of the writer, if it
+	 * has one.
+	 */
+	private void registerChangeFilter(OutputWriter writer) {
+		if (!(writer instanceof BaseOutputWriter)) {
+			return;
+		}
+		ChangeFilter filter = ((BaseOutputWriter) writer).getChangeFilter();
+		if (filter == null) {
+			return;
+		}
+		String name = writer.getClass().getSimpleName() + "-" + (this.changeFilterMBeans.size() + 1);
+		ManagedChangeFilter mbean = new ManagedChangeFilter(name, filter);
+		try {
+			JmxUtils.registerJMX(mbean);
+			this.changeFilterMBeans.put(writer, mbean);
+		} catch (Exception ex) {
+			log.warn("Error registering the change filter of writer: " + name, ex);
+		}
+	}
+
+	/**
+	 * Replaces the writers of the query with the ones of the same class and
+	 * settings already in use, so that there is a single GraphiteWriter (and
+	 * socket pool, buffers...) per destination instead of one per query.
+	 *
+	 * A writer is still only called by one thread at a time, either the one
+	 * of its queue or, when the writers run on the query threads, the one
+	 * holding its lock (see JmxUtils.runOutputWriters()).
+	 */
+	private void shareOutputWriters(Query query) {
+		List<OutputWriter> writers = query.getOutputWriters();
+		if (writers == null) {
+			return;
+		}
+		List<OutputWriter> shared = new ArrayList<OutputWriter>(writers.size());
+		boolean changed = false;
+		for (OutputWriter writer : writers) {
+			JsonNode key;
+			try {
+				key = this.writerMapper.valueToTree(writer);
+			} catch (IllegalArgumentException ex) {
+				log.debug("Unable to compare writer: " + writer.getClass().getSimpleName() + ", not sharing it", ex);
+				shared.add(writer);
+				continue;
+			}
+			OutputWriter existing = this.sharedWriters.get(key);
+			if (existing == null) {
+				this.sharedWriters.put(key, writer);
+				shared.add(writer);
+			} else {
+				shared.add(existing);
+				changed |= (existing != writer);
+			}
+		}
+		if (changed) {
+			query.setOutputWriters(shared);
+		}
+	}
+
 	/**
 	 * Schedules an individual job.
 	 */
@@ -415,11 +850,28 @@ public class JmxTransformer implements WatchedCallback {
 		JobDataMap map = new JobDataMap();
 		map.put(Server.class.getName(), server);
 		map.put(Server.JMX_CONNECTION_FACTORY_POOL, this.poolMap.get(Server.JMX_CONNECTION_FACTORY_POOL));
+		map.put(CollectionExecutor.class.getName(), this.queryExecutor);
+		if (this.serverRunExecutor != null) {
+			map.put(ServerJob.SERVER_RUN_EXECUTOR, this.serverRunExecutor);
+		}
+		map.put(Watchdog.class.getName(), this.watchdog);
+		map.put(RunSpread.class.getName(), this.runSpread);
+		map.put(ServerRunStats.class.getName(), this.runStats);
+		map.put(CircuitBreakers.class.getName(), this.circuitBreakers);
+		if (this.writerDispatcher != null) {
+			map.put(WriterDispatcher.class.getName(), this.writerDispatcher);
+		}
 		jd.setJobDataMap(map);
 
+		boolean cron = (server.getCronExpression() != null) && CronExpression.isValidExpression(server.getCronExpression());
+		if (!cron && (this.wheelScheduler != null)) {
+			this.scheduleOnWheel(server, map);
+			return;
+		}
+
 		Trigger trigger = null;
 
-		if ((server.getCronExpression() != null) && CronExpression.isValidExpression(server.getCronExpression())) {
+		if (cron) {
 			trigger = new CronTrigger();
 			((CronTrigger) trigger).setCronExpression(server.getCronExpression());
 			((CronTrigger) trigger).setName(server.getHost() + ":" + server.getPort() + "-" + Long.valueOf(System.currentTimeMillis()).toString());
@@ -427,7 +879,7 @@ public class JmxTransformer implements WatchedCallback {
 		} else {
 			Trigger minuteTrigger = TriggerUtils.makeSecondlyTrigger(runPeriod);
 			minuteTrigger.setName(server.getHost() + ":" + server.getPort() + "-" + Long.valueOf(System.currentTimeMillis()).toString());
-			minuteTrigger.setStartTime(new Date());
+			minuteTrigger.setStartTime(new Date(this.getStartTime(server)));
 
 			trigger = minuteTrigger;
 		}
@@ -438,6 +890,42 @@ public class JmxTransformer implements WatchedCallback {
 		}
 	}
 
+	/**
+	 * Schedules the runs of a server every runPeriod on the timing wheel.
+	 */
+	private void scheduleOnWheel(final Server server, final JobDataMap map) {
+		this.wheelScheduler.schedule(new Runnable() {
+			public void run() {
+				try {
+					ServerJob.execute(map);
+				} catch (JobExecutionException e) {
+					// already logged
+				}
+			}
+		}, this.getStartTime(server), this.runPeriod * 1000L);
+		if (log.isDebugEnabled()) {
+			log.debug("Scheduled server: " + server + " on the timing wheel");
+		}
+	}
+
+	/**
+	 * When the first run of a server with the run period should be: right
+	 * away, or at its phase into the period when the runs are staggered,
+	 * give or take the jitter.
+	 */
+	private long getStartTime(Server server) {
+		long now = System.currentTimeMillis();
+		long jitterMillis = this.jitterSeconds * 1000L;
+		if (this.runSpread == null) {
+			return now;
+		}
+		this.runSpread.setPeriodMillis(this.runPeriod * 1000L);
+		if (this.staggerRuns) {
+			return this.runSpread.getStartTime(server, jitterMillis, now);
+		}
+		return now + this.runSpread.getJitterMillis(jitterMillis);
+	}
+
 	/**
 	 * Deletes all of the Jobs
 	 */
@@ -457,6 +945,9 @@ public class JmxTransformer implements WatchedCallback {
 				log.debug("Deleted scheduled job: " + jd.getName() + " group: " + jd.getGroup());
 			}
 		}
+		if (this.wheelScheduler != null) {
+			this.wheelScheduler.cancelAll();
+		}
 	}
 
 	/**
@@ -519,6 +1010,20 @@ public class JmxTransformer implements WatchedCallback {
 				}
 			} else if (option.getOpt().equals("s")) {
 				this.setRunPeriod(Integer.valueOf(option.getValue()));
+			} else if (option.getOpt().equals("p")) {
+				this.setNumSharedQueryThreads(Integer.valueOf(option.getValue()));
+			} else if (option.getOpt().equals("r")) {
+				this.setStaggerRuns(true);
+			} else if (option.getOpt().equals("x")) {
+				this.setJitterSeconds(Integer.valueOf(option.getValue()));
+			} else if (option.getOpt().equals("v")) {
+				this.setUseVirtualThreads(true);
+			} else if (option.getOpt().equals("w")) {
+				this.setUseTimingWheel(true);
+			} else if (option.getOpt().equals("u")) {
+				this.setWarmupSeconds(Integer.valueOf(option.getValue()));
+			} else if (option.getOpt().equals("i")) {
+				this.setConnectionValidationSeconds(Integer.valueOf(option.getValue()));
 			} else if (option.getOpt().equals("h")) {
 				HelpFormatter formatter = new HelpFormatter();
 				formatter.printHelp("java -jar jmxtrans-all.jar", this.getOptions());
@@ -540,6 +1045,16 @@ public class JmxTransformer implements WatchedCallback {
 		options.addOption("e", false, "Run endlessly. Default false.");
 		options.addOption("q", true, "Path to quartz configuration file.");
 		options.addOption("s", true, "Seconds between server job runs (not defined with cron). Default: 60");
+		options.addOption("p", true, "Number of threads shared by all servers for running their queries. Default: "
+				+ CollectionExecutor.DEFAULT_NUM_THREADS);
+		options.addOption("r", false, "Spread the runs of the servers across the run period, by their host and port. Default false.");
+		options.addOption("x", true, "Seconds of random jitter added to the start of the runs of each server. Default: 0");
+		options.addOption("v", false, "Run the servers and their queries on virtual threads, when the JDK has them. Default false.");
+		options.addOption("u", true, "Seconds to wait for the connections to the servers, made in parallel before they are scheduled, 0 for none. Default: "
+				+ ConnectionWarmup.DEFAULT_DEADLINE_SECONDS);
+		options.addOption("i", true, "Seconds a pooled JMX connection may be idle before it is checked with the server again. Default: "
+				+ (JmxConnectionFactory.DEFAULT_VALIDATION_IDLE_MILLIS / 1000));
+		options.addOption("w", false, "Schedule the servers without a cron expression on a timing wheel instead of Quartz. Default false.");
 		options.addOption("h", false, "Help");
 		return options;
 	}
@@ -582,6 +1097,185 @@ public class JmxTransformer implements WatchedCallback {
 		this.runPeriod = runPeriod;
 	}
 
+	/**
+	 * Gets the number of threads shared by all servers for running their
+	 * queries.
+	 *
+	 * @return the number of shared query threads
+	 */
+	public int getNumSharedQueryThreads() {
+		if (numSharedQueryThreads != null) {
+			return numSharedQueryThreads;
+		} else if (jsonNumSharedQueryThreads != null) {
+			return jsonNumSharedQueryThreads;
+		}
+		return CollectionExecutor.DEFAULT_NUM_THREADS;
+	}
+
+	/**
+	 * Sets the number of threads shared by all servers for running their
+	 * queries. Takes precedence over the json setting.
+	 *
+	 * @param numSharedQueryThreads
+	 *            the number of shared query threads
+	 */
+	public void setNumSharedQueryThreads(int numSharedQueryThreads) {
+		this.numSharedQueryThreads = numSharedQueryThreads;
+		this.resizeQueryExecutor();
+	}
+
+	/**
+	 * How long a pooled JMX connection may be idle before it is checked with
+	 * the server again, in seconds.
+	 */
+	public int getConnectionValidationSeconds() {
+		return connectionValidationSeconds;
+	}
+
+	/**
+	 * Sets how long a pooled JMX connection may be idle before it is checked
+	 * with the server again. Connections are otherwise only checked after a
+	 * run on them failed. Only takes effect before the system is started.
+	 */
+	public void setConnectionValidationSeconds(int connectionValidationSeconds) {
+		this.connectionValidationSeconds = connectionValidationSeconds;
+	}
+
+	/**
+	 * How long to wait for the connections made ahead of the first runs, in
+	 * seconds.
+	 */
+	public int getWarmupSeconds() {
+		return warmupSeconds;
+	}
+
+	/**
+	 * Sets how long to wait for the connections to the servers, which are
+	 * made in parallel before the servers are scheduled, at startup and for
+	 * the servers added by a reload. 0 leaves them to the first runs. Only
+	 * takes effect before the system is started.
+	 */
+	public void setWarmupSeconds(int warmupSeconds) {
+		this.warmupSeconds = warmupSeconds;
+	}
+
+	/**
+	 * How many connections are made at once ahead of the first runs.
+	 */
+	public int getWarmupConcurrency() {
+		return warmupConcurrency;
+	}
+
+	/**
+	 * Sets how many connections are made at once ahead of the first runs.
+	 * Only takes effect before the system is started.
+	 */
+	public void setWarmupConcurrency(int warmupConcurrency) {
+		this.warmupConcurrency = warmupConcurrency;
+	}
+
+	/**
+	 * Whether the runs of the servers are spread across the run period.
+	 */
+	public boolean isStaggerRuns() {
+		return staggerRuns;
+	}
+
+	/**
+	 * Spreads the runs of the servers across the run period, each one at a
+	 * point worked out from its host and port. Applies to the servers without
+	 * a cronExpression, from the next time they are scheduled.
+	 */
+	public void setStaggerRuns(boolean staggerRuns) {
+		this.staggerRuns = staggerRuns;
+	}
+
+	/**
+	 * The seconds of random jitter added to the start of the runs.
+	 */
+	public int getJitterSeconds() {
+		return jitterSeconds;
+	}
+
+	/**
+	 * Adds up to this many seconds of random to the start of the runs of each
+	 * server, on top of the stagger if there is one.
+	 */
+	public void setJitterSeconds(int jitterSeconds) {
+		this.jitterSeconds = jitterSeconds;
+	}
+
+	/**
+	 * Whether the servers and their queries run on virtual threads, when the
+	 * JDK has them.
+	 */
+	public boolean isUseVirtualThreads() {
+		return useVirtualThreads;
+	}
+
+	/**
+	 * Runs the servers and their queries on virtual threads, when the JDK has
+	 * them. Only takes effect before the system is started.
+	 */
+	public void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+	/**
+	 * Whether the servers without a cronExpression are run off a timing
+	 * wheel.
+	 */
+	public boolean isUseTimingWheel() {
+		return useTimingWheel;
+	}
+
+	/**
+	 * Runs the servers without a cronExpression off a timing wheel, which
+	 * costs next to nothing per server, instead of a Quartz trigger each. The
+	 * servers with one stay on Quartz. Only takes effect before the system is
+	 * started.
+	 */
+	public void setUseTimingWheel(boolean useTimingWheel) {
+		this.useTimingWheel = useTimingWheel;
+	}
+
+	/**
+	 * How many server runs were skipped because the previous run of the
+	 * server was still going.
+	 */
+	public long getSkippedRunCount() {
+		return this.runStats.getSkippedCount();
+	}
+
+	/**
+	 * How many server runs went on past the time their next run was due.
+	 */
+	public long getOverrunCount() {
+		return this.runStats.getOverrunCount();
+	}
+
+	/**
+	 * How long in all the server runs went on past the time their next run
+	 * was due, in millis.
+	 */
+	public long getTotalOverrunMillis() {
+		return this.runStats.getTotalOverrunMillis();
+	}
+
+	/** */
+	public long getMaxOverrunMillis() {
+		return this.runStats.getMaxOverrunMillis();
+	}
+
+	/**
+	 * How many server runs misfired: Quartz couldn't fire them within its
+	 * misfireThreshold, or the timing wheel skipped their periods after falling behind.
+	 */
+	public long getMisfireCount() {
+		WheelScheduler wheel = this.wheelScheduler;
+		return this.runStats.getMisfireCount() + ((wheel != null) ? wheel.getMisfireCount() : 0);
+	}
+
 	/**
 	 * Sets the json dir or file.
 	 *
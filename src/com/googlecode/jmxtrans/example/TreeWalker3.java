@@ -1,6 +1,7 @@
 package com.googlecode.jmxtrans.example;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
 import com.googlecode.jmxtrans.model.Server;
 import com.googlecode.jmxtrans.util.JmxUtils;
 
@@ -74,15 +76,17 @@ public class TreeWalker3 {
 				query.addAttr(attrInfo.getName());
 			}
 
+			List<ResultBatch> batches = new ArrayList<ResultBatch>();
 			try {
-				JmxUtils.processQuery(connection, query);
+				batches = JmxUtils.processQuery(connection, query);
 			} catch (AttributeNotFoundException anfe) {
 				log.error("Error", anfe);
 			}
 
-			List<Result> results = query.getResults();
-			for (Result result : results) {
-				output.put(result.getTypeName(), query.getAttr().toString());
+			for (ResultBatch batch : batches) {
+				for (Result result : batch.getResults()) {
+					output.put(result.getTypeName(), query.getAttr().toString());
+				}
 			}
 		}
 
@@ -0,0 +1,83 @@
+package com.googlecode.jmxtrans.jmx;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.ChangeFilter;
+
+/**
+ * The Class ManagedChangeFilter.
+ */
+public class ManagedChangeFilter implements ManagedChangeFilterMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The name of the writer. */
+	private String name;
+
+	/** The filter. */
+	private ChangeFilter filter;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param name the name of the writer
+	 * @param filter the filter
+	 */
+	public ManagedChangeFilter(String name, ChangeFilter filter) {
+		this.name = name;
+		this.filter = filter;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=ChangeFilter,Name=" + ObjectName.quote(name));
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedChangeFilterMBean#getHeartbeat()
+	 */
+	@Override
+	public int getHeartbeat() {
+		return filter.getHeartbeat();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedChangeFilterMBean#getSentCount()
+	 */
+	@Override
+	public long getSentCount() {
+		return filter.getSentCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedChangeFilterMBean#getSuppressedCount()
+	 */
+	@Override
+	public long getSuppressedCount() {
+		return filter.getSuppressedCount();
+	}
+}
@@ -0,0 +1,25 @@
+package com.googlecode.jmxtrans.jmx;
+
+/**
+ * Managed attributes of the sendOnChange filter of one OutputWriter, see
+ * {@link com.googlecode.jmxtrans.util.ChangeFilter}.
+ */
+public interface ManagedChangeFilterMBean {
+
+	int getHeartbeat();
+
+	/**
+	 * Gets the number of values given to the writer.
+	 *
+	 * @return the sent count
+	 */
+	long getSentCount();
+
+	/**
+	 * Gets the number of values not given to the writer because they didn't
+	 * change.
+	 *
+	 * @return the suppressed count
+	 */
+	long getSuppressedCount();
+}
@@ -0,0 +1,104 @@
+package com.googlecode.jmxtrans.jmx;
+
+import java.util.Map;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.CircuitBreakers;
+
+/**
+ * The Class ManagedCircuitBreakers.
+ */
+public class ManagedCircuitBreakers implements ManagedCircuitBreakersMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The breakers. */
+	private CircuitBreakers breakers;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param breakers the breakers
+	 */
+	public ManagedCircuitBreakers(CircuitBreakers breakers) {
+		this.breakers = breakers;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=CircuitBreakers");
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCircuitBreakersMBean#getStates()
+	 */
+	@Override
+	public Map<String, String> getStates() {
+		return breakers.getStates();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCircuitBreakersMBean#getOpenCount()
+	 */
+	@Override
+	public int getOpenCount() {
+		return breakers.getOpenCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCircuitBreakersMBean#getOpenedCount()
+	 */
+	@Override
+	public long getOpenedCount() {
+		return breakers.getOpenedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCircuitBreakersMBean#getHalfOpenedCount()
+	 */
+	@Override
+	public long getHalfOpenedCount() {
+		return breakers.getHalfOpenedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCircuitBreakersMBean#getClosedCount()
+	 */
+	@Override
+	public long getClosedCount() {
+		return breakers.getClosedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCircuitBreakersMBean#getSkippedCount()
+	 */
+	@Override
+	public long getSkippedCount() {
+		return breakers.getSkippedCount();
+	}
+}
@@ -0,0 +1,33 @@
+package com.googlecode.jmxtrans.jmx;
+
+import java.util.Map;
+
+/**
+ * Managed attributes of the circuit breakers of the servers, see
+ * {@link com.googlecode.jmxtrans.util.CircuitBreakers}.
+ */
+public interface ManagedCircuitBreakersMBean {
+
+	/**
+	 * Gets the state (OPEN or HALF_OPEN) of each target (host:port) whose
+	 * breaker isn't closed.
+	 *
+	 * @return the states
+	 */
+	Map<String, String> getStates();
+
+	int getOpenCount();
+
+	long getOpenedCount();
+
+	long getHalfOpenedCount();
+
+	long getClosedCount();
+
+	/**
+	 * Gets the number of runs skipped because their breaker was open.
+	 *
+	 * @return the skipped count
+	 */
+	long getSkippedCount();
+}
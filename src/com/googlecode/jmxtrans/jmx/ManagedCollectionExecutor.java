@@ -0,0 +1,102 @@
+package com.googlecode.jmxtrans.jmx;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.CollectionExecutor;
+
+/**
+ * The Class ManagedCollectionExecutor.
+ */
+public class ManagedCollectionExecutor implements ManagedCollectionExecutorMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The executor. */
+	private CollectionExecutor executor;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param executor the executor
+	 */
+	public ManagedCollectionExecutor(CollectionExecutor executor) {
+		this.executor = executor;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=CollectionExecutor,Name=CollectionExecutor");
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCollectionExecutorMBean#getNumThreads()
+	 */
+	@Override
+	public int getNumThreads() {
+		return executor.getNumThreads();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCollectionExecutorMBean#setNumThreads(int)
+	 */
+	@Override
+	public void setNumThreads(int numThreads) {
+		executor.setNumThreads(numThreads);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCollectionExecutorMBean#getPoolSize()
+	 */
+	@Override
+	public int getPoolSize() {
+		return executor.getPoolSize();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCollectionExecutorMBean#getActiveCount()
+	 */
+	@Override
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCollectionExecutorMBean#getQueueSize()
+	 */
+	@Override
+	public int getQueueSize() {
+		return executor.getQueueSize();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedCollectionExecutorMBean#getCompletedTaskCount()
+	 */
+	@Override
+	public long getCompletedTaskCount() {
+		return executor.getCompletedTaskCount();
+	}
+}
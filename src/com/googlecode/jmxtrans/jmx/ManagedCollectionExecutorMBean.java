@@ -0,0 +1,24 @@
+package com.googlecode.jmxtrans.jmx;
+
+/**
+ * Managed attributes and operations of a {@link com.googlecode.jmxtrans.util.CollectionExecutor}.
+ */
+public interface ManagedCollectionExecutorMBean {
+
+	/**
+	 * Gets the configured number of threads.
+	 *
+	 * @return the number of threads
+	 */
+	int getNumThreads();
+
+	void setNumThreads(int numThreads);
+
+	int getPoolSize();
+
+	int getActiveCount();
+
+	int getQueueSize();
+
+	long getCompletedTaskCount();
+}
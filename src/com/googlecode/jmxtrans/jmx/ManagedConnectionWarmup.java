@@ -0,0 +1,96 @@
+package com.googlecode.jmxtrans.jmx;
+
+import java.util.Map;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.ConnectionWarmup;
+
+/**
+ * The Class ManagedConnectionWarmup.
+ */
+public class ManagedConnectionWarmup implements ManagedConnectionWarmupMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The warmup. */
+	private ConnectionWarmup warmup;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param warmup the warmup
+	 */
+	public ManagedConnectionWarmup(ConnectionWarmup warmup) {
+		this.warmup = warmup;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=ConnectionWarmup");
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedConnectionWarmupMBean#getConnectLatencies()
+	 */
+	@Override
+	public Map<String, Long> getConnectLatencies() {
+		return warmup.getConnectLatencies();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedConnectionWarmupMBean#getConnectedCount()
+	 */
+	@Override
+	public long getConnectedCount() {
+		return warmup.getConnectedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedConnectionWarmupMBean#getFailedCount()
+	 */
+	@Override
+	public long getFailedCount() {
+		return warmup.getFailedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedConnectionWarmupMBean#getTimedOutCount()
+	 */
+	@Override
+	public long getTimedOutCount() {
+		return warmup.getTimedOutCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedConnectionWarmupMBean#getLastWarmupMillis()
+	 */
+	@Override
+	public long getLastWarmupMillis() {
+		return warmup.getLastWarmupMillis();
+	}
+}
@@ -0,0 +1,30 @@
+package com.googlecode.jmxtrans.jmx;
+
+import java.util.Map;
+
+/**
+ * Managed attributes of the connections made ahead of the first runs of the
+ * servers, see {@link com.googlecode.jmxtrans.util.ConnectionWarmup}.
+ */
+public interface ManagedConnectionWarmupMBean {
+
+	/**
+	 * Gets how long connecting to each target (host:port) took.
+	 *
+	 * @return the connect latencies in millis
+	 */
+	Map<String, Long> getConnectLatencies();
+
+	long getConnectedCount();
+
+	long getFailedCount();
+
+	/**
+	 * Gets the number of connections not made within the deadline.
+	 *
+	 * @return the timed out count
+	 */
+	long getTimedOutCount();
+
+	long getLastWarmupMillis();
+}
@@ -6,6 +6,7 @@ import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
 import com.googlecode.jmxtrans.JmxTransformer;
+import com.googlecode.jmxtrans.util.JmxUtils;
 import com.googlecode.jmxtrans.util.LifecycleException;
 
 /**
@@ -94,6 +95,54 @@ public class ManagedJmxTransformerProcess implements ManagedJmxTransformerProces
 		return proc.getJsonDirOrFile();
 	}
 
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedJmxTransformerProcessMBean#getSkippedRunCount()
+	 */
+	@Override
+	public long getSkippedRunCount() {
+		return proc.getSkippedRunCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedJmxTransformerProcessMBean#getOverrunCount()
+	 */
+	@Override
+	public long getOverrunCount() {
+		return proc.getOverrunCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedJmxTransformerProcessMBean#getTotalOverrunMillis()
+	 */
+	@Override
+	public long getTotalOverrunMillis() {
+		return proc.getTotalOverrunMillis();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedJmxTransformerProcessMBean#getMaxOverrunMillis()
+	 */
+	@Override
+	public long getMaxOverrunMillis() {
+		return proc.getMaxOverrunMillis();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedJmxTransformerProcessMBean#getMisfireCount()
+	 */
+	@Override
+	public long getMisfireCount() {
+		return proc.getMisfireCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedJmxTransformerProcessMBean#getRejectedConnectCount()
+	 */
+	@Override
+	public long getRejectedConnectCount() {
+		return JmxUtils.getRejectedConnectCount();
+	}
+
 	/* (non-Javadoc)
 	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
 	 */
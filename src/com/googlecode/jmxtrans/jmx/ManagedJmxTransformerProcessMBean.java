@@ -64,4 +64,51 @@ public interface ManagedJmxTransformerProcessMBean {
 	 * @return the json dir or file
 	 */
 	public File getJsonDirOrFile();
+
+	/**
+	 * Gets the number of server runs skipped because the previous run of the
+	 * server was still going.
+	 *
+	 * @return the skipped run count
+	 */
+	public long getSkippedRunCount();
+
+	/**
+	 * Gets the number of server runs which went on past the time their next
+	 * run was due.
+	 *
+	 * @return the overrun count
+	 */
+	public long getOverrunCount();
+
+	/**
+	 * Gets how long in all the server runs went on past the time their next
+	 * run was due.
+	 *
+	 * @return the total overrun in millis
+	 */
+	public long getTotalOverrunMillis();
+
+	/**
+	 * Gets the longest a server run went on past the time its next run was
+	 * due.
+	 *
+	 * @return the max overrun in millis
+	 */
+	public long getMaxOverrunMillis();
+
+	/**
+	 * Gets the number of server runs which misfired.
+	 *
+	 * @return the misfire count
+	 */
+	public long getMisfireCount();
+
+	/**
+	 * Gets the number of connects failed right away as all the connect
+	 * threads were busy.
+	 *
+	 * @return the rejected connect count
+	 */
+	public long getRejectedConnectCount();
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.googlecode.jmxtrans.jmx;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.MBeanServerCache;
+
+/**
+ * The Class ManagedMBeanServerCache.
+ */
+public class ManagedMBeanServerCache implements ManagedMBeanServerCacheMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=MBeanServerCache,Name=MBeanServerCache");
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedMBeanServerCacheMBean#getCacheCount()
+	 */
+	@Override
+	public int getCacheCount() {
+		return MBeanServerCache.getCacheCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedMBeanServerCacheMBean#getMetadataHits()
+	 */
+	@Override
+	public long getMetadataHits() {
+		return MBeanServerCache.getMetadataHits();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedMBeanServerCacheMBean#getMetadataMisses()
+	 */
+	@Override
+	public long getMetadataMisses() {
+		return MBeanServerCache.getMetadataMisses();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedMBeanServerCacheMBean#getQueryNamesHits()
+	 */
+	@Override
+	public long getQueryNamesHits() {
+		return MBeanServerCache.getQueryNamesHits();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedMBeanServerCacheMBean#getQueryNamesMisses()
+	 */
+	@Override
+	public long getQueryNamesMisses() {
+		return MBeanServerCache.getQueryNamesMisses();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedMBeanServerCacheMBean#getNotificationCount()
+	 */
+	@Override
+	public long getNotificationCount() {
+		return MBeanServerCache.getNotificationCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedMBeanServerCacheMBean#getNameIndexRefreshes()
+	 */
+	@Override
+	public long getNameIndexRefreshes() {
+		return MBeanServerCache.getNameIndexRefreshes();
+	}
+}
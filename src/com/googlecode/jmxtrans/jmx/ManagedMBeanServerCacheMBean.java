@@ -0,0 +1,27 @@
+package com.googlecode.jmxtrans.jmx;
+
+/**
+ * Statistics of the {@link com.googlecode.jmxtrans.util.MBeanServerCache}s of
+ * all the connections.
+ */
+public interface ManagedMBeanServerCacheMBean {
+
+	/**
+	 * Gets the number of connections with a cache.
+	 *
+	 * @return the cache count
+	 */
+	int getCacheCount();
+
+	long getMetadataHits();
+
+	long getMetadataMisses();
+
+	long getQueryNamesHits();
+
+	long getQueryNamesMisses();
+
+	long getNotificationCount();
+
+	long getNameIndexRefreshes();
+}
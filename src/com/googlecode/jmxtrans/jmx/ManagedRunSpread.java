@@ -0,0 +1,94 @@
+package com.googlecode.jmxtrans.jmx;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.RunSpread;
+
+/**
+ * The Class ManagedRunSpread.
+ */
+public class ManagedRunSpread implements ManagedRunSpreadMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The spread. */
+	private RunSpread spread;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param spread the spread
+	 */
+	public ManagedRunSpread(RunSpread spread) {
+		this.spread = spread;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=RunSpread");
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedRunSpreadMBean#getPeriodMillis()
+	 */
+	@Override
+	public long getPeriodMillis() {
+		return spread.getPeriodMillis();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedRunSpreadMBean#getBucketCounts()
+	 */
+	@Override
+	public int[] getBucketCounts() {
+		return spread.getBucketCounts();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedRunSpreadMBean#getRunCount()
+	 */
+	@Override
+	public int getRunCount() {
+		return spread.getRunCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedRunSpreadMBean#getPeakBucketCount()
+	 */
+	@Override
+	public int getPeakBucketCount() {
+		return spread.getPeakBucketCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedRunSpreadMBean#getPeakToAverage()
+	 */
+	@Override
+	public double getPeakToAverage() {
+		return spread.getPeakToAverage();
+	}
+}
@@ -0,0 +1,29 @@
+package com.googlecode.jmxtrans.jmx;
+
+/**
+ * Managed attributes of how the server runs are spread across the run
+ * period, see {@link com.googlecode.jmxtrans.util.RunSpread}.
+ */
+public interface ManagedRunSpreadMBean {
+
+	long getPeriodMillis();
+
+	/**
+	 * Gets the number of runs started in each bucket of the last full period.
+	 *
+	 * @return the bucket counts
+	 */
+	int[] getBucketCounts();
+
+	int getRunCount();
+
+	int getPeakBucketCount();
+
+	/**
+	 * Gets the busiest bucket against the average one, 1 when the runs are
+	 * spread evenly.
+	 *
+	 * @return the peak to average ratio
+	 */
+	double getPeakToAverage();
+}
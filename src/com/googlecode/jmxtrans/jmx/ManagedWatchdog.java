@@ -0,0 +1,96 @@
+package com.googlecode.jmxtrans.jmx;
+
+import java.util.Map;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.Watchdog;
+
+/**
+ * The Class ManagedWatchdog.
+ */
+public class ManagedWatchdog implements ManagedWatchdogMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The watchdog. */
+	private Watchdog watchdog;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param watchdog the watchdog
+	 */
+	public ManagedWatchdog(Watchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=Watchdog");
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWatchdogMBean#getWatchCount()
+	 */
+	@Override
+	public int getWatchCount() {
+		return watchdog.getWatchCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWatchdogMBean#getUnwatchedCount()
+	 */
+	@Override
+	public long getUnwatchedCount() {
+		return watchdog.getUnwatchedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWatchdogMBean#getTimeoutCount()
+	 */
+	@Override
+	public long getTimeoutCount() {
+		return watchdog.getTimeoutCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWatchdogMBean#getTimeoutCounts()
+	 */
+	@Override
+	public Map<String, Long> getTimeoutCounts() {
+		return watchdog.getTimeoutCounts();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWatchdogMBean#getTimeoutCount(java.lang.String)
+	 */
+	@Override
+	public long getTimeoutCount(String target) {
+		return watchdog.getTimeoutCount(target);
+	}
+}
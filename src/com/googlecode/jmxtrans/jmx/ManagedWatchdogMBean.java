@@ -0,0 +1,30 @@
+package com.googlecode.jmxtrans.jmx;
+
+import java.util.Map;
+
+/**
+ * Managed attributes of the deadlines of the server runs, see
+ * {@link com.googlecode.jmxtrans.util.Watchdog}.
+ */
+public interface ManagedWatchdogMBean {
+
+	/**
+	 * Gets the number of deadlines being watched.
+	 *
+	 * @return the watch count
+	 */
+	int getWatchCount();
+
+	long getUnwatchedCount();
+
+	long getTimeoutCount();
+
+	/**
+	 * Gets the number of timeouts of each target (host:port) which had any.
+	 *
+	 * @return the timeout counts
+	 */
+	Map<String, Long> getTimeoutCounts();
+
+	long getTimeoutCount(String target);
+}
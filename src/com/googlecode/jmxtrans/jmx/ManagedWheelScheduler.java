@@ -0,0 +1,94 @@
+package com.googlecode.jmxtrans.jmx;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.WheelScheduler;
+
+/**
+ * The Class ManagedWheelScheduler.
+ */
+public class ManagedWheelScheduler implements ManagedWheelSchedulerMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The wheel. */
+	private WheelScheduler wheel;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param wheel the wheel
+	 */
+	public ManagedWheelScheduler(WheelScheduler wheel) {
+		this.wheel = wheel;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=WheelScheduler");
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWheelSchedulerMBean#getTaskCount()
+	 */
+	@Override
+	public int getTaskCount() {
+		return wheel.getTaskCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWheelSchedulerMBean#getFiredCount()
+	 */
+	@Override
+	public long getFiredCount() {
+		return wheel.getFiredCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWheelSchedulerMBean#getAverageLatenessMillis()
+	 */
+	@Override
+	public long getAverageLatenessMillis() {
+		return wheel.getAverageLatenessMillis();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWheelSchedulerMBean#getMaxLatenessMillis()
+	 */
+	@Override
+	public long getMaxLatenessMillis() {
+		return wheel.getMaxLatenessMillis();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWheelSchedulerMBean#getMisfireCount()
+	 */
+	@Override
+	public long getMisfireCount() {
+		return wheel.getMisfireCount();
+	}
+}
@@ -0,0 +1,24 @@
+package com.googlecode.jmxtrans.jmx;
+
+/**
+ * Managed attributes of the timing wheel the server runs are scheduled on,
+ * see {@link com.googlecode.jmxtrans.util.WheelScheduler}.
+ */
+public interface ManagedWheelSchedulerMBean {
+
+	int getTaskCount();
+
+	long getFiredCount();
+
+	/**
+	 * Gets how late the runs were handed to the threads on average, at most
+	 * a tick when the wheel keeps up.
+	 *
+	 * @return the average lateness in millis
+	 */
+	long getAverageLatenessMillis();
+
+	long getMaxLatenessMillis();
+
+	long getMisfireCount();
+}
@@ -0,0 +1,118 @@
+package com.googlecode.jmxtrans.jmx;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.util.WriterDispatcher.WriterQueue;
+
+/**
+ * The Class ManagedWriterQueue.
+ */
+public class ManagedWriterQueue implements ManagedWriterQueueMBean, ManagedObject {
+
+	/** The object name. */
+	private ObjectName objectName;
+
+	/** The queue. */
+	private WriterQueue queue;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param queue the queue
+	 */
+	public ManagedWriterQueue(WriterQueue queue) {
+		this.queue = queue;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		if (objectName == null) {
+			objectName = new ObjectName("com.googlecode.jmxtrans:Type=WriterQueue,Name=" + ObjectName.quote(queue.getName()));
+		}
+		return objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(javax.management.ObjectName)
+	 */
+	@Override
+	public void setObjectName(ObjectName objectName) throws MalformedObjectNameException {
+		this.objectName = objectName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedObject#setObjectName(java.lang.String)
+	 */
+	@Override
+	public void setObjectName(String objectName) throws MalformedObjectNameException {
+		this.objectName = ObjectName.getInstance(objectName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		return queue.getQueueDepth();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getDispatchedCount()
+	 */
+	@Override
+	public long getDispatchedCount() {
+		return queue.getDispatchedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getWrittenCount()
+	 */
+	@Override
+	public long getWrittenCount() {
+		return queue.getWrittenCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getFailedCount()
+	 */
+	@Override
+	public long getFailedCount() {
+		return queue.getFailedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getDroppedCount()
+	 */
+	@Override
+	public long getDroppedCount() {
+		return queue.getDroppedCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getAverageLatencyMillis()
+	 */
+	@Override
+	public long getAverageLatencyMillis() {
+		return queue.getAverageLatencyMillis();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getMaxLatencyMillis()
+	 */
+	@Override
+	public long getMaxLatencyMillis() {
+		return queue.getMaxLatencyMillis();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.jmxtrans.jmx.ManagedWriterQueueMBean#getSuppressedCount()
+	 */
+	@Override
+	public long getSuppressedCount() {
+		return queue.getSuppressedCount();
+	}
+}
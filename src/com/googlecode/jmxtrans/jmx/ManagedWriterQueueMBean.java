@@ -0,0 +1,29 @@
+package com.googlecode.jmxtrans.jmx;
+
+/**
+ * Managed attributes of the queue of one OutputWriter, see
+ * {@link com.googlecode.jmxtrans.util.WriterDispatcher}.
+ */
+public interface ManagedWriterQueueMBean {
+
+	/**
+	 * Gets the number of batches waiting to be written.
+	 *
+	 * @return the queue depth
+	 */
+	int getQueueDepth();
+
+	long getDispatchedCount();
+
+	long getWrittenCount();
+
+	long getFailedCount();
+
+	long getDroppedCount();
+
+	long getAverageLatencyMillis();
+
+	long getMaxLatencyMillis();
+
+	long getSuppressedCount();
+}
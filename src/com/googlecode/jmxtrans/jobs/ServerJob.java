@@ -1,5 +1,12 @@
 package com.googlecode.jmxtrans.jobs;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.management.remote.JMXConnector;
 
 import org.apache.commons.pool.impl.GenericKeyedObjectPool;
@@ -11,38 +18,202 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.util.CircuitBreaker;
+import com.googlecode.jmxtrans.util.CircuitBreakers;
+import com.googlecode.jmxtrans.util.CollectionExecutor;
+import com.googlecode.jmxtrans.util.JmxConnectionFactory;
 import com.googlecode.jmxtrans.util.JmxUtils;
+import com.googlecode.jmxtrans.util.RunContext;
+import com.googlecode.jmxtrans.util.RunDeadline;
+import com.googlecode.jmxtrans.util.RunSpread;
+import com.googlecode.jmxtrans.util.Watchdog;
+import com.googlecode.jmxtrans.util.WriterDispatcher;
 
 /**
  * This is a quartz job that is responsible for executing a Server object on a
  * cron schedule that is defined within the Server object.
+ *
+ * A server is only run once at a time: when its previous run is still going,
+ * the run is skipped, so a server which is too slow for its schedule is polled
+ * less often rather than piling up threads and connections. The skips and how
+ * long the slow runs overran are counted in the {@link ServerRunStats} of the
+ * job data.
+ *
+ * When the job data has an executor under {@link #SERVER_RUN_EXECUTOR} (virtual
+ * threads, see VirtualThreads), the run is handed to it and the Quartz thread
+ * is free right away, so a small Quartz pool can keep thousands of servers
+ * going.
+ *
+ * With a {@link Watchdog} in the job data, the run is given the deadlines of
+ * the server (see {@link RunDeadline}), and a connection which overran one of
+ * them is destroyed rather than returned to the pool. One which failed
+ * otherwise goes back to the pool to be checked when it's next borrowed.
+ *
+ * With {@link CircuitBreakers} in the job data, the runs of a server which
+ * can't be reached are skipped for a while, see {@link CircuitBreaker}.
+ *
+ * Servers without a cron expression can be run off the WheelScheduler
+ * instead, through {@link #execute(JobDataMap)}.
  * 
  * @author jon
  */
 public class ServerJob implements Job {
 	private static final Logger log = LoggerFactory.getLogger(ServerJob.class);
 
+	/** The job data key of the executor the runs are handed to, if any. */
+	public static final String SERVER_RUN_EXECUTOR = "ServerRunExecutor";
+
+	/**
+	 * The servers being run, with when their first skipped run was due, or 0
+	 * if none was.
+	 */
+	private static final Map<Server, long[]> running = Collections.synchronizedMap(new IdentityHashMap<Server, long[]>());
+
 	public void execute(JobExecutionContext context) throws JobExecutionException {
-		JobDataMap map = context.getMergedJobDataMap();
-		Server server = (Server) map.get(Server.class.getName());
-		GenericKeyedObjectPool pool = (GenericKeyedObjectPool) map.get(Server.JMX_CONNECTION_FACTORY_POOL);
+		execute(context.getMergedJobDataMap());
+	}
+
+	/**
+	 * Runs the server in the job data, the same way for Quartz and for the
+	 * WheelScheduler.
+	 */
+	public static void execute(JobDataMap map) throws JobExecutionException {
+		final Server server = (Server) map.get(Server.class.getName());
+		final GenericKeyedObjectPool pool = (GenericKeyedObjectPool) map.get(Server.JMX_CONNECTION_FACTORY_POOL);
+		final CollectionExecutor executor = (CollectionExecutor) map.get(CollectionExecutor.class.getName());
+		final WriterDispatcher dispatcher = (WriterDispatcher) map.get(WriterDispatcher.class.getName());
+		final Watchdog watchdog = (Watchdog) map.get(Watchdog.class.getName());
+		ExecutorService runExecutor = (ExecutorService) map.get(SERVER_RUN_EXECUTOR);
+		final ServerRunStats stats = (ServerRunStats) map.get(ServerRunStats.class.getName());
+		CircuitBreakers breakers = (CircuitBreakers) map.get(CircuitBreakers.class.getName());
+		RunSpread spread = (RunSpread) map.get(RunSpread.class.getName());
+		if (spread != null) {
+			spread.record(System.currentTimeMillis());
+		}
+
+		if (!begin(server, stats)) {
+			return;
+		}
+
+		final CircuitBreaker breaker = ((breakers != null) && !server.isLocal()) ? breakers.get(server) : null;
+		if ((breaker != null) && !breaker.allowRun()) {
+			end(server, null);
+			if (log.isDebugEnabled()) {
+				log.debug("Skipping run of server: " + server + ", it is unreachable");
+			}
+			return;
+		}
 
+		if (runExecutor == null) {
+			try {
+				run(server, pool, executor, dispatcher, watchdog, breaker);
+			} catch (Exception e) {
+				throw new JobExecutionException(e);
+			} finally {
+				end(server, stats);
+			}
+			return;
+		}
+
+		try {
+			runExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						ServerJob.run(server, pool, executor, dispatcher, watchdog, breaker);
+					} catch (Exception e) {
+						// already logged
+					} finally {
+						end(server, stats);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			end(server, stats);
+			log.debug("Not running server: " + server + ", shutting down");
+		}
+	}
+
+	/**
+	 * Marks the server as running.
+	 *
+	 * @return false if its previous run is still going, in which case this
+	 *         one is skipped
+	 */
+	private static boolean begin(Server server, ServerRunStats stats) {
+		synchronized (running) {
+			long[] skippedSince = running.get(server);
+			if (skippedSince == null) {
+				running.put(server, new long[1]);
+				return true;
+			}
+			if (skippedSince[0] == 0) {
+				skippedSince[0] = System.currentTimeMillis();
+			}
+		}
+		if (stats != null) {
+			stats.recordSkip();
+		}
+		log.warn("Skipping run of server: " + server + ", the previous one hasn't finished");
+		return false;
+	}
+
+	/**
+	 * Marks the server as done, counting how long it overran if a run was
+	 * skipped meanwhile.
+	 */
+	private static void end(Server server, ServerRunStats stats) {
+		long[] skippedSince = running.remove(server);
+		if ((stats != null) && (skippedSince != null) && (skippedSince[0] != 0)) {
+			stats.recordOverrun(System.currentTimeMillis() - skippedSince[0]);
+		}
+	}
+
+	/**
+	 * Runs the queries of the server on a pooled connection.
+	 */
+	private static void run(Server server, GenericKeyedObjectPool pool, CollectionExecutor executor, WriterDispatcher dispatcher,
+			Watchdog watchdog, CircuitBreaker breaker) throws Exception {
 		if (log.isDebugEnabled()) {
 			log.debug("+++++ Started server job: " + server);
 		}
 
+		RunDeadline deadline = (watchdog != null) ? new RunDeadline(watchdog, server) : null;
 		JMXConnector conn = null;
 		try {
             if (! server.isLocal()) {
                 conn = (JMXConnector) pool.borrowObject(server);
+                if (deadline != null) {
+                    deadline.setConnector(conn);
+                }
             }
-			JmxUtils.processServer(server, conn);
+			JmxUtils.processServer(server, conn, new RunContext(executor, dispatcher, deadline));
+			if (breaker != null) {
+				breaker.recordSuccess();
+			}
 		} catch (Exception e) {
-			log.error("Error", e);
-			throw new JobExecutionException(e);
+			boolean expired = (deadline != null) && deadline.isExpired();
+			if (expired) {
+				log.warn("Abandoned the run of server: " + server + ", it overran its deadline");
+			} else {
+				JmxConnectionFactory.markSuspect(conn);
+				log.error("Error", e);
+			}
+			if (breaker != null) {
+				if ((conn == null) || expired || isConnectionFailure(e)) {
+					breaker.recordFailure();
+				} else {
+					breaker.recordSuccess();
+				}
+			}
+			throw e;
 		} finally {
+			boolean inTime = (deadline == null) || deadline.finish();
 			try {
-				pool.returnObject(server, conn);
+				if (inTime || (conn == null)) {
+					pool.returnObject(server, conn);
+				} else {
+					pool.invalidateObject(server, conn);
+				}
 			} catch (Exception ex) {
 				log.error("Error returning object to pool for server: " + server);
 			}
@@ -52,4 +223,17 @@ public class ServerJob implements Job {
 			log.debug("+++++ Finished server job: " + server);
 		}
 	}
+
+	/**
+	 * Whether the server couldn't be talked to, as opposed to a query which
+	 * failed on a server that answered.
+	 */
+	private static boolean isConnectionFailure(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
@@ -0,0 +1,99 @@
+package com.googlecode.jmxtrans.jobs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.Trigger;
+import org.quartz.TriggerListener;
+
+/**
+ * Counts what happens to the server runs when a server is too slow for its
+ * schedule:
+ * <ul>
+ * <li>skipped: the run was due while the previous one of the server was still
+ * going, so it wasn't started</li>
+ * <li>overrun: how long a run went on past the time the next one was due</li>
+ * <li>misfired: Quartz couldn't fire the trigger within its misfire
+ * threshold, ie: all of its threads were busy</li>
+ * </ul>
+ * Added to the scheduler as a global trigger listener for the misfires.
+ */
+public class ServerRunStats implements TriggerListener {
+
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong overruns = new AtomicLong();
+	private final AtomicLong totalOverrunMillis = new AtomicLong();
+	private final AtomicLong maxOverrunMillis = new AtomicLong();
+	private final AtomicLong misfires = new AtomicLong();
+
+	/**
+	 * Counts a run which wasn't started because the previous one was still
+	 * going.
+	 */
+	public void recordSkip() {
+		this.skipped.incrementAndGet();
+	}
+
+	/**
+	 * Counts a run which went on for overrunMillis past when the next one was
+	 * due.
+	 */
+	public void recordOverrun(long overrunMillis) {
+		this.overruns.incrementAndGet();
+		this.totalOverrunMillis.addAndGet(overrunMillis);
+		long max;
+		while (overrunMillis > (max = this.maxOverrunMillis.get())) {
+			if (this.maxOverrunMillis.compareAndSet(max, overrunMillis)) {
+				break;
+			}
+		}
+	}
+
+	/** */
+	public void recordMisfire() {
+		this.misfires.incrementAndGet();
+	}
+
+	/** */
+	public long getSkippedCount() {
+		return this.skipped.get();
+	}
+
+	/** */
+	public long getOverrunCount() {
+		return this.overruns.get();
+	}
+
+	/** */
+	public long getTotalOverrunMillis() {
+		return this.totalOverrunMillis.get();
+	}
+
+	/** */
+	public long getMaxOverrunMillis() {
+		return this.maxOverrunMillis.get();
+	}
+
+	/** */
+	public long getMisfireCount() {
+		return this.misfires.get();
+	}
+
+	public String getName() {
+		return ServerRunStats.class.getName();
+	}
+
+	public void triggerFired(Trigger trigger, JobExecutionContext context) {
+	}
+
+	public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+		return false;
+	}
+
+	public void triggerMisfired(Trigger trigger) {
+		this.recordMisfire();
+	}
+
+	public void triggerComplete(Trigger trigger, JobExecutionContext context, int triggerInstructionCode) {
+	}
+}
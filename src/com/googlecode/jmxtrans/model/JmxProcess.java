@@ -18,6 +18,9 @@ public class JmxProcess {
 	private String name;
 	private List<Server> servers = new ArrayList<Server>();
 	private Integer numMultiThreadedServers;
+	private Integer numSharedQueryThreads;
+	private Integer writerQueueSize;
+	private String writerOverflowPolicy;
 
 	public JmxProcess() {
 	}
@@ -65,6 +68,45 @@ public class JmxProcess {
 		return numMultiThreadedServers;
 	}
 
+	/**
+	 * The size of the thread pool shared by every server for running its
+	 * queries. The server's numQueryThreads only caps how many of its queries
+	 * run at the same time.
+	 */
+	public void setNumSharedQueryThreads(Integer numSharedQueryThreads) {
+		this.numSharedQueryThreads = numSharedQueryThreads;
+	}
+
+	public Integer getNumSharedQueryThreads() {
+		return numSharedQueryThreads;
+	}
+
+	/**
+	 * Set this to run the OutputWriters on threads of their own, so that a
+	 * slow one doesn't hold up the queries, with up to this many batches of
+	 * results waiting for each writer (1000 is a good start). When it isn't
+	 * set, or is 0, the writers run on the query threads.
+	 */
+	public void setWriterQueueSize(Integer writerQueueSize) {
+		this.writerQueueSize = writerQueueSize;
+	}
+
+	public Integer getWriterQueueSize() {
+		return writerQueueSize;
+	}
+
+	/**
+	 * What to do when the queue of an OutputWriter is full: BLOCK (the
+	 * default), DROP_OLDEST or DROP_NEWEST.
+	 */
+	public void setWriterOverflowPolicy(String writerOverflowPolicy) {
+		this.writerOverflowPolicy = writerOverflowPolicy;
+	}
+
+	public String getWriterOverflowPolicy() {
+		return writerOverflowPolicy;
+	}
+
 	public void setName(String name) {
 		this.name = name;
 	}
@@ -0,0 +1,428 @@
+package com.googlecode.jmxtrans.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.jmxtrans.util.JmxUtils;
+
+/**
+ * The values collected from one MBean, stored by column: the id of each value,
+ * its type and, for numbers, the value itself in a long[] (doubles as their
+ * raw bits), with a single epoch for all of them.
+ *
+ * Each value is classified once when it is added: its kind tells whether it
+ * is an integer, a floating point number or not a number at all, using the
+ * same rules as JmxUtils.isNumeric(). Numbers which came as objects, ie:
+ * BigDecimal or numeric Strings, are parsed at that point, so writers can read
+ * every number with {@link #getLong(int)}, {@link #getDouble(int)} or
+ * {@link #appendValue(StringBuilder, int)} without checking or parsing it
+ * again. {@link #toResults(Query)} turns the batch into the
+ * Result objects older writers expect, split where the worker code said a
+ * Result begins with {@link #startResult()}.
+ */
+public class MetricBatch {
+
+	public static final byte BYTE = 0;
+	public static final byte SHORT = 1;
+	public static final byte INT = 2;
+	public static final byte LONG = 3;
+	public static final byte FLOAT = 4;
+	public static final byte DOUBLE = 5;
+	/** Anything else, kept as is */
+	public static final byte OBJECT = 6;
+
+	/** Not a number */
+	public static final byte KIND_NONE = 0;
+	/** A number without a fraction, read it with getLong() */
+	public static final byte KIND_INTEGER = 1;
+	/** A number with a fraction, read it with getDouble() */
+	public static final byte KIND_FLOAT = 2;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final long epoch;
+	private MetricId[] ids;
+	private byte[] types;
+	private byte[] kinds;
+	private long[] values;
+	private Object[] objects;
+	private int size = 0;
+
+	/** The indexes of the values which begin a Result, in order. */
+	private int[] starts = new int[4];
+	private int startCount = 0;
+
+	public MetricBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public MetricBatch(int capacity) {
+		this(capacity, System.currentTimeMillis());
+	}
+
+	/**
+	 * A batch of values collected at the given time.
+	 */
+	public MetricBatch(int capacity, long epoch) {
+		int initial = Math.max(1, capacity);
+		this.epoch = epoch;
+		this.ids = new MetricId[initial];
+		this.types = new byte[initial];
+		this.kinds = new byte[initial];
+		this.values = new long[initial];
+	}
+
+	/**
+	 * Marks the next value added as the first of a new Result, even if it
+	 * has the same attribute name, class and type as the previous one, ie:
+	 * for each element of a CompositeData[].
+	 */
+	public void startResult() {
+		if ((this.startCount > 0) && (this.starts[this.startCount - 1] == this.size)) {
+			return;
+		}
+		if (this.startCount == this.starts.length) {
+			this.starts = Arrays.copyOf(this.starts, this.startCount * 2);
+		}
+		this.starts[this.startCount++] = this.size;
+	}
+
+	/**
+	 * Adds a value, unboxing it if it is a number.
+	 */
+	public void add(MetricId id, Object value) {
+		if (this.size == this.ids.length) {
+			this.grow();
+		}
+		int i = this.size++;
+		this.ids[i] = id;
+		if (value instanceof Long) {
+			this.setLong(i, LONG, ((Long) value).longValue());
+		} else if (value instanceof Integer) {
+			this.setLong(i, INT, ((Integer) value).longValue());
+		} else if (value instanceof Double) {
+			this.setLong(i, DOUBLE, Double.doubleToRawLongBits(((Double) value).doubleValue()));
+		} else if (value instanceof Float) {
+			this.setLong(i, FLOAT, Double.doubleToRawLongBits(((Float) value).doubleValue()));
+		} else if (value instanceof Short) {
+			this.setLong(i, SHORT, ((Short) value).longValue());
+		} else if (value instanceof Byte) {
+			this.setLong(i, BYTE, ((Byte) value).longValue());
+		} else {
+			this.types[i] = OBJECT;
+			if (this.objects == null) {
+				this.objects = new Object[this.ids.length];
+			}
+			this.objects[i] = value;
+			this.classify(i, value);
+		}
+	}
+
+	/**
+	 * Adds one of the values of another batch, as it was classified there.
+	 */
+	public void add(MetricBatch other, int j) {
+		if (this.size == this.ids.length) {
+			this.grow();
+		}
+		int i = this.size++;
+		this.ids[i] = other.ids[j];
+		this.types[i] = other.types[j];
+		this.kinds[i] = other.kinds[j];
+		this.values[i] = other.values[j];
+		if (other.types[j] == OBJECT) {
+			if (this.objects == null) {
+				this.objects = new Object[this.ids.length];
+			}
+			this.objects[i] = other.objects[j];
+		}
+	}
+
+	/**
+	 * A batch with the same epoch holding only the values to keep, which
+	 * still begin their Results where they did here.
+	 */
+	public MetricBatch select(boolean[] keep) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (keep[i]) {
+				kept++;
+			}
+		}
+		MetricBatch selected = new MetricBatch(kept, epoch);
+		boolean start = false;
+		int nextStart = 0;
+		for (int i = 0; i < size; i++) {
+			while ((nextStart < startCount) && (starts[nextStart] <= i)) {
+				start |= (starts[nextStart++] == i);
+			}
+			if (keep[i]) {
+				if (start) {
+					selected.startResult();
+					start = false;
+				}
+				selected.add(this, i);
+			}
+		}
+		return selected;
+	}
+
+	/** */
+	private void setLong(int i, byte type, long value) {
+		this.types[i] = type;
+		this.kinds[i] = ((type == FLOAT) || (type == DOUBLE)) ? KIND_FLOAT : KIND_INTEGER;
+		this.values[i] = value;
+	}
+
+	/**
+	 * Works out the kind of a value which isn't a primitive wrapper, and
+	 * keeps its numeric value next to the object.
+	 */
+	private void classify(int i, Object value) {
+		if (value instanceof BigDecimal) {
+			this.setNumber(i, KIND_FLOAT, Double.doubleToRawLongBits(((BigDecimal) value).doubleValue()));
+		} else if ((value instanceof BigInteger) && (((BigInteger) value).bitLength() > 63)) {
+			this.setNumber(i, KIND_FLOAT, Double.doubleToRawLongBits(((BigInteger) value).doubleValue()));
+		} else if ((value instanceof BigInteger) || (value instanceof AtomicLong) || (value instanceof AtomicInteger)) {
+			this.setNumber(i, KIND_INTEGER, ((Number) value).longValue());
+		} else if (value instanceof Number) {
+			this.setNumber(i, KIND_FLOAT, Double.doubleToRawLongBits(((Number) value).doubleValue()));
+		} else if ((value instanceof String) && JmxUtils.isNumeric((String) value)) {
+			this.parse(i, (String) value);
+		} else {
+			this.kinds[i] = KIND_NONE;
+		}
+	}
+
+	/**
+	 * Parses a String which JmxUtils.isNumeric() accepted, so only digits and
+	 * at most one period.
+	 */
+	private void parse(int i, String value) {
+		if (value.length() == 0) {
+			this.setNumber(i, KIND_INTEGER, 0);
+			return;
+		}
+		try {
+			if (value.indexOf('.') < 0) {
+				try {
+					this.setNumber(i, KIND_INTEGER, Long.parseLong(value));
+					return;
+				} catch (NumberFormatException ex) {
+					// too big for a long
+				}
+			}
+			this.setNumber(i, KIND_FLOAT, Double.doubleToRawLongBits(Double.parseDouble(value)));
+		} catch (NumberFormatException ex) {
+			// digits which aren't 0-9, still a number to isNumeric()
+			this.setNumber(i, KIND_FLOAT, Double.doubleToRawLongBits(Double.NaN));
+		}
+	}
+
+	/** */
+	private void setNumber(int i, byte kind, long value) {
+		this.kinds[i] = kind;
+		this.values[i] = value;
+	}
+
+	/** */
+	private void grow() {
+		int capacity = this.ids.length * 2;
+		MetricId[] newIds = new MetricId[capacity];
+		System.arraycopy(this.ids, 0, newIds, 0, this.size);
+		this.ids = newIds;
+		byte[] newTypes = new byte[capacity];
+		System.arraycopy(this.types, 0, newTypes, 0, this.size);
+		this.types = newTypes;
+		byte[] newKinds = new byte[capacity];
+		System.arraycopy(this.kinds, 0, newKinds, 0, this.size);
+		this.kinds = newKinds;
+		long[] newValues = new long[capacity];
+		System.arraycopy(this.values, 0, newValues, 0, this.size);
+		this.values = newValues;
+		if (this.objects != null) {
+			Object[] newObjects = new Object[capacity];
+			System.arraycopy(this.objects, 0, newObjects, 0, this.size);
+			this.objects = newObjects;
+		}
+	}
+
+	/** */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * When the values were collected.
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/** */
+	public MetricId getId(int i) {
+		return ids[i];
+	}
+
+	/** */
+	public byte getType(int i) {
+		return types[i];
+	}
+
+	/**
+	 * One of KIND_NONE, KIND_INTEGER or KIND_FLOAT.
+	 */
+	public byte getKind(int i) {
+		return kinds[i];
+	}
+
+	/**
+	 * Whether the value is a number without a fraction: a byte, short, int,
+	 * long, BigInteger or a String of digits.
+	 */
+	public boolean isIntegral(int i) {
+		return kinds[i] == KIND_INTEGER;
+	}
+
+	/**
+	 * Whether the value is a number with a fraction: a float, double,
+	 * BigDecimal or a String of digits with a period.
+	 */
+	public boolean isFloatingPoint(int i) {
+		return kinds[i] == KIND_FLOAT;
+	}
+
+	/**
+	 * Whether JmxUtils.isNumeric() would accept the value.
+	 */
+	public boolean isNumeric(int i) {
+		return kinds[i] != KIND_NONE;
+	}
+
+	/**
+	 * The value as a long, zero if it isn't a number.
+	 */
+	public long getLong(int i) {
+		return isFloatingPoint(i) ? (long) Double.longBitsToDouble(values[i]) : values[i];
+	}
+
+	/**
+	 * The value as a double, zero if it isn't a number.
+	 */
+	public double getDouble(int i) {
+		return isFloatingPoint(i) ? Double.longBitsToDouble(values[i]) : values[i];
+	}
+
+	/**
+	 * The number as it is stored: the value of integers and the raw bits of
+	 * floating point numbers. Two numbers of the same kind are equal when
+	 * these are.
+	 */
+	public long getBits(int i) {
+		return values[i];
+	}
+
+	/**
+	 * The value as it was collected, boxed again if it is a number.
+	 */
+	public Object getValue(int i) {
+		switch (types[i]) {
+		case BYTE:
+			return Byte.valueOf((byte) values[i]);
+		case SHORT:
+			return Short.valueOf((short) values[i]);
+		case INT:
+			return Integer.valueOf((int) values[i]);
+		case LONG:
+			return Long.valueOf(values[i]);
+		case FLOAT:
+			return Float.valueOf((float) Double.longBitsToDouble(values[i]));
+		case DOUBLE:
+			return Double.valueOf(Double.longBitsToDouble(values[i]));
+		default:
+			return objects[i];
+		}
+	}
+
+	/**
+	 * Appends the value the way its toString() would, without boxing it.
+	 */
+	public StringBuilder appendValue(StringBuilder sb, int i) {
+		switch (types[i]) {
+		case FLOAT:
+			return sb.append((float) Double.longBitsToDouble(values[i]));
+		case DOUBLE:
+			return sb.append(Double.longBitsToDouble(values[i]));
+		case OBJECT:
+			return sb.append(objects[i]);
+		default:
+			return sb.append(values[i]);
+		}
+	}
+
+	/**
+	 * Whether value i was marked as the first of a Result.
+	 */
+	public boolean isResultStart(int i) {
+		return Arrays.binarySearch(starts, 0, startCount, i) >= 0;
+	}
+
+	/**
+	 * Groups the values into Result objects, one for each run of values with
+	 * the same attribute name, class and type, starting a new one at each
+	 * value marked with {@link #startResult()}.
+	 */
+	public List<Result> toResults(Query query) {
+		List<Result> results = new ArrayList<Result>();
+		Result current = null;
+		int nextStart = 0;
+		for (int i = 0; i < size; i++) {
+			MetricId id = ids[i];
+			boolean start = false;
+			while ((nextStart < startCount) && (starts[nextStart] <= i)) {
+				start |= (starts[nextStart++] == i);
+			}
+			if (start || (current == null) || !same(id.getAttributeName(), current.getAttributeName())
+					|| !same(id.getClassName(), current.getClassName()) || !same(id.getTypeName(), current.getTypeName())) {
+				current = new Result(id.getAttributeName());
+				current.setQuery(query);
+				current.setClassName(id.getClassName());
+				current.setTypeName(id.getTypeName());
+				current.setEpoch(epoch);
+				results.add(current);
+			}
+			current.addValue(id.getKey(), getValue(i));
+		}
+		return results;
+	}
+
+	/** */
+	private static boolean same(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	/**
+	 * Builds a batch from Result objects, for writers reading batches when the
+	 * worker code made Results. The epoch is the one of the first Result.
+	 */
+	public static MetricBatch fromResults(List<Result> results) {
+		long epoch = results.isEmpty() ? System.currentTimeMillis() : results.get(0).getEpoch();
+		MetricBatch batch = new MetricBatch(DEFAULT_CAPACITY, epoch);
+		for (Result result : results) {
+			batch.startResult();
+			Map<String, Object> values = (result.getValues() != null) ? result.getValues() : Collections.<String, Object> emptyMap();
+			for (Entry<String, Object> entry : values.entrySet()) {
+				batch.add(new MetricId(result.getClassName(), result.getTypeName(), result.getAttributeName(), entry.getKey()), entry.getValue());
+			}
+		}
+		return batch;
+	}
+}
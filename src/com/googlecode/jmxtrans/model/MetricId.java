@@ -0,0 +1,115 @@
+package com.googlecode.jmxtrans.model;
+
+/**
+ * Names one value of an MBean: the attribute (with the key of the table row
+ * it came from, if any) and the key of the value, along with the class and
+ * type names of the MBean.
+ *
+ * The worker code hands out the same instance for the same value on every run
+ * (see MBeanMetadata.getMetricId()), so writers can keep the name they built
+ * for it instead of building it again.
+ */
+public class MetricId {
+
+	private final String className;
+	private final String typeName;
+	private final String attributeName;
+	private final String key;
+
+	private volatile CachedName cachedName;
+	private volatile long hash64;
+
+	public MetricId(String className, String typeName, String attributeName, String key) {
+		this.className = className;
+		this.typeName = typeName;
+		this.attributeName = attributeName;
+		this.key = key;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * The canonical key property list of the MBean.
+	 */
+	public String getTypeName() {
+		return typeName;
+	}
+
+	public String getAttributeName() {
+		return attributeName;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * A 64 bit hash of the names, never 0. Equal ids have the same hash, so it
+	 * can stand for the id in maps keyed by a primitive long.
+	 */
+	public long getHash64() {
+		long h = this.hash64;
+		if (h == 0) {
+			h = hash(hash(hash(hash(FNV_OFFSET, className), typeName), attributeName), key);
+			if (h == 0) {
+				h = 1;
+			}
+			this.hash64 = h;
+		}
+		return h;
+	}
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * FNV-1a over the chars of the string, followed by a separator.
+	 */
+	private static long hash(long h, String str) {
+		if (str != null) {
+			for (int i = 0; i < str.length(); i++) {
+				h ^= str.charAt(i);
+				h *= FNV_PRIME;
+			}
+		}
+		h ^= 0xffff;
+		return h * FNV_PRIME;
+	}
+
+	/**
+	 * Gets the name a writer built for this value while writing for the given
+	 * query, or null.
+	 */
+	public String getCachedName(Object writer, Query query) {
+		CachedName cached = this.cachedName;
+		return ((cached != null) && (cached.writer == writer) && (cached.query == query)) ? cached.name : null;
+	}
+
+	/**
+	 * Remembers the name a writer built for this value. Only the last one is
+	 * kept.
+	 */
+	public void setCachedName(Object writer, Query query, String name) {
+		this.cachedName = new CachedName(writer, query, name);
+	}
+
+	@Override
+	public String toString() {
+		return "MetricId [className=" + className + ", typeName=" + typeName + ", attributeName=" + attributeName + ", key=" + key + "]";
+	}
+
+	/** */
+	private static class CachedName {
+		private final Object writer;
+		private final Query query;
+		private final String name;
+
+		public CachedName(Object writer, Query query, String name) {
+			this.writer = writer;
+			this.query = query;
+			this.name = name;
+		}
+	}
+}
@@ -13,16 +13,19 @@ import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 
 import com.googlecode.jmxtrans.OutputWriter;
 import com.googlecode.jmxtrans.util.PropertyResolver;
+import com.googlecode.jmxtrans.util.QueryPlan;
 
 /**
  * Represents a JMX Query to ask for obj, attr and one or more keys.
  * 
- * Once the query has been executed, it'll have a list of results.
+ * The results of running the query are handed to the OutputWriters as a
+ * {@link ResultBatch}. Only the copies made with {@link ResultBatch#toQuery()}
+ * have a list of results.
  * 
  * @author jon
  */
 @JsonSerialize(include = Inclusion.NON_NULL)
-@JsonPropertyOrder(value = { "obj", "attr", "typeNames", "resultAlias", "keys", "outputWriters" })
+@JsonPropertyOrder(value = { "obj", "attr", "typeNames", "resultAlias", "keys", "timeoutSeconds", "outputWriters" })
 public class Query {
 
 	private Server server;
@@ -34,6 +37,8 @@ public class Query {
 	private List<OutputWriter> outputWriters;
 	private List<Result> results;
 	private Set<String> typeNames;
+	private Integer timeoutSeconds;
+	private volatile QueryPlan plan;
 
 	public Query() {
 	}
@@ -52,11 +57,28 @@ public class Query {
 		this.attr = attr;
 	}
 
+	/**
+	 * Copies the configuration of a query, along with some results.
+	 */
+	Query(Query query, List<Result> results) {
+		this.server = query.server;
+		this.obj = query.obj;
+		this.attr = query.attr;
+		this.resultAlias = query.resultAlias;
+		this.keys = query.keys;
+		this.outputWriters = query.outputWriters;
+		this.typeNames = query.typeNames;
+		this.timeoutSeconds = query.timeoutSeconds;
+		this.plan = query.plan;
+		this.results = results;
+	}
+
 	/**
 	 * The JMX object representation: java.lang:type=Memory
 	 */
 	public void setObj(String obj) {
 		this.obj = PropertyResolver.resolveProps(obj);
+		this.plan = null;
 	}
 
 	/**
@@ -100,9 +122,28 @@ public class Query {
 		return typeNames;
 	}
 
+	/**
+	 * How long each remote call for the MBeans of this query may take before
+	 * the run of the server is abandoned. Overrides the callTimeoutSeconds of
+	 * the server.
+	 */
+	public void setTimeoutSeconds(Integer timeoutSeconds) {
+		this.timeoutSeconds = timeoutSeconds;
+	}
+
+	/**
+	 * How long each remote call for the MBeans of this query may take before
+	 * the run of the server is abandoned. Overrides the callTimeoutSeconds of
+	 * the server.
+	 */
+	public Integer getTimeoutSeconds() {
+		return timeoutSeconds;
+	}
+
 	public void setAttr(List<String> attr) {
 		this.attr = attr;
 		PropertyResolver.resolveList(this.attr);
+		this.plan = null;
 	}
 
 	public List<String> getAttr() {
@@ -114,11 +155,13 @@ public class Query {
 			this.attr = new ArrayList<String>();
 		}
 		this.attr.add(attr);
+		this.plan = null;
 	}
 
 	public void setKeys(List<String> keys) {
 		this.keys = keys;
 		PropertyResolver.resolveList(this.keys);
+		this.plan = null;
 	}
 
 	public List<String> getKeys() {
@@ -130,6 +173,7 @@ public class Query {
 			this.keys = new ArrayList<String>();
 		}
 		this.keys.add(key);
+		this.plan = null;
 	}
 
 	public void setResults(List<Result> results) {
@@ -146,6 +190,7 @@ public class Query {
 
 	public void setOutputWriters(List<OutputWriter> outputWriters) {
 		this.outputWriters = outputWriters;
+		this.plan = null;
 	}
 
 	public List<OutputWriter> getOutputWriters() {
@@ -157,6 +202,20 @@ public class Query {
 			this.outputWriters = new ArrayList<OutputWriter>();
 		}
 		this.outputWriters.add(writer);
+		this.plan = null;
+	}
+
+	/**
+	 * The compiled form of this query, see {@link QueryPlan#get(Query)}.
+	 */
+	@JsonIgnore
+	public QueryPlan getPlan() {
+		return plan;
+	}
+
+	@JsonIgnore
+	public void setPlan(QueryPlan plan) {
+		this.plan = plan;
 	}
 
 	@JsonIgnore
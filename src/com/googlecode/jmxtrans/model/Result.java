@@ -1,12 +1,19 @@
 package com.googlecode.jmxtrans.model;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 
+import com.googlecode.jmxtrans.util.CompositeValueMap;
+import com.googlecode.jmxtrans.util.JmxUtils;
+import com.googlecode.jmxtrans.util.KeyFilter;
+import com.googlecode.jmxtrans.util.QueryPlan;
+
 /**
  * Represents the result of a query.
  * 
@@ -20,6 +27,7 @@ public class Result {
 	private Map<String, Object> values;
 	private long epoch;
 	private Query query;
+	private KeyFilter keyFilter;
 
 	public Result() {
 		epoch = System.currentTimeMillis();
@@ -66,19 +74,73 @@ public class Result {
 		this.values = values;
 	}
 
+	/**
+	 * The values of a composite are a read only view of it, which is copied
+	 * the first time a value is added.
+	 */
 	public Map<String, Object> getValues() {
 		return values;
 	}
 
+	/**
+	 * The values which JmxUtils.isNumeric() accepts. For composites the others
+	 * are skipped without being read.
+	 */
+	@JsonIgnore
+	public Map<String, Object> getNumericValues() {
+		if (values == null) {
+			return Collections.emptyMap();
+		}
+		if (values instanceof CompositeValueMap) {
+			return ((CompositeValueMap) values).numericValues();
+		}
+		Map<String, Object> result = new TreeMap<String, Object>();
+		for (Entry<String, Object> entry : values.entrySet()) {
+			if (JmxUtils.isNumeric(entry.getValue())) {
+				result.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The compiled keys of the query, so that addValue() doesn't have to look
+	 * through the list.
+	 */
+	@JsonIgnore
+	public void setKeyFilter(KeyFilter keyFilter) {
+		this.keyFilter = keyFilter;
+	}
+
 	public void addValue(String key, Object value) {
 		if (this.values == null) {
 			values = new TreeMap<String, Object>();
+		} else if (this.values instanceof CompositeValueMap) {
+			values = new TreeMap<String, Object>(values);
 		}
-		if (query.getKeys() == null || query.getKeys().contains(key)) {
+		if (this.isWanted(key)) {
 			values.put(key, value);
 		}
 	}
 
+	/**
+	 * Whether the key is one of the keys of the query, going by the compiled
+	 * filter when there is one.
+	 */
+	private boolean isWanted(String key) {
+		if (keyFilter != null) {
+			return keyFilter.contains(key);
+		}
+		if ((query == null) || (query.getKeys() == null)) {
+			return true;
+		}
+		QueryPlan plan = query.getPlan();
+		if ((plan != null) && (plan.getKeys() != null)) {
+			return plan.getKeys().contains(key);
+		}
+		return query.getKeys().contains(key);
+	}
+
 	public void setAttributeName(String attributeName) {
 		this.attributeName = attributeName;
 	}
@@ -0,0 +1,113 @@
+package com.googlecode.jmxtrans.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of running a query against one MBean, handed from the worker
+ * code to the OutputWriters of the query.
+ *
+ * A batch never changes once it is created and is not referenced by the
+ * Query, so runs of the same query can overlap and the results can be
+ * collected as soon as the writers are done with them.
+ *
+ * The worker code fills either the Result objects or, when every writer of
+ * the query reads the columns, a {@link MetricBatch}. The other form is built
+ * the first time it is asked for.
+ */
+public class ResultBatch {
+
+	private final Query query;
+	private final long epoch;
+	private final boolean columnar;
+	private List<Result> results;
+	private MetricBatch metrics;
+
+	/**
+	 * The list is not copied, so the caller must not change it afterwards.
+	 */
+	public ResultBatch(Query query, List<Result> results) {
+		this(query, results, System.currentTimeMillis());
+	}
+
+	/**
+	 * Same as above, for results collected at the given time.
+	 */
+	public ResultBatch(Query query, List<Result> results, long epoch) {
+		this.query = query;
+		this.results = Collections.unmodifiableList(results);
+		this.epoch = epoch;
+		this.columnar = false;
+	}
+
+	/**
+	 * The batch is not copied, so the caller must not add to it afterwards.
+	 */
+	public ResultBatch(Query query, MetricBatch metrics) {
+		this.query = query;
+		this.metrics = metrics;
+		this.epoch = metrics.getEpoch();
+		this.columnar = true;
+	}
+
+	/** */
+	public Query getQuery() {
+		return query;
+	}
+
+	/** */
+	public Server getServer() {
+		return query.getServer();
+	}
+
+	/** */
+	public synchronized List<Result> getResults() {
+		if (results == null) {
+			results = Collections.unmodifiableList(metrics.toResults(query));
+		}
+		return results;
+	}
+
+	/**
+	 * The values by column, see {@link MetricBatch}.
+	 */
+	public synchronized MetricBatch getMetrics() {
+		if (metrics == null) {
+			metrics = MetricBatch.fromResults(results);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Whether the worker code filled the MetricBatch rather than the Results.
+	 */
+	public boolean isColumnar() {
+		return columnar;
+	}
+
+	/** */
+	public synchronized boolean isEmpty() {
+		return (results != null) ? results.isEmpty() : (metrics.size() == 0);
+	}
+
+	/**
+	 * When the batch was created.
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * A copy of the query holding the results, for writers which read them
+	 * with Query.getResults().
+	 */
+	public Query toQuery() {
+		return new Query(query, getResults());
+	}
+
+	@Override
+	public synchronized String toString() {
+		int size = (results != null) ? results.size() : metrics.size();
+		return "ResultBatch [query=" + query + ", " + ((results != null) ? "results=" : "metrics=") + size + "]";
+	}
+}
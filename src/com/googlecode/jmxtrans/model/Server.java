@@ -29,7 +29,8 @@ import javax.management.MBeanServer;
  */
 @JsonSerialize(include = Inclusion.NON_NULL)
 @JsonPropertyOrder(value = { "alias", "local", "host", "port", "username", "password", "cronExpression", "numQueryThreads",
-		"protocolProviderPackages" })
+		"protocolProviderPackages", "nameIndexRefreshSeconds", "timeoutSeconds", "callTimeoutSeconds",
+		"connectTimeoutSeconds", "readTimeoutSeconds" })
 public class Server {
 
 	private static final Logger log = LoggerFactory.getLogger(Server.class);
@@ -51,6 +52,11 @@ public class Server {
 	private String url;
 	private String cronExpression;
 	private Integer numQueryThreads;
+	private Integer nameIndexRefreshSeconds;
+	private Integer timeoutSeconds;
+	private Integer callTimeoutSeconds;
+	private Integer connectTimeoutSeconds;
+	private Integer readTimeoutSeconds;
 
 	// if using local JMX to embed JmxTrans to query the local MBeanServer
 	private boolean local;
@@ -219,7 +225,10 @@ public class Server {
 	 * 
 	 * @return null if there are no queries or empty list if there are no
 	 *         results.
+	 * @deprecated results are handed to the OutputWriters as a ResultBatch and
+	 *             no longer kept on the queries, so this is always empty.
 	 */
+	@Deprecated
 	@JsonIgnore
 	public List<Result> getResults() {
 		List<Query> queries = this.getQueries();
@@ -256,6 +265,90 @@ public class Server {
 		return this.numQueryThreads;
 	}
 
+	/**
+	 * If set, all of the MBean names of this server are fetched with a single
+	 * call once every this many seconds, and the query patterns are matched
+	 * locally. Useful for servers with many queries.
+	 */
+	public void setNameIndexRefreshSeconds(Integer nameIndexRefreshSeconds) {
+		this.nameIndexRefreshSeconds = nameIndexRefreshSeconds;
+	}
+
+	/**
+	 * If set, all of the MBean names of this server are fetched with a single
+	 * call once every this many seconds, and the query patterns are matched
+	 * locally. Useful for servers with many queries.
+	 */
+	public Integer getNameIndexRefreshSeconds() {
+		return this.nameIndexRefreshSeconds;
+	}
+
+	/**
+	 * If set, a run of this server which takes longer than this many seconds
+	 * is abandoned and its connection destroyed.
+	 */
+	public void setTimeoutSeconds(Integer timeoutSeconds) {
+		this.timeoutSeconds = timeoutSeconds;
+	}
+
+	/**
+	 * If set, a run of this server which takes longer than this many seconds
+	 * is abandoned and its connection destroyed.
+	 */
+	public Integer getTimeoutSeconds() {
+		return this.timeoutSeconds;
+	}
+
+	/**
+	 * If set, a run of this server is abandoned when one remote call takes
+	 * longer than this many seconds. Queries can set their own.
+	 */
+	public void setCallTimeoutSeconds(Integer callTimeoutSeconds) {
+		this.callTimeoutSeconds = callTimeoutSeconds;
+	}
+
+	/**
+	 * If set, a run of this server is abandoned when one remote call takes
+	 * longer than this many seconds. Queries can set their own.
+	 */
+	public Integer getCallTimeoutSeconds() {
+		return this.callTimeoutSeconds;
+	}
+
+	/**
+	 * If set, connecting to this server is given up after this many seconds,
+	 * including the lookup in its RMI registry.
+	 */
+	public void setConnectTimeoutSeconds(Integer connectTimeoutSeconds) {
+		this.connectTimeoutSeconds = connectTimeoutSeconds;
+	}
+
+	/**
+	 * If set, connecting to this server is given up after this many seconds,
+	 * including the lookup in its RMI registry.
+	 */
+	public Integer getConnectTimeoutSeconds() {
+		return this.connectTimeoutSeconds;
+	}
+
+	/**
+	 * If set, reading from this server is given up after this many seconds
+	 * without an answer. Also the call timeout when callTimeoutSeconds isn't
+	 * set.
+	 */
+	public void setReadTimeoutSeconds(Integer readTimeoutSeconds) {
+		this.readTimeoutSeconds = readTimeoutSeconds;
+	}
+
+	/**
+	 * If set, reading from this server is given up after this many seconds
+	 * without an answer. Also the call timeout when callTimeoutSeconds isn't
+	 * set.
+	 */
+	public Integer getReadTimeoutSeconds() {
+		return this.readTimeoutSeconds;
+	}
+
 	/**
 	 * Each server can set a cronExpression for the scheduler. If the
 	 * cronExpression is null, then the job is run immediately and once.
@@ -305,14 +398,19 @@ public class Server {
 		return new EqualsBuilder().append(this.getHost(), other.getHost()).append(this.getPort(), other.getPort())
 				.append(this.getNumQueryThreads(), other.getNumQueryThreads()).append(this.getCronExpression(), other.getCronExpression())
 				.append(this.getAlias(), other.getAlias()).append(this.getUsername(), other.getUsername())
-				.append(this.getPassword(), other.getPassword()).isEquals();
+				.append(this.getPassword(), other.getPassword()).append(this.getTimeoutSeconds(), other.getTimeoutSeconds())
+				.append(this.getCallTimeoutSeconds(), other.getCallTimeoutSeconds())
+				.append(this.getConnectTimeoutSeconds(), other.getConnectTimeoutSeconds())
+				.append(this.getReadTimeoutSeconds(), other.getReadTimeoutSeconds()).isEquals();
 	}
 
 	/** */
 	@Override
 	public int hashCode() {
 		return new HashCodeBuilder(13, 21).append(this.getHost()).append(this.getPort()).append(this.getNumQueryThreads())
-				.append(this.getCronExpression()).append(this.getAlias()).append(this.getUsername()).append(this.getPassword()).toHashCode();
+				.append(this.getCronExpression()).append(this.getAlias()).append(this.getUsername()).append(this.getPassword())
+				.append(this.getTimeoutSeconds()).append(this.getCallTimeoutSeconds()).append(this.getConnectTimeoutSeconds())
+				.append(this.getReadTimeoutSeconds()).toHashCode();
 	}
 
 	/**
@@ -1,7 +1,12 @@
 package com.googlecode.jmxtrans.model.output;
 
+import com.googlecode.jmxtrans.ColumnarOutputWriter;
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.MetricId;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
+import com.googlecode.jmxtrans.model.Server;
 import com.googlecode.jmxtrans.util.BaseOutputWriter;
 import com.googlecode.jmxtrans.util.JmxUtils;
 import com.googlecode.jmxtrans.util.ValidationException;
@@ -14,6 +19,8 @@ import org.slf4j.LoggerFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.io.IOException;
 
 import org.apache.commons.lang.StringUtils;
@@ -28,7 +35,7 @@ import static info.ganglia.gmetric4j.gmetric.GMetric.UDPAddressingMode;
  * @author Julien Nicoulaud <http://github.com/nicoulaj>
  * @author jon
  */
-public class GangliaWriter extends BaseOutputWriter {
+public class GangliaWriter extends BaseOutputWriter implements ColumnarOutputWriter {
 
 	private static final Pattern PATTERN_HOST_IP = Pattern.compile("(.+):([^:]+)$");
 	
@@ -69,7 +76,12 @@ public class GangliaWriter extends BaseOutputWriter {
     protected int tmax = DEFAULT_TMAX;
     protected int dmax = DEFAULT_DMAX;
     protected String groupName = DEFAULT_GROUP_NAME;
-    protected String spoofedHostName = null;
+
+    /**
+     * The spoofed host names by host and alias of the servers written, as a
+     * writer is shared by the queries of every server with the same settings.
+     */
+    private final ConcurrentMap<String, String> spoofedHostNames = new ConcurrentHashMap<String, String>();
 
     /** Parse and validate settings. */
     @Override
@@ -116,9 +128,6 @@ public class GangliaWriter extends BaseOutputWriter {
         // Parse and validate group name setting
         groupName = getStringSetting(GROUP_NAME, DEFAULT_GROUP_NAME);
 
-    	// Determine the spoofed hostname
-        spoofedHostName = getSpoofedHostName(query.getServer().getHost(), query.getServer().getAlias());
-        
         log.debug("Validated Ganglia metric [" +
                   HOST + ": " + host + ", " +
                   PORT + ": " + port + ", " +
@@ -129,42 +138,83 @@ public class GangliaWriter extends BaseOutputWriter {
                   SLOPE + ": " + slope + ", " +
                   TMAX + ": " + tmax + ", " +
                   DMAX + ": " + dmax + ", " +
-                  SPOOF_NAME + ": " + spoofedHostName + ", " +
                   GROUP_NAME + ": '" + groupName + "']");
     }
 
     /** Send query result values to Ganglia. */
     @Override
     public void doWrite(Query query) throws Exception {
+        final String spoofedHostName = getSpoofedHostName(query.getServer());
         for (final Result result : query.getResults()) {
             if (result.getValues() != null) {
                 for (final Map.Entry<String, Object> resultValue : result.getValues().entrySet()) {
                     final String name = JmxUtils.getKeyString2(query, result, resultValue, getTypeNames(), null);
-                    final String value = resultValue.getValue().toString();
-                    log.debug("Sending Ganglia metric {}={}", name, value);
-                    new GMetric(
-                            host,
-                            port,
-                            addressingMode,
-                            ttl,
-                            v31,
-                            null,
-                            spoofedHostName
-                    ).announce(
-                            name,
-                            value,
-                            getType(resultValue.getValue()),
-                            units,
-                            slope,
-                            tmax,
-                            dmax,
-                            groupName
-                    );
+                    announce(spoofedHostName, name, resultValue.getValue().toString(), getType(resultValue.getValue()));
                 }
             }
         }
     }
 
+    /**
+     * Same as {@link #doWrite(Query)}, taking the type of each value from the
+     * kind the batch gave it instead of parsing it again.
+     */
+    @Override
+    public void doWrite(ResultBatch batch) throws Exception {
+        final Query query = batch.getQuery();
+        final MetricBatch metrics = batch.getMetrics();
+        final String spoofedHostName = getSpoofedHostName(query.getServer());
+        for (int i = 0; i < metrics.size(); i++) {
+            final MetricId id = metrics.getId(i);
+            String name = id.getCachedName(this, query);
+            if (name == null) {
+                name = JmxUtils.getKeyString2(query, id, getTypeNames());
+                id.setCachedName(this, query, name);
+            }
+            announce(spoofedHostName, name, metrics.appendValue(new StringBuilder(), i).toString(), getType(metrics, i));
+        }
+    }
+
+    /** Sends one metric, as coming from the host spoofedHostName. */
+    protected void announce(final String spoofedHostName, final String name, final String value, final GMetricType type) throws Exception {
+        log.debug("Sending Ganglia metric {}={}", name, value);
+        new GMetric(
+                host,
+                port,
+                addressingMode,
+                ttl,
+                v31,
+                null,
+                spoofedHostName
+        ).announce(
+                name,
+                value,
+                type,
+                units,
+                slope,
+                tmax,
+                dmax,
+                groupName
+        );
+    }
+
+    /**
+     * The spoofed host name of the metrics of a server, looked up once per
+     * host and alias. Null without a server, ie: the host of jmxtrans.
+     */
+    private String getSpoofedHostName(final Server server) {
+        if (server == null) {
+            return null;
+        }
+        final String key = server.getHost() + "|" + server.getAlias();
+        String spoofed = spoofedHostNames.get(key);
+        if (spoofed == null) {
+            spoofed = getSpoofedHostName(server.getHost(), server.getAlias());
+            spoofedHostNames.put(key, spoofed);
+        }
+        return spoofed;
+    }
+
     /**
     * Determines the spoofed host name to be used when emitting metrics to a
     * gmond process. Spoofed host names are of the form IP:hostname.
@@ -208,6 +258,24 @@ public class GangliaWriter extends BaseOutputWriter {
     	return "x:" + spoofed;
     }
 
+    /**
+     * The Ganglia gmetric type of a value of a batch, the same one
+     * {@link #getType(Object)} would pick.
+     */
+    private static GMetricType getType(final MetricBatch metrics, final int i) {
+        switch (metrics.getType(i)) {
+            case MetricBatch.FLOAT:
+                return GMetricType.FLOAT;
+            case MetricBatch.DOUBLE:
+                return GMetricType.DOUBLE;
+            case MetricBatch.OBJECT:
+                // numbers as objects or strings all parse as doubles
+                return metrics.isNumeric(i) ? GMetricType.DOUBLE : getType(metrics.getValue(i));
+            default:
+                return GMetricType.INT32;
+        }
+    }
+
     /**
      * Guess the Ganglia gmetric type to use for a given object.
      *
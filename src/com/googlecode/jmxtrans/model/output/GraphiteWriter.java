@@ -1,9 +1,13 @@
 package com.googlecode.jmxtrans.model.output;
 
+import com.googlecode.jmxtrans.ColumnarOutputWriter;
 import com.googlecode.jmxtrans.jmx.ManagedGenericKeyedObjectPool;
 import com.googlecode.jmxtrans.jmx.ManagedObject;
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.MetricId;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
 import com.googlecode.jmxtrans.model.Server;
 import com.googlecode.jmxtrans.util.*;
 import org.apache.commons.pool.KeyedObjectPool;
@@ -13,10 +17,16 @@ import org.slf4j.LoggerFactory;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -34,7 +44,7 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * @author jon
  */
-public class GraphiteWriter extends BaseOutputWriter {
+public class GraphiteWriter extends BaseOutputWriter implements ColumnarOutputWriter {
 
 	private static final Logger log = LoggerFactory.getLogger(GraphiteWriter.class);
 	public static final String ROOT_PREFIX = "rootPrefix";
@@ -54,6 +64,12 @@ public class GraphiteWriter extends BaseOutputWriter {
 	private ManagedObject mbean;
 	private InetSocketAddress address;
 
+	/** How many chars of lines a cycle keeps before sending them. */
+	private static final int CYCLE_BUFFER_SIZE = 64 * 1024;
+
+	/** The open cycles, by server */
+	private final Map<Server, Cycle> cycles = new IdentityHashMap<Server, Cycle>();
+
 	/**
 	 * Uses JmxUtils.getDefaultPoolMap()
 	 */
@@ -129,19 +145,7 @@ public class GraphiteWriter extends BaseOutputWriter {
 
 	/** */
 	public void doWrite(Query query) throws Exception {
-		Socket socket = null;
-		statusLock.lock();
-		try {
-			while (status == GraphiteWriterStatus.STARTING) {
-				statusConditionStarted.await();
-			}
-			if (status != GraphiteWriterStatus.STARTED) {
-				throw new LifecycleException("GraphiteWriter instance should be started");
-			}
-			socket = (Socket) pool.borrowObject(address);
-		} finally {
-			statusLock.unlock();
-		}
+		Socket socket = this.borrowSocket();
 
 		try {
 			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
@@ -185,6 +189,158 @@ public class GraphiteWriter extends BaseOutputWriter {
 			pool.returnObject(address, socket);
 		}
 	}
+
+	/**
+	 * Same as {@link #doWrite(Query)}, skipping the values the batch already
+	 * knows aren't numbers. The key of each value is only built the first
+	 * time.
+	 *
+	 * During a cycle of the server the lines are kept and sent together at
+	 * its end, or once there are CYCLE_BUFFER_SIZE chars of them, so a socket
+	 * is only borrowed while they are sent. Otherwise a socket is borrowed for
+	 * the batch.
+	 */
+	@Override
+	public void doWrite(ResultBatch batch) throws Exception {
+		Cycle cycle;
+		synchronized (this.cycles) {
+			cycle = this.cycles.get(batch.getServer());
+		}
+		if (cycle != null) {
+			synchronized (cycle) {
+				this.write(batch, cycle.buffer);
+				if (cycle.buffer.getBuffer().length() >= CYCLE_BUFFER_SIZE) {
+					this.send(cycle.buffer);
+				}
+			}
+			return;
+		}
+
+		Socket socket = this.borrowSocket();
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+			this.write(batch, writer);
+			writer.flush();
+		} finally {
+			pool.returnObject(address, socket);
+		}
+	}
+
+	/**
+	 * Starts keeping the lines of the server's batches.
+	 */
+	@Override
+	public void beginCycle(Server server) throws Exception {
+		synchronized (this.cycles) {
+			Cycle cycle = this.cycles.get(server);
+			if (cycle != null) {
+				cycle.depth++;
+			} else {
+				this.cycles.put(server, new Cycle());
+			}
+		}
+	}
+
+	/**
+	 * Sends the lines kept during the cycle.
+	 */
+	@Override
+	public void endCycle(Server server) throws Exception {
+		Cycle cycle;
+		synchronized (this.cycles) {
+			cycle = this.cycles.get(server);
+			if ((cycle == null) || (cycle.depth-- > 0)) {
+				return;
+			}
+			this.cycles.remove(server);
+		}
+		synchronized (cycle) {
+			this.send(cycle.buffer);
+		}
+	}
+
+	/**
+	 * Sends the kept lines on a pooled socket and empties the buffer, even if
+	 * they couldn't be sent.
+	 */
+	private void send(StringWriter buffer) throws Exception {
+		if (buffer.getBuffer().length() == 0) {
+			return;
+		}
+		Socket socket = this.borrowSocket();
+		boolean sent = false;
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+			writer.write(buffer.toString());
+			writer.flush();
+			sent = true;
+		} finally {
+			buffer.getBuffer().setLength(0);
+			if (sent) {
+				pool.returnObject(address, socket);
+			} else {
+				pool.invalidateObject(address, socket);
+			}
+		}
+	}
+
+	/**
+	 * Writes the lines of the numeric values of the batch.
+	 */
+	private void write(ResultBatch batch, Writer writer) throws IOException {
+		Query query = batch.getQuery();
+		List<String> typeNames = this.getTypeNames();
+		MetricBatch metrics = batch.getMetrics();
+		long epoch = metrics.getEpoch() / 1000;
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < metrics.size(); i++) {
+			MetricId id = metrics.getId(i);
+			if (metrics.isNumeric(i)) {
+				String key = id.getCachedName(this, query);
+				if (key == null) {
+					key = JmxUtils.getKeyString(query, id, typeNames, rootPrefix).replaceAll("[()]", "_");
+					id.setCachedName(this, query, key);
+				}
+
+				sb.setLength(0);
+				sb.append(key);
+				sb.append(" ");
+				metrics.appendValue(sb, i);
+				sb.append(" ");
+				sb.append(epoch);
+				sb.append("\n");
+
+				String line = sb.toString();
+				if (isDebugEnabled()) {
+					log.debug("Graphite Message: " + line.trim());
+				}
+				writer.write(line);
+			} else {
+				if (log.isWarnEnabled()) {
+					log.warn("Unable to submit non-numeric value to Graphite: \"" + metrics.getValue(i) + "\" from " + id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for the writer to be started and takes a socket from the pool.
+	 */
+	private Socket borrowSocket() throws Exception {
+		statusLock.lock();
+		try {
+			while (status == GraphiteWriterStatus.STARTING) {
+				statusConditionStarted.await();
+			}
+			if (status != GraphiteWriterStatus.STARTED) {
+				throw new LifecycleException("GraphiteWriter instance should be started");
+			}
+			return (Socket) pool.borrowObject(address);
+		} finally {
+			statusLock.unlock();
+		}
+	}
 	
 	/**
 	 * Starts the pool and register it with JMX
@@ -230,4 +386,11 @@ public class GraphiteWriter extends BaseOutputWriter {
 		}
 	}
 
+	/**
+	 * The lines of a cycle of a server.
+	 */
+	private static class Cycle {
+		private final StringWriter buffer = new StringWriter();
+		private int depth = 0;
+	}
 }
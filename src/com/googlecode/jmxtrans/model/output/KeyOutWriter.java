@@ -12,8 +12,12 @@ import org.apache.log4j.PatternLayout;
 import org.apache.log4j.RollingFileAppender;
 import org.apache.log4j.spi.LoggerFactory;
 
+import com.googlecode.jmxtrans.ColumnarOutputWriter;
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.MetricId;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
 import com.googlecode.jmxtrans.util.BaseOutputWriter;
 import com.googlecode.jmxtrans.util.JmxUtils;
 import com.googlecode.jmxtrans.util.ValidationException;
@@ -28,7 +32,7 @@ import com.googlecode.jmxtrans.util.ValidationException;
  * 
  * @author jon
  */
-public class KeyOutWriter extends BaseOutputWriter {
+public class KeyOutWriter extends BaseOutputWriter implements ColumnarOutputWriter {
 
 	protected static final String LOG_PATTERN = "%m%n";
 	protected static final int LOG_IO_BUFFER_SIZE_BYTES = 1024;
@@ -73,7 +77,7 @@ public class KeyOutWriter extends BaseOutputWriter {
 		List<String> typeNames = getTypeNames();
 
 		for (Result result : query.getResults()) {
-			Map<String, Object> resultValues = result.getValues();
+			Map<String, Object> resultValues = result.getNumericValues();
 			if (resultValues != null) {
 				for (Entry<String, Object> values : resultValues.entrySet()) {
 					if (JmxUtils.isNumeric(values.getValue())) {
@@ -92,6 +96,38 @@ public class KeyOutWriter extends BaseOutputWriter {
 		}
 	}
 
+	/**
+	 * Same as {@link #doWrite(Query)}, reading the values by column. The key
+	 * of each value is only built the first time.
+	 */
+	@Override
+	public void doWrite(ResultBatch batch) throws Exception {
+		Query query = batch.getQuery();
+		List<String> typeNames = getTypeNames();
+
+		MetricBatch metrics = batch.getMetrics();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < metrics.size(); i++) {
+			if (metrics.isNumeric(i)) {
+				MetricId id = metrics.getId(i);
+				String key = id.getCachedName(this, query);
+				if (key == null) {
+					key = JmxUtils.getKeyString(query, id, typeNames, null);
+					id.setCachedName(this, query, key);
+				}
+
+				sb.setLength(0);
+				sb.append(key);
+				sb.append("\t");
+				metrics.appendValue(sb, i);
+				sb.append("\t");
+				sb.append(metrics.getEpoch());
+
+				logger.info(sb.toString());
+			}
+		}
+	}
+
 	/**
 	 * Initializes the logger. This is called when we need to create a new
 	 * logger for the given file name.
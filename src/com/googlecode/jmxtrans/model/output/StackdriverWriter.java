@@ -202,7 +202,7 @@ public class StackdriverWriter extends BaseOutputWriter {
 		g.writeArrayFieldStart("data");
 
 		for (Result metric : results) {
-			Map<String, Object> values = metric.getValues();
+			Map<String, Object> values = metric.getNumericValues();
 			if (values != null) {
 				for (Entry<String, Object> entry : values.entrySet()) {
 					if (JmxUtils.isNumeric(entry.getValue())) {
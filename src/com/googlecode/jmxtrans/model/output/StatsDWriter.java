@@ -14,10 +14,14 @@ import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.googlecode.jmxtrans.ColumnarOutputWriter;
 import com.googlecode.jmxtrans.jmx.ManagedGenericKeyedObjectPool;
 import com.googlecode.jmxtrans.jmx.ManagedObject;
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.MetricId;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
 import com.googlecode.jmxtrans.model.Server;
 import com.googlecode.jmxtrans.util.BaseOutputWriter;
 import com.googlecode.jmxtrans.util.DatagramSocketFactory;
@@ -31,7 +35,7 @@ import com.googlecode.jmxtrans.util.ValidationException;
  *
  * @author neilh
  */
-public class StatsDWriter extends BaseOutputWriter {
+public class StatsDWriter extends BaseOutputWriter implements ColumnarOutputWriter {
 
 	private static final Logger log = LoggerFactory.getLogger(StatsDWriter.class);
 	public static final String ROOT_PREFIX = "rootPrefix";
@@ -50,6 +54,9 @@ public class StatsDWriter extends BaseOutputWriter {
 	private KeyedObjectPool pool;
 	private ManagedObject mbean;
 
+	/** The number of server cycles going on, the buffer is only sent when full until they end */
+	private int openCycles = 0;
+
 
 	/**
 	 * Uses JmxUtils.getDefaultPoolMap()
@@ -129,7 +136,7 @@ public class StatsDWriter extends BaseOutputWriter {
 				log.debug(result.toString());
 			}
 
-			Map<String, Object> resultValues = result.getValues();
+			Map<String, Object> resultValues = result.getNumericValues();
 			if (resultValues != null) {
 				for (Entry<String, Object> values : resultValues.entrySet()) {
 					if (JmxUtils.isNumeric(values.getValue())) {
@@ -156,6 +163,44 @@ public class StatsDWriter extends BaseOutputWriter {
 		}
 	}
 
+	/**
+	 * Same as {@link #doWrite(Query)}, skipping the values the batch already
+	 * knows aren't numbers.
+	 */
+	@Override
+	public void doWrite(ResultBatch batch) throws Exception {
+		Query query = batch.getQuery();
+		List<String> typeNames = this.getTypeNames();
+
+		MetricBatch metrics = batch.getMetrics();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < metrics.size(); i++) {
+			if (metrics.isNumeric(i)) {
+				MetricId id = metrics.getId(i);
+				String key = id.getCachedName(this, query);
+				if (key == null) {
+					key = JmxUtils.getKeyString(query, id, typeNames, rootPrefix);
+					id.setCachedName(this, query, key);
+				}
+
+				sb.setLength(0);
+				sb.append(key);
+				sb.append(":");
+				metrics.appendValue(sb, i);
+				sb.append("|");
+				sb.append(bucketType);
+
+				String line = sb.toString().trim();
+
+				if (isDebugEnabled()) {
+					log.debug("StatsD Message: " + line);
+				}
+
+				doSend(line);
+			}
+		}
+	}
+
 	private synchronized boolean doSend(String stat) {
 		try {
 			final byte[] data = stat.getBytes("utf-8");
@@ -173,7 +218,9 @@ public class StatsDWriter extends BaseOutputWriter {
 
 			sendBuffer.put(data); // append the data
 
-			flush();
+			if (openCycles == 0) {
+				flush();
+			}
 			return true;
 
 		} catch (IOException e) {
@@ -182,6 +229,27 @@ public class StatsDWriter extends BaseOutputWriter {
 		}
 	}
 
+	/**
+	 * Packs the metrics of the cycle into as few datagrams as possible.
+	 */
+	@Override
+	public synchronized void beginCycle(Server server) throws Exception {
+		openCycles++;
+	}
+
+	/**
+	 * Sends what is left in the buffer.
+	 */
+	@Override
+	public synchronized void endCycle(Server server) throws Exception {
+		if (openCycles > 0) {
+			openCycles--;
+		}
+		if (openCycles == 0) {
+			flush();
+		}
+	}
+
 	public synchronized boolean flush() {
 		try {
 			final int sizeOfBuffer = sendBuffer.position();
@@ -2,6 +2,7 @@ package com.googlecode.jmxtrans.model.output;
 
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
 import com.googlecode.jmxtrans.util.BaseOutputWriter;
 import com.googlecode.jmxtrans.util.ValidationException;
 
@@ -27,4 +28,11 @@ public class StdOutWriter extends BaseOutputWriter {
 			System.out.println(r);
 		}
 	}
+
+	@Override
+	public void doWrite(ResultBatch batch) throws Exception {
+		for (Result r : batch.getResults()) {
+			System.out.println(r);
+		}
+	}
 }
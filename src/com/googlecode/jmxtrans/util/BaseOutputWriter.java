@@ -8,14 +8,16 @@ import java.util.TreeMap;
 import org.apache.commons.pool.KeyedObjectPool;
 import org.codehaus.jackson.annotate.JsonIgnore;
 
-import com.googlecode.jmxtrans.OutputWriter;
+import com.googlecode.jmxtrans.BatchOutputWriter;
+import com.googlecode.jmxtrans.model.ResultBatch;
+import com.googlecode.jmxtrans.model.Server;
 
 /**
  * Implements the common code for output filters.
  * 
  * @author jon
  */
-public abstract class BaseOutputWriter implements OutputWriter {
+public abstract class BaseOutputWriter implements BatchOutputWriter {
 
 	public static final String HOST = "host";
 	public static final String PORT = "port";
@@ -24,9 +26,12 @@ public abstract class BaseOutputWriter implements OutputWriter {
 	public static final String BINARY_PATH = "binaryPath";
 	public static final String DEBUG = "debug";
 	public static final String TYPE_NAMES = "typeNames";
+	public static final String SEND_ON_CHANGE = "sendOnChange";
+	public static final String HEARTBEAT_CYCLES = "heartbeatCycles";
 
 	private Boolean debugEnabled = null;
 	private Map<String, Object> settings;
+	private ChangeFilter changeFilter;
 
 	/** */
 	public void addSetting(String key, Object value) {
@@ -152,6 +157,19 @@ public abstract class BaseOutputWriter implements OutputWriter {
         }
     }
 
+	/**
+	 * The filter dropping the numbers which didn't change when the
+	 * sendOnChange setting is true, with unchanged numbers sent every
+	 * heartbeatCycles runs. Null otherwise.
+	 */
+	@JsonIgnore
+	public synchronized ChangeFilter getChangeFilter() {
+		if ((this.changeFilter == null) && getBooleanSetting(SEND_ON_CHANGE)) {
+			this.changeFilter = new ChangeFilter(getIntegerSetting(HEARTBEAT_CYCLES, ChangeFilter.DEFAULT_HEARTBEAT));
+		}
+		return this.changeFilter;
+	}
+
 	/** */
 	@JsonIgnore
 	public boolean isDebugEnabled() {
@@ -199,6 +217,29 @@ public abstract class BaseOutputWriter implements OutputWriter {
 		return JmxUtils.cleanupStr(name);
 	}
 
+	/**
+	 * Hands the batch to {@link #doWrite(com.googlecode.jmxtrans.model.Query)}
+	 * as a copy of the query holding the results. Writers which don't need the
+	 * Query can override this instead.
+	 */
+	public void doWrite(ResultBatch batch) throws Exception {
+		this.doWrite(batch.toQuery());
+	}
+
+	/**
+	 * A do nothing method.
+	 */
+	public void beginCycle(Server server) throws Exception {
+		// Do nothing.
+	}
+
+	/**
+	 * A do nothing method.
+	 */
+	public void endCycle(Server server) throws Exception {
+		// Do nothing.
+	}
+
 	/**
 	 * A do nothing method.
 	 */
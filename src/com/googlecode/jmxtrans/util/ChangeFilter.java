@@ -0,0 +1,212 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
+
+/**
+ * Drops the numbers which haven't changed since they were last sent, so that
+ * values like heap max or pool sizes aren't formatted and shipped every run.
+ * Each of them is still sent once every heartbeat runs, so that the graphs
+ * don't go blank.
+ *
+ * The last value of each metric of each query is kept in a map keyed by the
+ * 64 bit hash of its MetricId. Values which aren't numbers are always sent.
+ *
+ * The filtered batch has the same form as the one given: the kept columns of
+ * a MetricBatch, or copies of the Results with their kept values, so nothing
+ * but the dropped values is lost either way.
+ *
+ * One filter belongs to one writer, see BaseOutputWriter.getChangeFilter().
+ */
+public class ChangeFilter {
+
+	public static final int DEFAULT_HEARTBEAT = 10;
+
+	private final int heartbeat;
+	private final Map<Query, History> histories = new IdentityHashMap<Query, History>();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	/**
+	 * @param heartbeat
+	 *            every how many runs an unchanged value is sent anyway
+	 */
+	public ChangeFilter(int heartbeat) {
+		this.heartbeat = Math.max(1, heartbeat);
+	}
+
+	/**
+	 * The batch with only the values which changed or are due for a
+	 * heartbeat, collected at the same time. The same batch if they all are.
+	 */
+	public ResultBatch filter(ResultBatch batch) {
+		MetricBatch metrics = batch.getMetrics();
+		History history = this.getHistory(batch.getQuery());
+
+		boolean[] keep = new boolean[metrics.size()];
+		int kept = 0;
+		synchronized (history) {
+			for (int i = 0; i < metrics.size(); i++) {
+				keep[i] = !metrics.isNumeric(i) || history.update(metrics.getId(i).getHash64(), metrics.getKind(i), metrics.getBits(i), this.heartbeat);
+				if (keep[i]) {
+					kept++;
+				}
+			}
+		}
+		this.sent.addAndGet(kept);
+		this.suppressed.addAndGet(metrics.size() - kept);
+		if (kept == metrics.size()) {
+			return batch;
+		}
+
+		if (batch.isColumnar()) {
+			return new ResultBatch(batch.getQuery(), metrics.select(keep));
+		}
+		return new ResultBatch(batch.getQuery(), select(batch.getResults(), keep), batch.getEpoch());
+	}
+
+	/**
+	 * Copies of the Results with only the values to keep, which are numbered
+	 * in the order MetricBatch.fromResults() added them.
+	 */
+	private static List<Result> select(List<Result> results, boolean[] keep) {
+		List<Result> selected = new ArrayList<Result>(results.size());
+		int i = 0;
+		for (Result result : results) {
+			if (result.getValues() == null) {
+				continue;
+			}
+			Map<String, Object> values = new TreeMap<String, Object>();
+			for (Entry<String, Object> entry : result.getValues().entrySet()) {
+				if (keep[i++]) {
+					values.put(entry.getKey(), entry.getValue());
+				}
+			}
+			if (!values.isEmpty()) {
+				Result copy = new Result(result.getAttributeName());
+				copy.setQuery(result.getQuery());
+				copy.setClassName(result.getClassName());
+				copy.setTypeName(result.getTypeName());
+				copy.setEpoch(result.getEpoch());
+				copy.setValues(values);
+				selected.add(copy);
+			}
+		}
+		return selected;
+	}
+
+	/** */
+	private synchronized History getHistory(Query query) {
+		History history = this.histories.get(query);
+		if (history == null) {
+			history = new History();
+			this.histories.put(query, history);
+		}
+		return history;
+	}
+
+	/** */
+	public int getHeartbeat() {
+		return this.heartbeat;
+	}
+
+	/**
+	 * How many values were let through.
+	 */
+	public long getSentCount() {
+		return this.sent.get();
+	}
+
+	/**
+	 * How many values were dropped because they didn't change.
+	 */
+	public long getSuppressedCount() {
+		return this.suppressed.get();
+	}
+
+	/**
+	 * The last values sent for the metrics of one query: an open addressing
+	 * hash map from the hash of the MetricId to the kind and bits of the value
+	 * and the number of runs since it was sent.
+	 */
+	private static class History {
+		private long[] keys = new long[64];
+		private long[] bits = new long[64];
+		private byte[] kinds = new byte[64];
+		private int[] skipped = new int[64];
+		private int size = 0;
+
+		/**
+		 * Remembers the value, returning whether it should be sent.
+		 */
+		public boolean update(long key, byte kind, long value, int heartbeat) {
+			int i = this.indexOf(key);
+			if (this.keys[i] == 0) {
+				this.keys[i] = key;
+				this.set(i, kind, value);
+				if (++this.size * 2 > this.keys.length) {
+					this.rehash();
+				}
+				return true;
+			}
+			if ((this.kinds[i] != kind) || (this.bits[i] != value) || (this.skipped[i] + 1 >= heartbeat)) {
+				this.set(i, kind, value);
+				return true;
+			}
+			this.skipped[i]++;
+			return false;
+		}
+
+		/** */
+		private void set(int i, byte kind, long value) {
+			this.kinds[i] = kind;
+			this.bits[i] = value;
+			this.skipped[i] = 0;
+		}
+
+		/**
+		 * The slot of the key, or the empty slot where it would go. Keys are
+		 * never 0.
+		 */
+		private int indexOf(long key) {
+			int mask = this.keys.length - 1;
+			int i = (int) (key ^ (key >>> 32)) & mask;
+			while ((this.keys[i] != 0) && (this.keys[i] != key)) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		/** */
+		private void rehash() {
+			long[] oldKeys = this.keys;
+			long[] oldBits = this.bits;
+			byte[] oldKinds = this.kinds;
+			int[] oldSkipped = this.skipped;
+			int capacity = oldKeys.length * 2;
+			this.keys = new long[capacity];
+			this.bits = new long[capacity];
+			this.kinds = new byte[capacity];
+			this.skipped = new int[capacity];
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldKeys[j] != 0) {
+					int i = this.indexOf(oldKeys[j]);
+					this.keys[i] = oldKeys[j];
+					this.bits[i] = oldBits[j];
+					this.kinds[i] = oldKinds[j];
+					this.skipped[i] = oldSkipped[j];
+				}
+			}
+		}
+	}
+}
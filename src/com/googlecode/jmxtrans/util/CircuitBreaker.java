@@ -0,0 +1,108 @@
+package com.googlecode.jmxtrans.util;
+
+/**
+ * Stops the runs of one target (host:port) for a while once it is found to
+ * be unreachable, so that a server which is down doesn't hold a thread in a
+ * connect timeout every period.
+ * <ul>
+ * <li>closed: the runs go ahead. After failureThreshold failed runs in a row
+ * it opens.</li>
+ * <li>open: the runs are skipped until the backoff is over. The backoff
+ * doubles each time it opens again without having closed, up to the max,
+ * give or take the jitter.</li>
+ * <li>half open: the first run after the backoff goes ahead as a trial, and
+ * the others are skipped until it's done. It closes if the trial works, and
+ * opens again if it doesn't.</li>
+ * </ul>
+ * The settings and the counts of transitions are kept in
+ * {@link CircuitBreakers}.
+ */
+public class CircuitBreaker {
+
+	/** */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final CircuitBreakers breakers;
+	private final String target;
+
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private int opens = 0;
+	private long backoffMillis = 0;
+	private long openUntil = 0;
+
+	CircuitBreaker(CircuitBreakers breakers, String target) {
+		this.breakers = breakers;
+		this.target = target;
+	}
+
+	/**
+	 * Whether the run may go ahead, which it must then report with
+	 * {@link #recordSuccess()} or {@link #recordFailure()}.
+	 */
+	public synchronized boolean allowRun() {
+		if (this.state == State.CLOSED) {
+			return true;
+		}
+		if ((this.state == State.OPEN) && (System.currentTimeMillis() >= this.openUntil)) {
+			this.state = State.HALF_OPEN;
+			this.breakers.recordHalfOpen(this.target);
+			return true;
+		}
+		this.breakers.recordSkip();
+		return false;
+	}
+
+	/**
+	 * The target was reached.
+	 */
+	public synchronized void recordSuccess() {
+		this.failures = 0;
+		if (this.state != State.CLOSED) {
+			this.state = State.CLOSED;
+			this.opens = 0;
+			this.backoffMillis = 0;
+			this.breakers.recordClose(this.target);
+		}
+	}
+
+	/**
+	 * The target couldn't be reached.
+	 */
+	public synchronized void recordFailure() {
+		this.failures++;
+		if ((this.state == State.HALF_OPEN) || ((this.state == State.CLOSED) && (this.failures >= this.breakers.getFailureThreshold()))) {
+			this.opens++;
+			this.backoffMillis = this.breakers.getBackoffMillis(this.opens);
+			this.openUntil = System.currentTimeMillis() + this.backoffMillis;
+			this.state = State.OPEN;
+			this.breakers.recordOpen(this.target, this.backoffMillis);
+		}
+	}
+
+	/** */
+	public synchronized State getState() {
+		return this.state;
+	}
+
+	/**
+	 * How many runs in a row have failed.
+	 */
+	public synchronized int getConsecutiveFailures() {
+		return this.failures;
+	}
+
+	/**
+	 * How long it was last opened for, in millis.
+	 */
+	public synchronized long getBackoffMillis() {
+		return this.backoffMillis;
+	}
+
+	/** */
+	public String getTarget() {
+		return this.target;
+	}
+}
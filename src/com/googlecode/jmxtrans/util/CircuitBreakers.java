@@ -0,0 +1,165 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jmxtrans.model.Server;
+
+/**
+ * The {@link CircuitBreaker} of each target (host:port), with their settings
+ * and how many times they changed state.
+ *
+ * The backoff of a breaker which opened n times in a row is baseBackoffMillis
+ * * 2^(n-1), up to maxBackoffMillis, moved by a random amount up to the
+ * jitter fraction of it either way, so that the servers of a rack which went
+ * down together aren't all tried again at the same time.
+ */
+public class CircuitBreakers {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreakers.class);
+
+	public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+	public static final long DEFAULT_BASE_BACKOFF_MILLIS = 1000 * 30;
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000 * 60 * 10;
+	public static final double DEFAULT_JITTER = 0.2;
+
+	private final int failureThreshold;
+	private final long baseBackoffMillis;
+	private final long maxBackoffMillis;
+	private final double jitter;
+	private final Random random = new Random();
+
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	private final AtomicLong openedCount = new AtomicLong();
+	private final AtomicLong halfOpenedCount = new AtomicLong();
+	private final AtomicLong closedCount = new AtomicLong();
+	private final AtomicLong skippedCount = new AtomicLong();
+
+	/** */
+	public CircuitBreakers() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_BASE_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, DEFAULT_JITTER);
+	}
+
+	/**
+	 * @param jitter
+	 *            the fraction of the backoff it may be moved by, ie: 0.2
+	 */
+	public CircuitBreakers(int failureThreshold, long baseBackoffMillis, long maxBackoffMillis, double jitter) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.baseBackoffMillis = baseBackoffMillis;
+		this.maxBackoffMillis = Math.max(baseBackoffMillis, maxBackoffMillis);
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Gets the breaker of the server's target, creating it the first time.
+	 */
+	public CircuitBreaker get(Server server) {
+		String target = RunDeadline.getTarget(server);
+		CircuitBreaker breaker = this.breakers.get(target);
+		if (breaker == null) {
+			breaker = new CircuitBreaker(this, target);
+			CircuitBreaker existing = this.breakers.putIfAbsent(target, breaker);
+			if (existing != null) {
+				breaker = existing;
+			}
+		}
+		return breaker;
+	}
+
+	/** */
+	int getFailureThreshold() {
+		return this.failureThreshold;
+	}
+
+	/**
+	 * The backoff after opening n times in a row.
+	 */
+	long getBackoffMillis(int opens) {
+		long backoff = this.maxBackoffMillis;
+		if (opens < 31) {
+			backoff = Math.min(this.maxBackoffMillis, this.baseBackoffMillis << (opens - 1));
+		}
+		double move;
+		synchronized (this.random) {
+			move = (this.random.nextDouble() * 2) - 1;
+		}
+		return Math.max(0, backoff + (long) (backoff * this.jitter * move));
+	}
+
+	/** */
+	void recordOpen(String target, long backoffMillis) {
+		this.openedCount.incrementAndGet();
+		log.warn("Target: " + target + " is unreachable, skipping its runs for " + backoffMillis + " ms");
+	}
+
+	/** */
+	void recordHalfOpen(String target) {
+		this.halfOpenedCount.incrementAndGet();
+		if (log.isDebugEnabled()) {
+			log.debug("Trying target: " + target + " again");
+		}
+	}
+
+	/** */
+	void recordClose(String target) {
+		this.closedCount.incrementAndGet();
+		log.info("Target: " + target + " is reachable again");
+	}
+
+	/** */
+	void recordSkip() {
+		this.skippedCount.incrementAndGet();
+	}
+
+	/**
+	 * The state of each target whose breaker isn't closed, sorted by target.
+	 */
+	public Map<String, String> getStates() {
+		Map<String, String> result = new TreeMap<String, String>();
+		for (CircuitBreaker breaker : this.breakers.values()) {
+			CircuitBreaker.State state = breaker.getState();
+			if (state != CircuitBreaker.State.CLOSED) {
+				result.put(breaker.getTarget(), state.name());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * How many breakers are open or half open.
+	 */
+	public int getOpenCount() {
+		return this.getStates().size();
+	}
+
+	/** */
+	public long getOpenedCount() {
+		return this.openedCount.get();
+	}
+
+	/** */
+	public long getHalfOpenedCount() {
+		return this.halfOpenedCount.get();
+	}
+
+	/** */
+	public long getClosedCount() {
+		return this.closedCount.get();
+	}
+
+	/**
+	 * How many runs were skipped because their breaker was open.
+	 */
+	public long getSkippedCount() {
+		return this.skippedCount.get();
+	}
+}
@@ -0,0 +1,235 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long lived thread pool shared by every server for running its queries.
+ *
+ * Instead of creating a pool per server run, each run asks for at most
+ * numQueryThreads workers. The calling thread is always one of those workers,
+ * so a run still makes progress when every pooled thread is busy with other
+ * servers.
+ *
+ * It can also run the workers on virtual threads, see {@link VirtualThreads},
+ * in which case there is no pool: each worker gets a thread of its own and
+ * only numQueryThreads caps how many a run uses.
+ */
+public class CollectionExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(CollectionExecutor.class);
+
+	public static final int DEFAULT_NUM_THREADS = 10;
+
+	private final ExecutorService executor;
+	/** The pool, null when running on virtual threads. */
+	private final ThreadPoolExecutor pool;
+	private final AtomicInteger virtualActive = new AtomicInteger(0);
+	private final AtomicLong virtualCompleted = new AtomicLong(0);
+
+	/** */
+	public CollectionExecutor() {
+		this(DEFAULT_NUM_THREADS);
+	}
+
+	/** */
+	public CollectionExecutor(int numThreads) {
+		this.pool = new ThreadPoolExecutor(numThreads, numThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new CollectionThreadFactory());
+		this.pool.allowCoreThreadTimeOut(true);
+		this.executor = this.pool;
+	}
+
+	/**
+	 * Runs the workers on the given executor, which starts a thread per task,
+	 * ie: {@link VirtualThreads#newExecutor(String)}.
+	 */
+	public CollectionExecutor(ExecutorService perTaskExecutor) {
+		this.pool = null;
+		this.executor = perTaskExecutor;
+	}
+
+	/**
+	 * Whether the workers run on virtual threads rather than on a pool.
+	 */
+	public boolean isVirtual() {
+		return this.pool == null;
+	}
+
+	/**
+	 * Runs all of the tasks and waits for them to finish, with no more than
+	 * maxConcurrency of them running at the same time. Exceptions thrown by a
+	 * task are logged and do not stop the other tasks.
+	 */
+	public void invokeAll(List<? extends Runnable> tasks, int maxConcurrency) throws InterruptedException {
+		int numLanes = Math.max(1, Math.min(maxConcurrency, tasks.size()));
+		AtomicInteger next = new AtomicInteger(0);
+		CountDownLatch finished = new CountDownLatch(numLanes - 1);
+
+		List<Lane> lanes = new ArrayList<Lane>(numLanes - 1);
+		for (int i = 1; i < numLanes; i++) {
+			Lane lane = new Lane(tasks, next, finished);
+			lanes.add(lane);
+			this.executor.execute((this.pool != null) ? lane : new VirtualLane(lane));
+		}
+
+		// the calling thread works too
+		new Lane(tasks, next, null).run();
+
+		for (Lane lane : lanes) {
+			// lanes still in the queue have nothing left to do
+			if (lane.claim()) {
+				if (this.pool != null) {
+					this.pool.remove(lane);
+				}
+				finished.countDown();
+			}
+		}
+		finished.await();
+	}
+
+	/**
+	 * Changes the number of pooled threads.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (this.pool == null) {
+			return;
+		}
+		if (numThreads > this.pool.getMaximumPoolSize()) {
+			this.pool.setMaximumPoolSize(numThreads);
+			this.pool.setCorePoolSize(numThreads);
+		} else {
+			this.pool.setCorePoolSize(numThreads);
+			this.pool.setMaximumPoolSize(numThreads);
+		}
+	}
+
+	/**
+	 * The size of the pool, 0 on virtual threads.
+	 */
+	public int getNumThreads() {
+		return (this.pool != null) ? this.pool.getMaximumPoolSize() : 0;
+	}
+
+	/** */
+	public int getPoolSize() {
+		return (this.pool != null) ? this.pool.getPoolSize() : this.virtualActive.get();
+	}
+
+	/** */
+	public int getActiveCount() {
+		return (this.pool != null) ? this.pool.getActiveCount() : this.virtualActive.get();
+	}
+
+	/** */
+	public int getQueueSize() {
+		return (this.pool != null) ? this.pool.getQueue().size() : 0;
+	}
+
+	/** */
+	public long getCompletedTaskCount() {
+		return (this.pool != null) ? this.pool.getCompletedTaskCount() : this.virtualCompleted.get();
+	}
+
+	/**
+	 * Stops accepting work and waits a bit for running queries to finish.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+		try {
+			if (!this.executor.awaitTermination(60, TimeUnit.SECONDS)) {
+				this.executor.shutdownNow();
+			}
+		} catch (InterruptedException ie) {
+			this.executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Takes the next unclaimed task until there are none left.
+	 */
+	private static class Lane implements Runnable {
+		private final List<? extends Runnable> tasks;
+		private final AtomicInteger next;
+		private final CountDownLatch finished;
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+		public Lane(List<? extends Runnable> tasks, AtomicInteger next, CountDownLatch finished) {
+			this.tasks = tasks;
+			this.next = next;
+			this.finished = finished;
+		}
+
+		/**
+		 * Only one of the pool and the caller gets to claim a lane.
+		 */
+		public boolean claim() {
+			return this.claimed.compareAndSet(false, true);
+		}
+
+		public void run() {
+			if ((this.finished != null) && !this.claim()) {
+				return;
+			}
+			try {
+				int i;
+				while ((i = this.next.getAndIncrement()) < this.tasks.size()) {
+					try {
+						this.tasks.get(i).run();
+					} catch (RuntimeException ex) {
+						log.debug("Query task failed", ex);
+					}
+				}
+			} finally {
+				if (this.finished != null) {
+					this.finished.countDown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A lane on a virtual thread, counted since there is no pool to ask.
+	 */
+	private class VirtualLane implements Runnable {
+		private final Lane lane;
+
+		public VirtualLane(Lane lane) {
+			this.lane = lane;
+		}
+
+		public void run() {
+			virtualActive.incrementAndGet();
+			try {
+				this.lane.run();
+			} finally {
+				virtualActive.decrementAndGet();
+				virtualCompleted.incrementAndGet();
+			}
+		}
+	}
+
+	/** */
+	private static class CollectionThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "jmxtrans-query-" + this.count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * A read only view of the values of a composite, used as the values of a
+ * Result instead of copying them into a TreeMap.
+ *
+ * The keys come in the same (sorted) order as they would from the TreeMap.
+ * Values are only read from the CompositeData when they are asked for, and the
+ * numeric view skips the keys whose type can't be numeric without reading
+ * them at all.
+ */
+public class CompositeValueMap extends AbstractMap<String, Object> {
+
+	/** The OpenType of the key is a Number */
+	public static final byte NUMBER = 0;
+	/** The OpenType of the key is a String, which may hold a number */
+	public static final byte STRING = 1;
+	/** Anything else, which is never numeric */
+	public static final byte OTHER = 2;
+
+	private final CompositeData data;
+	private final String[] keys;
+	private final byte[] types;
+	private final boolean[] included;
+	private final boolean numericOnly;
+	private Set<Entry<String, Object>> entrySet;
+
+	/**
+	 * @param keys
+	 *            the keys of the composite, sorted
+	 * @param types
+	 *            the type of each key
+	 * @param included
+	 *            which keys are part of the map, or null for all of them
+	 */
+	public CompositeValueMap(CompositeData data, String[] keys, byte[] types, boolean[] included) {
+		this(data, keys, types, included, false);
+	}
+
+	private CompositeValueMap(CompositeData data, String[] keys, byte[] types, boolean[] included, boolean numericOnly) {
+		this.data = data;
+		this.keys = keys;
+		this.types = types;
+		this.included = included;
+		this.numericOnly = numericOnly;
+	}
+
+	/**
+	 * The same view, without the values which JmxUtils.isNumeric() would turn
+	 * down.
+	 */
+	public CompositeValueMap numericValues() {
+		return this.numericOnly ? this : new CompositeValueMap(this.data, this.keys, this.types, this.included, true);
+	}
+
+	/**
+	 * Whether the key at the index is part of the map, reading the value only
+	 * if it has to.
+	 */
+	private boolean isIncluded(int i) {
+		if ((this.included != null) && !this.included[i]) {
+			return false;
+		}
+		if (this.numericOnly) {
+			switch (this.types[i]) {
+			case NUMBER:
+				return this.data.get(this.keys[i]) != null;
+			case STRING:
+				return JmxUtils.isNumeric(this.data.get(this.keys[i]));
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Object get(Object key) {
+		int i = this.indexOf(key);
+		return ((i >= 0) && this.isIncluded(i)) ? this.data.get(this.keys[i]) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		int i = this.indexOf(key);
+		return (i >= 0) && this.isIncluded(i);
+	}
+
+	/** */
+	private int indexOf(Object key) {
+		return (key instanceof String) ? Arrays.binarySearch(this.keys, key) : -1;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		if (this.entrySet == null) {
+			this.entrySet = new EntrySet();
+		}
+		return this.entrySet;
+	}
+
+	/** */
+	private class EntrySet extends AbstractSet<Entry<String, Object>> {
+		private int size = -1;
+
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			if (this.size < 0) {
+				int count = 0;
+				for (int i = 0; i < keys.length; i++) {
+					if (isIncluded(i)) {
+						count++;
+					}
+				}
+				this.size = count;
+			}
+			return this.size;
+		}
+	}
+
+	/** */
+	private class EntryIterator implements Iterator<Entry<String, Object>> {
+		private int next = this.advance(0);
+
+		private int advance(int from) {
+			int i = from;
+			while ((i < keys.length) && !isIncluded(i)) {
+				i++;
+			}
+			return i;
+		}
+
+		public boolean hasNext() {
+			return this.next < keys.length;
+		}
+
+		public Entry<String, Object> next() {
+			if (this.next >= keys.length) {
+				throw new NoSuchElementException();
+			}
+			String key = keys[this.next];
+			this.next = this.advance(this.next + 1);
+			return new SimpleImmutableEntry<String, Object>(key, data.get(key));
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jmxtrans.model.Server;
+
+/**
+ * Makes the pooled connections of the servers before they are scheduled, so
+ * that their first runs don't pay for the RMI registry lookup, stub download
+ * and SSL handshake all at once, on the scheduler threads.
+ *
+ * The servers which have no pooled connection yet are connected to a few at
+ * a time, for no longer than the deadline. Those not connected by then are
+ * left to connect on their first run. Running it again after a reload only
+ * connects to the servers which were added.
+ *
+ * The connect latency of each target (host:port) is kept for the MBean.
+ */
+public class ConnectionWarmup {
+
+	private static final Logger log = LoggerFactory.getLogger(ConnectionWarmup.class);
+
+	public static final int DEFAULT_CONCURRENCY = 20;
+	public static final int DEFAULT_DEADLINE_SECONDS = 30;
+
+	private final int concurrency;
+	private final long deadlineMillis;
+
+	private final ConcurrentMap<String, Long> latencies = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong connectedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong timedOutCount = new AtomicLong();
+	private volatile long lastWarmupMillis = 0;
+
+	/**
+	 * @param concurrency
+	 *            how many connections are made at once
+	 * @param deadlineMillis
+	 *            how long to wait for them all
+	 */
+	public ConnectionWarmup(int concurrency, long deadlineMillis) {
+		this.concurrency = Math.max(1, concurrency);
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	/**
+	 * Connects to the remote servers which have no pooled connection.
+	 *
+	 * @return how many were connected to within the deadline
+	 */
+	public int warm(final GenericKeyedObjectPool pool, Collection<Server> servers) throws InterruptedException {
+		Set<Server> cold = new LinkedHashSet<Server>();
+		for (Server server : servers) {
+			if (!server.isLocal() && ((pool.getNumIdle(server) + pool.getNumActive(server)) == 0)) {
+				cold.add(server);
+			}
+		}
+		if (cold.isEmpty()) {
+			return 0;
+		}
+
+		final AtomicInteger connected = new AtomicInteger();
+		List<Callable<Object>> connects = new ArrayList<Callable<Object>>(cold.size());
+		for (final Server server : cold) {
+			connects.add(new Callable<Object>() {
+				public Object call() {
+					connect(pool, server, connected);
+					return null;
+				}
+			});
+		}
+
+		int numThreads = Math.min(this.concurrency, cold.size());
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new WarmupThreadFactory());
+		long start = System.currentTimeMillis();
+		int timedOut = 0;
+		try {
+			for (Future<Object> future : executor.invokeAll(connects, this.deadlineMillis, TimeUnit.MILLISECONDS)) {
+				if (future.isCancelled()) {
+					timedOut++;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		this.timedOutCount.addAndGet(timedOut);
+		this.lastWarmupMillis = System.currentTimeMillis() - start;
+
+		log.info("Connected to " + connected.get() + " of " + cold.size() + " servers in " + this.lastWarmupMillis + " ms, " + timedOut
+				+ " not within " + this.deadlineMillis + " ms");
+		return connected.get();
+	}
+
+	/**
+	 * Adds a connection to the server to the pool, timing it.
+	 */
+	private void connect(GenericKeyedObjectPool pool, Server server, AtomicInteger connected) {
+		String target = RunDeadline.getTarget(server);
+		long start = System.currentTimeMillis();
+		try {
+			pool.addObject(server);
+			long millis = System.currentTimeMillis() - start;
+			this.latencies.put(target, millis);
+			this.connectedCount.incrementAndGet();
+			connected.incrementAndGet();
+			if (log.isDebugEnabled()) {
+				log.debug("Connected to: " + target + " in " + millis + " ms");
+			}
+		} catch (Exception e) {
+			if ((e instanceof InterruptedException) || Thread.currentThread().isInterrupted()) {
+				// past the deadline, counted as timed out
+				return;
+			}
+			this.failedCount.incrementAndGet();
+			log.warn("Unable to connect to: " + target + " ahead of its first run, " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The connect latency of each target connected to, in millis, sorted by
+	 * target.
+	 */
+	public Map<String, Long> getConnectLatencies() {
+		return new TreeMap<String, Long>(this.latencies);
+	}
+
+	/** */
+	public long getConnectedCount() {
+		return this.connectedCount.get();
+	}
+
+	/** */
+	public long getFailedCount() {
+		return this.failedCount.get();
+	}
+
+	/**
+	 * How many connections weren't made within the deadline.
+	 */
+	public long getTimedOutCount() {
+		return this.timedOutCount.get();
+	}
+
+	/**
+	 * How long the last warm up took.
+	 */
+	public long getLastWarmupMillis() {
+		return this.lastWarmupMillis;
+	}
+
+	/** */
+	private static class WarmupThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "jmxtrans-warmup-" + this.count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package com.googlecode.jmxtrans.util;
+
+import java.io.IOException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
+
+/**
+ * Works out which MBeans the queries of a server run need and what to ask each
+ * of them for, so that an MBean matched by several queries (ie:
+ * java.lang:type=Memory from a few of the merged json files) costs one
+ * getAttributes call per run. The call asks for all of the attributes wanted
+ * by any of the queries, and each query then gets a batch with just its own
+ * attributes, flattened with its own paths and keys, for its own writers.
+ *
+ * The MBeans are fetched in the order the queries first match them, so a
+ * server whose queries don't overlap runs just like it did one query at a
+ * time.
+ *
+ * With a {@link RunDeadline}, each remote call is given the shortest call
+ * timeout of the queries it is made for.
+ */
+public class FetchPlanner {
+
+	private static final Logger log = LoggerFactory.getLogger(FetchPlanner.class);
+
+	private final MBeanServerConnection mbeanServer;
+	private final MBeanServerCache cache;
+	private final WriterDispatcher dispatcher;
+	private final RunDeadline deadline;
+	private final Map<ObjectName, Fetch> fetches = new LinkedHashMap<ObjectName, Fetch>();
+	/** The first broken connection or expired deadline of the fetches run on other threads. */
+	private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+	/**
+	 * @param context
+	 *            the cache of the connection, the dispatcher to queue the
+	 *            batches for the writers on and the deadlines of the server
+	 *            run, any of which may be null
+	 */
+	public FetchPlanner(MBeanServerConnection mbeanServer, RunContext context) {
+		this.mbeanServer = mbeanServer;
+		this.cache = context.getCache();
+		this.dispatcher = context.getDispatcher();
+		this.deadline = context.getDeadline();
+	}
+
+	/**
+	 * Looks up the MBeans matched by the query and adds it to their fetches.
+	 *
+	 * A query which can't be looked up, ie: a bad pattern, is logged and
+	 * skipped, so the other queries of the server still run. Only a broken
+	 * connection or an expired deadline, which would fail them too, is
+	 * thrown.
+	 */
+	public void add(Query query) throws Exception {
+		try {
+			this.plan(query);
+		} catch (IOException e) {
+			throw e;
+		} catch (TimeoutException e) {
+			throw e;
+		} catch (Exception e) {
+			log.error("Error looking up the MBeans of query: " + query + ", skipping it", e);
+		}
+	}
+
+	/** */
+	private void plan(Query query) throws Exception {
+		QueryPlan plan = QueryPlan.get(query);
+		ObjectName oName = plan.getObjectName();
+		long timeoutMillis = (this.deadline != null) ? this.deadline.getCallTimeoutMillis(query) : 0;
+
+		Set<ObjectName> queryNames;
+		RunDeadline.Call call = this.startCall(timeoutMillis);
+		try {
+			queryNames = (this.cache != null) ? this.cache.queryNames(oName) : this.mbeanServer.queryNames(oName, null);
+		} finally {
+			this.endCall(call);
+		}
+
+		for (ObjectName queryName : queryNames) {
+			Fetch fetch = this.fetches.get(queryName);
+			if (fetch == null) {
+				fetch = new Fetch(queryName);
+				this.fetches.put(queryName, fetch);
+			}
+			fetch.plans.add(plan);
+			if ((timeoutMillis > 0) && ((fetch.timeoutMillis == 0) || (timeoutMillis < fetch.timeoutMillis))) {
+				fetch.timeoutMillis = timeoutMillis;
+			}
+		}
+	}
+
+	/** */
+	private RunDeadline.Call startCall(long timeoutMillis) throws TimeoutException {
+		return (this.deadline != null) ? this.deadline.startCall(timeoutMillis) : null;
+	}
+
+	/** */
+	private void endCall(RunDeadline.Call call) {
+		if (this.deadline != null) {
+			this.deadline.endCall(call);
+		}
+	}
+
+	/**
+	 * One fetch per MBean, in order.
+	 */
+	public List<Fetch> getFetches() {
+		return new ArrayList<Fetch>(this.fetches.values());
+	}
+
+	/**
+	 * Runs every fetch on the calling thread.
+	 *
+	 * @param batches
+	 *            where to keep the batches given to the writers, or null
+	 */
+	public void execute(List<ResultBatch> batches) throws Exception {
+		for (Fetch fetch : this.fetches.values()) {
+			fetch.execute(batches);
+		}
+	}
+
+	/**
+	 * Runs the fetches on the executor, no more than maxConcurrency at a time.
+	 * A fetch which fails is logged and doesn't stop the others, but once they
+	 * are all done the first broken connection or expired deadline is thrown,
+	 * like it would have been on the calling thread, so that the run is seen
+	 * to have failed.
+	 */
+	public void execute(CollectionExecutor executor, int maxConcurrency) throws Exception {
+		executor.invokeAll(this.getFetches(), maxConcurrency);
+		Exception e = this.failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	/**
+	 * The attributes of one MBean wanted by the queries of the run.
+	 */
+	public class Fetch implements Runnable {
+		private final ObjectName queryName;
+		private final List<QueryPlan> plans = new ArrayList<QueryPlan>(1);
+		private long timeoutMillis = 0;
+
+		private Fetch(ObjectName queryName) {
+			this.queryName = queryName;
+		}
+
+		/** */
+		public ObjectName getObjectName() {
+			return queryName;
+		}
+
+		/**
+		 * How many queries want this MBean.
+		 */
+		public int getQueryCount() {
+			return this.plans.size();
+		}
+
+		public void run() {
+			try {
+				this.execute(null);
+			} catch (Exception e) {
+				log.error("Error fetching " + this.queryName, e);
+				if ((e instanceof IOException) || (e instanceof TimeoutException)) {
+					failure.compareAndSet(null, e);
+				}
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * Asks the MBean for the attributes of all of the queries and hands
+		 * each query its batch.
+		 */
+		public void execute(List<ResultBatch> batches) throws Exception {
+			MBeanMetadata metadata;
+			RunDeadline.Call call = startCall(this.timeoutMillis);
+			try {
+				metadata = (cache != null) ? cache.getMetadata(this.queryName) : MBeanMetadata.load(mbeanServer, this.queryName);
+			} catch (InstanceNotFoundException ex) {
+				// unregistered since we asked for the names
+				log.debug("MBean went away: " + this.queryName);
+				return;
+			} finally {
+				endCall(call);
+			}
+
+			String[][] wanted = new String[this.plans.size()][];
+			Set<String> union = new LinkedHashSet<String>();
+			for (int i = 0; i < wanted.length; i++) {
+				wanted[i] = this.plans.get(i).getAttributes(metadata);
+				union.addAll(Arrays.asList(wanted[i]));
+			}
+			if (union.isEmpty()) {
+				return;
+			}
+
+			try {
+				if (log.isDebugEnabled()) {
+					log.debug("Executing queryName: " + this.queryName.getCanonicalName() + " for " + this.plans.size() + " queries");
+				}
+
+				AttributeList al;
+				call = startCall(this.timeoutMillis);
+				try {
+					al = mbeanServer.getAttributes(this.queryName, union.toArray(new String[union.size()]));
+				} finally {
+					endCall(call);
+				}
+
+				Map<String, Attribute> byName = null;
+				if (this.plans.size() > 1) {
+					byName = new HashMap<String, Attribute>();
+					for (Attribute attribute : al.asList()) {
+						byName.put(attribute.getName(), attribute);
+					}
+				}
+
+				for (int i = 0; i < wanted.length; i++) {
+					if (wanted[i].length == 0) {
+						continue;
+					}
+					List<Attribute> attributes = al.asList();
+					if (byName != null) {
+						attributes = new ArrayList<Attribute>(wanted[i].length);
+						for (String name : wanted[i]) {
+							Attribute attribute = byName.get(name);
+							if (attribute != null) {
+								attributes.add(attribute);
+							}
+						}
+					}
+
+					ResultBatch batch = collect(this.plans.get(i), metadata, attributes);
+					if (batches != null) {
+						batches.add(batch);
+					}
+
+					// Now run the OutputWriters.
+					if (dispatcher != null) {
+						dispatcher.dispatch(batch);
+					} else {
+						JmxUtils.runOutputWriters(batch);
+					}
+
+					if (log.isDebugEnabled()) {
+						log.debug("Finished running outputWriters for query: " + batch.getQuery());
+					}
+				}
+			} catch (InstanceNotFoundException ex) {
+				if (cache != null) {
+					cache.invalidate(this.queryName);
+				}
+				log.debug("MBean went away: " + this.queryName);
+			} catch (UnmarshalException ue) {
+				if ((ue.getCause() != null) && (ue.getCause() instanceof ClassNotFoundException)) {
+					log.debug("Bad unmarshall, continuing. This is probably ok and due to something like this: "
+							+ "http://ehcache.org/xref/net/sf/ehcache/distribution/RMICacheManagerPeerListener.html#52", ue.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flattens the attribute values of one MBean for one query.
+	 */
+	private static ResultBatch collect(QueryPlan plan, MBeanMetadata metadata, List<Attribute> attributes) {
+		Query query = plan.getQuery();
+		if (plan.isColumnar()) {
+			MetricBatch metrics = new MetricBatch(plan.getBatchCapacity());
+			for (Attribute attribute : attributes) {
+				ResultFlattener.flatten(metrics, metadata, attribute, plan, plan.getSelector(metadata, attribute.getName()));
+			}
+			plan.updateBatchCapacity(metrics.size());
+			return new ResultBatch(query, metrics);
+		}
+
+		List<Result> resList = new ArrayList<Result>();
+		for (Attribute attribute : attributes) {
+			ResultFlattener.flatten(resList, metadata, attribute, plan, plan.getSelector(metadata, attribute.getName()));
+		}
+		return new ResultBatch(query, resList);
+	}
+}
@@ -1,7 +1,14 @@
 package com.googlecode.jmxtrans.util;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
 
 import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
@@ -12,14 +19,40 @@ import com.googlecode.jmxtrans.model.Server;
 
 /**
  * Allows us to pool connections to remote jmx servers.
+ *
+ * Validating a connection doesn't go to the server every time it is borrowed.
+ * Each connection is watched with a connection notification listener, so one
+ * which was closed or failed is dropped right away, and otherwise it is only
+ * asked for its connection id when a run on it failed (see
+ * {@link #markSuspect(JMXConnector)}) or when it hasn't been used for the
+ * validation idle time. The idle connections are validated in the background
+ * by the evictor of the pool.
  */
 public class JmxConnectionFactory extends BaseKeyedPoolableObjectFactory {
 
-	@SuppressWarnings("unused")
 	private static final Logger log = LoggerFactory.getLogger(JmxConnectionFactory.class);
 
+	public static final long DEFAULT_VALIDATION_IDLE_MILLIS = 1000 * 60;
+
+	/** The health of the open connections. */
+	private static final ConcurrentMap<JMXConnector, Health> healths = new ConcurrentHashMap<JMXConnector, Health>();
+
+	private static final AtomicLong validationCount = new AtomicLong();
+
+	private final long validationIdleMillis;
+
 	/** constructor */
 	public JmxConnectionFactory() {
+		this(DEFAULT_VALIDATION_IDLE_MILLIS);
+	}
+
+	/**
+	 * @param validationIdleMillis
+	 *            how long a connection may go unused before it is asked for
+	 *            its connection id again
+	 */
+	public JmxConnectionFactory(long validationIdleMillis) {
+		this.validationIdleMillis = validationIdleMillis;
 	}
 
 	/**
@@ -28,7 +61,22 @@ public class JmxConnectionFactory extends BaseKeyedPoolableObjectFactory {
 	@Override
 	public Object makeObject(Object key) throws Exception {
 		Server server = (Server) key;
-		return JmxUtils.getServerConnection(server);
+		JMXConnector conn = JmxUtils.getServerConnection(server);
+		track(conn);
+		return conn;
+	}
+
+	/**
+	 * Starts watching a new connection.
+	 */
+	static void track(JMXConnector conn) {
+		Health health = new Health();
+		healths.put(conn, health);
+		try {
+			conn.addConnectionNotificationListener(health, null, null);
+		} catch (RuntimeException e) {
+			log.debug("Unable to listen to the connection, relying on the idle validation", e);
+		}
 	}
 
 	/**
@@ -37,15 +85,48 @@ public class JmxConnectionFactory extends BaseKeyedPoolableObjectFactory {
 	@Override
 	public void destroyObject(Object key, Object obj) throws Exception {
 		JMXConnector conn = (JMXConnector) obj;
+		Health health = healths.remove(conn);
+		if (health != null) {
+			try {
+				conn.removeConnectionNotificationListener(health);
+			} catch (ListenerNotFoundException e) {
+				// never added
+			}
+		}
+		MBeanServerCache.release(conn);
 		conn.close();
 	}
 
 	/**
-	 * Validates that the connection is good.
+	 * The connection is back in the pool after a run, which shows it works
+	 * unless the run said otherwise.
+	 */
+	@Override
+	public void passivateObject(Object key, Object obj) {
+		Health health = healths.get(obj);
+		if ((health != null) && !health.suspect) {
+			health.lastAliveMillis = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Validates that the connection is good, going to the server only when
+	 * there is a reason to.
 	 */
 	@Override
 	public boolean validateObject(Object key, Object obj) {
 		JMXConnector conn = (JMXConnector) obj;
+		Health health = healths.get(conn);
+		if (health != null) {
+			if (health.dead) {
+				return false;
+			}
+			if (!health.suspect && ((System.currentTimeMillis() - health.lastAliveMillis) < this.validationIdleMillis)) {
+				return true;
+			}
+		}
+
+		validationCount.incrementAndGet();
 		boolean result = false;
 		try {
 			conn.getConnectionId();
@@ -53,6 +134,44 @@ public class JmxConnectionFactory extends BaseKeyedPoolableObjectFactory {
 		} catch (IOException ex) {
 			// ignored
 		}
+		if (result && (health != null)) {
+			health.suspect = false;
+			health.lastAliveMillis = System.currentTimeMillis();
+		}
 		return result;
 	}
+
+	/**
+	 * Has the connection checked with the server the next time it is
+	 * borrowed, ie: after a run on it failed.
+	 */
+	public static void markSuspect(JMXConnector conn) {
+		Health health = (conn != null) ? healths.get(conn) : null;
+		if (health != null) {
+			health.suspect = true;
+		}
+	}
+
+	/**
+	 * How many times a connection was asked for its id to validate it.
+	 */
+	public static long getValidationCount() {
+		return validationCount.get();
+	}
+
+	/**
+	 * What we know of one connection.
+	 */
+	private static class Health implements NotificationListener {
+		private volatile boolean dead = false;
+		private volatile boolean suspect = false;
+		private volatile long lastAliveMillis = System.currentTimeMillis();
+
+		public void handleNotification(Notification notification, Object handback) {
+			String type = notification.getType();
+			if (JMXConnectionNotification.CLOSED.equals(type) || JMXConnectionNotification.FAILED.equals(type)) {
+				this.dead = true;
+			}
+		}
+	}
 }
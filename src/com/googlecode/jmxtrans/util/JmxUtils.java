@@ -3,31 +3,30 @@ package com.googlecode.jmxtrans.util;
 import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
-import java.lang.reflect.Array;
-import java.rmi.UnmarshalException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.management.Attribute;
-import javax.management.AttributeList;
-import javax.management.MBeanAttributeInfo;
-import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectInstance;
-import javax.management.ObjectName;
-import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.CompositeType;
-import javax.management.openmbean.TabularDataSupport;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
@@ -45,11 +44,14 @@ import org.codehaus.jackson.map.SerializationConfig.Feature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.googlecode.jmxtrans.BatchOutputWriter;
 import com.googlecode.jmxtrans.OutputWriter;
 import com.googlecode.jmxtrans.jmx.ManagedObject;
 import com.googlecode.jmxtrans.model.JmxProcess;
+import com.googlecode.jmxtrans.model.MetricId;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
 import com.googlecode.jmxtrans.model.Server;
 
 /**
@@ -61,6 +63,32 @@ public class JmxUtils {
 
 	private static final Logger log = LoggerFactory.getLogger(JmxUtils.class);
 
+	/**
+	 * The most connects with a connect timeout made at once: room for a
+	 * warm-up (ConnectionWarmup.DEFAULT_CONCURRENCY) and the server runs
+	 * (org.quartz.threadPool.threadCount) together, with as many again for
+	 * the connects given up on which still wait on their sockets.
+	 */
+	private static final int MAX_CONNECT_THREADS = 64;
+
+	/**
+	 * The threads the connects with a connect timeout are made on. Bounded, as
+	 * a connect given up on keeps its thread until its socket times out.
+	 */
+	private static final ExecutorService connectExecutor = new ThreadPoolExecutor(0, MAX_CONNECT_THREADS, 60L, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger(0);
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "jmxtrans-connect-" + this.count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/** How many connects were failed right away as all the connect threads were busy. */
+	private static final AtomicLong rejectedConnectCount = new AtomicLong();
+
 	/**
 	 * Merges two lists of servers (and their queries). Based on the equality of
 	 * both sets of objects. Public for testing purposes.
@@ -93,60 +121,45 @@ public class JmxUtils {
 	 * server.getMultiThreaded()) or invokes them one at a time.
 	 */
 	public static void processQueriesForServer(MBeanServerConnection mbeanServer, Server server) throws Exception {
-
-		if (server.isQueriesMultiThreaded()) {
-			ExecutorService service = null;
-			try {
-				service = Executors.newFixedThreadPool(server.getNumQueryThreads());
-				if (log.isDebugEnabled()) {
-					log.debug("----- Creating " + server.getQueries().size() + " query threads");
-				}
-
-				List<Callable<Object>> threads = new ArrayList<Callable<Object>>(server.getQueries().size());
-				for (Query query : server.getQueries()) {
-					query.setServer(server);
-					ProcessQueryThread pqt = new ProcessQueryThread(mbeanServer, query);
-					threads.add(Executors.callable(pqt));
-				}
-
-				service.invokeAll(threads);
-
-			} finally {
-				shutdownAndAwaitTermination(service);
-			}
-		} else {
-			for (Query query : server.getQueries()) {
-				query.setServer(server);
-				processQuery(mbeanServer, query);
-			}
-		}
+		processQueriesForServer(mbeanServer, server, new RunContext());
 	}
 
 	/**
-	 * Copied from the Executors javadoc.
+	 * Runs the queries of the server with what the context has.
+	 *
+	 * The queries are planned together with a {@link FetchPlanner}, so that
+	 * each MBean is only asked once for the attributes of all the queries
+	 * matching it. The MBeans are then fetched on the shared executor (no more
+	 * than server.getNumQueryThreads() at a time), or one at a time when the
+	 * context has no executor.
 	 */
-	private static void shutdownAndAwaitTermination(ExecutorService service) {
-		service.shutdown(); // Disable new tasks from being submitted
-		try {
-			// Wait a while for existing tasks to terminate
-			if (!service.awaitTermination(60, TimeUnit.SECONDS)) {
-				service.shutdownNow(); // Cancel currently executing tasks
-				// Wait a while for tasks to respond to being cancelled
-				if (!service.awaitTermination(60, TimeUnit.SECONDS)) {
-					log.error("Pool did not terminate");
-				}
+	public static void processQueriesForServer(MBeanServerConnection mbeanServer, Server server, RunContext context) throws Exception {
+
+		FetchPlanner planner = new FetchPlanner(mbeanServer, context);
+		for (Query query : server.getQueries()) {
+			query.setServer(server);
+			planner.add(query);
+		}
+
+		CollectionExecutor executor = context.getExecutor();
+		if (server.isQueriesMultiThreaded() && executor != null) {
+			if (log.isDebugEnabled()) {
+				log.debug("----- Fetching " + planner.getFetches().size() + " MBeans for " + server.getQueries().size()
+						+ " queries on at most " + server.getNumQueryThreads() + " threads");
 			}
-		} catch (InterruptedException ie) {
-			// (Re-)Cancel if current thread also interrupted
-			service.shutdownNow();
-			// Preserve interrupt status
-			Thread.currentThread().interrupt();
+			planner.execute(executor, server.getNumQueryThreads());
+		} else {
+			planner.execute(null);
 		}
 	}
 
 	/**
 	 * Executes either a getAttribute or getAttributes query.
+	 *
+	 * @deprecated the queries of a server are run together, see
+	 *             {@link JmxUtils#processQueriesForServer(MBeanServerConnection, Server, RunContext)}
 	 */
+	@Deprecated
 	public static class ProcessQueryThread implements Runnable {
 		private MBeanServerConnection mbeanServer;
 		private Query query;
@@ -168,190 +181,167 @@ public class JmxUtils {
 
 	/**
 	 * Responsible for processing individual Queries.
+	 *
+	 * @return the batch of results of each matched MBean, which have already
+	 *         been given to the OutputWriters of the query.
 	 */
-	public static void processQuery(MBeanServerConnection mbeanServer, Query query) throws Exception {
-
-		ObjectName oName = new ObjectName(query.getObj());
-
-		Set<ObjectName> queryNames = mbeanServer.queryNames(oName, null);
-		for (ObjectName queryName : queryNames) {
-
-			List<Result> resList = new ArrayList<Result>();
-
-			MBeanInfo info = mbeanServer.getMBeanInfo(queryName);
-			ObjectInstance oi = mbeanServer.getObjectInstance(queryName);
+	public static List<ResultBatch> processQuery(MBeanServerConnection mbeanServer, Query query) throws Exception {
+		List<ResultBatch> batches = new ArrayList<ResultBatch>();
+		FetchPlanner planner = new FetchPlanner(mbeanServer, new RunContext());
+		planner.add(query);
+		planner.execute(batches);
+		return batches;
+	}
 
-			List<String> queryAttributes = query.getAttr();
-			if ((queryAttributes == null) || (queryAttributes.size() == 0)) {
-				MBeanAttributeInfo[] attrs = info.getAttributes();
-				for (MBeanAttributeInfo attrInfo : attrs) {
-					query.addAttr(attrInfo.getName());
+	/**
+	 * Runs the writers of the batch on the calling thread. The writers may be
+	 * shared by the queries of several servers, so each one is only called by
+	 * one thread at a time, like on its queue.
+	 */
+	static void runOutputWriters(ResultBatch batch) throws Exception {
+		List<OutputWriter> writers = batch.getQuery().getOutputWriters();
+		if (writers != null) {
+			for (OutputWriter writer : writers) {
+				synchronized (writer) {
+					writeBatch(writer, batch);
 				}
 			}
+		}
+	}
 
-			try {
-				if ((query.getAttr() != null) && (query.getAttr().size() > 0)) {
-					if (log.isDebugEnabled()) {
-						log.debug("Executing queryName: " + queryName.getCanonicalName() + " from query: " + query);
-					}
-
-					AttributeList al = mbeanServer.getAttributes(queryName, query.getAttr().toArray(new String[query.getAttr().size()]));
-					for (Attribute attribute : al.asList()) {
-						getResult(resList, info, oi, attribute, query);
-					}
-
-					query.setResults(resList);
-
-					// Now run the OutputWriters.
-					runOutputWritersForQuery(query);
-
-					if (log.isDebugEnabled()) {
-						log.debug("Finished running outputWriters for query: " + query);
-					}
-				}
-			} catch (UnmarshalException ue) {
-				if ((ue.getCause() != null) && (ue.getCause() instanceof ClassNotFoundException)) {
-					log.debug("Bad unmarshall, continuing. This is probably ok and due to something like this: "
-							+ "http://ehcache.org/xref/net/sf/ehcache/distribution/RMICacheManagerPeerListener.html#52", ue.getMessage());
+	/**
+	 * Hands a batch to one writer, dropping the unchanged numbers first if the
+	 * writer only wants the changes. Writers which don't take batches get a
+	 * copy of the query holding the results, so the configured Query is never
+	 * changed.
+	 */
+	public static void writeBatch(OutputWriter writer, ResultBatch batch) throws Exception {
+		if (writer instanceof BaseOutputWriter) {
+			ChangeFilter filter = ((BaseOutputWriter) writer).getChangeFilter();
+			if (filter != null) {
+				batch = filter.filter(batch);
+				if (batch.isEmpty()) {
+					return;
 				}
 			}
 		}
-
+		if (writer instanceof BatchOutputWriter) {
+			((BatchOutputWriter) writer).doWrite(batch);
+		} else {
+			writer.doWrite(batch.toQuery());
+		}
 	}
 
 	/**
-	 * Populates the Result objects. This is a recursive function. Query
-	 * contains the keys that we want to get the values of.
+	 * Helper method for connecting to a Server. You need to close the resulting
+	 * connection.
+	 *
+	 * With the connectTimeoutSeconds or readTimeoutSeconds of the server, the
+	 * RMI sockets are made with those timeouts, and the whole connect is given
+	 * up after connectTimeoutSeconds whatever it is waiting on. Without a
+	 * readTimeoutSeconds, the sockets read with the connect timeout, so that a
+	 * connect given up on doesn't hang in the handshake forever.
+	 *
+	 * The sockets of WebLogic (t3) connections aren't made by RMI, so only the
+	 * wait of connectTimeoutSeconds applies to them.
 	 */
-	private static void getResult(List<Result> resList, MBeanInfo info, ObjectInstance oi, String attributeName, CompositeData cds, Query query) {
-		CompositeType t = cds.getCompositeType();
-
-		Result r = getNewResultObject(info, oi, attributeName, query);
+	public static JMXConnector getServerConnection(Server server) throws Exception {
+		JMXServiceURL url = new JMXServiceURL(server.getUrl());
+		int connectTimeoutMillis = getTimeoutMillis(server.getConnectTimeoutSeconds());
+		int readTimeoutMillis = getTimeoutMillis(server.getReadTimeoutSeconds());
+		if (readTimeoutMillis <= 0) {
+			readTimeoutMillis = connectTimeoutMillis;
+		}
 
-		Set<String> keys = t.keySet();
-		for (String key : keys) {
-			Object value = cds.get(key);
-			if (value instanceof TabularDataSupport) {
-				TabularDataSupport tds = (TabularDataSupport) value;
-				processTabularDataSupport(resList, info, oi, r, attributeName + "." + key, tds, query);
-				r.addValue(key, value);
-			} else if (value instanceof CompositeDataSupport) {
-				// now recursively go through everything.
-				CompositeDataSupport cds2 = (CompositeDataSupport) value;
-				getResult(resList, info, oi, attributeName, cds2, query);
-				return; // because we don't want to add to the list yet.
-			} else {
-				r.addValue(key, value);
+		Map<String, Object> environment;
+		if (server.getProtocolProviderPackages() != null && server.getProtocolProviderPackages().contains("weblogic")) {
+			environment = new HashMap<String, Object>(getWebLogicEnvironment(server));
+			if (readTimeoutMillis > 0) {
+				log.warn("The socket timeouts don't apply to WebLogic servers, only the connect timeout is waited for: " + server);
+			}
+		} else {
+			environment = new HashMap<String, Object>(getEnvironment(server));
+			if ((connectTimeoutMillis > 0) || (readTimeoutMillis > 0)) {
+				TimeoutRMIClientSocketFactory socketFactory = new TimeoutRMIClientSocketFactory(connectTimeoutMillis, readTimeoutMillis);
+				environment.put(TimeoutRMIClientSocketFactory.JNDI_SOCKET_FACTORY, socketFactory);
+				environment.put(TimeoutRMIClientSocketFactory.RMI_CLIENT_SOCKET_FACTORY, socketFactory);
 			}
 		}
-		resList.add(r);
+
+		if (connectTimeoutMillis <= 0) {
+			return JMXConnectorFactory.connect(url, environment);
+		}
+		return connect(url, environment, connectTimeoutMillis);
 	}
 
 	/** */
-	private static void processTabularDataSupport(List<Result> resList, MBeanInfo info, ObjectInstance oi, Result r, String attributeName,
-			TabularDataSupport tds, Query query) {
-		Set<Entry<Object, Object>> entries = tds.entrySet();
-		for (Entry<Object, Object> entry : entries) {
-			Object entryKeys = entry.getKey();
-			if (entryKeys instanceof List) {
-				// ie: attributeName=LastGcInfo.Par Survivor Space
-				// i haven't seen this be smaller or larger than List<1>, but
-				// might as well loop it.
-				StringBuilder sb = new StringBuilder();
-				for (Object entryKey : (List<?>) entryKeys) {
-					sb.append(".");
-					sb.append(entryKey);
-				}
-				String attributeName2 = sb.toString();
-				Object entryValue = entry.getValue();
-				if (entryValue instanceof CompositeDataSupport) {
-					getResult(resList, info, oi, attributeName + attributeName2, (CompositeDataSupport) entryValue, query);
-				} else {
-					throw new RuntimeException("!!!!!!!!!! Please file a bug: https://github.com/lookfirst/jmxtrans/issues entryValue is: "
-							+ entryValue.getClass().getCanonicalName());
-				}
-			} else {
-				throw new RuntimeException("!!!!!!!!!! Please file a bug: https://github.com/lookfirst/jmxtrans/issues entryKeys is: "
-						+ entryKeys.getClass().getCanonicalName());
-			}
-		}
+	private static int getTimeoutMillis(Integer seconds) {
+		return ((seconds != null) && (seconds > 0)) ? seconds * 1000 : 0;
 	}
 
 	/**
-	 * Builds up the base Result object
+	 * How many connects were failed right away, as all the connect threads
+	 * were busy.
 	 */
-	private static Result getNewResultObject(MBeanInfo info, ObjectInstance oi, String attributeName, Query query) {
-		Result r = new Result(attributeName);
-		r.setQuery(query);
-		r.setClassName(info.getClassName());
-		r.setTypeName(oi.getObjectName().getCanonicalKeyPropertyListString());
-		return r;
+	public static long getRejectedConnectCount() {
+		return rejectedConnectCount.get();
 	}
 
 	/**
-	 * Used when the object is effectively a java type
+	 * Connects on another thread, waiting no longer than timeoutMillis for it.
+	 * A connection which comes after that is closed. When all the connect
+	 * threads are busy, ie: with connects to dead hosts, fails right away
+	 * rather than holding the calling thread for longer than timeoutMillis.
 	 */
-	private static void getResult(List<Result> resList, MBeanInfo info, ObjectInstance oi, Attribute attribute, Query query) {
-		Object value = attribute.getValue();
-		if (value != null) {
-			if (value instanceof CompositeData) {
-				getResult(resList, info, oi, attribute.getName(), (CompositeData) value, query);
-			} else if (value instanceof CompositeData[]) {
-				for (CompositeData cd : (CompositeData[]) value) {
-					getResult(resList, info, oi, attribute.getName(), cd, query);
-				}
-			} else if (value instanceof ObjectName[]) {
-				Result r = getNewResultObject(info, oi, attribute.getName(), query);
-				for (ObjectName obj : (ObjectName[]) value) {
-					r.addValue(obj.getCanonicalName(), obj.getKeyPropertyListString());
-				}
-				resList.add(r);
-			} else if (value.getClass().isArray()) {
-				// OMFG: this is nutty. some of the items in the array can be
-				// primitive! great interview question!
-				Result r = getNewResultObject(info, oi, attribute.getName(), query);
-				for (int i = 0; i < Array.getLength(value); i++) {
-					Object val = Array.get(value, i);
-					r.addValue(attribute.getName() + "." + i, val);
+	private static JMXConnector connect(final JMXServiceURL url, final Map<String, ?> environment, int timeoutMillis) throws Exception {
+		// 0 while connecting, 1 once handed over, 2 once given up
+		final AtomicInteger state = new AtomicInteger(0);
+		FutureTask<JMXConnector> future = new FutureTask<JMXConnector>(new Callable<JMXConnector>() {
+			public JMXConnector call() throws Exception {
+				JMXConnector conn = JMXConnectorFactory.connect(url, environment);
+				if (!state.compareAndSet(0, 1)) {
+					try {
+						conn.close();
+					} catch (IOException e) {
+						log.debug("Error closing a connection given up on: " + url, e);
+					}
 				}
-				resList.add(r);
-			} else if (value instanceof TabularDataSupport) {
-				TabularDataSupport tds = (TabularDataSupport) value;
-				Result r = getNewResultObject(info, oi, attribute.getName(), query);
-				processTabularDataSupport(resList, info, oi, r, attribute.getName(), tds, query);
-				resList.add(r);
-			} else {
-				Result r = getNewResultObject(info, oi, attribute.getName(), query);
-				r.addValue(attribute.getName(), value);
-				resList.add(r);
+				return conn;
 			}
+		});
+		try {
+			connectExecutor.execute(future);
+		} catch (RejectedExecutionException e) {
+			rejectedConnectCount.incrementAndGet();
+			throw new SocketTimeoutException("All " + MAX_CONNECT_THREADS + " connect threads are busy, not connecting to: " + url);
 		}
-	}
 
-	/** */
-	private static void runOutputWritersForQuery(Query query) throws Exception {
-		List<OutputWriter> writers = query.getOutputWriters();
-		if (writers != null) {
-			for (OutputWriter writer : writers) {
-				writer.doWrite(query);
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} catch (TimeoutException e) {
+			if (state.compareAndSet(0, 2)) {
+				future.cancel(true);
+				throw new SocketTimeoutException("Timed out connecting to: " + url + " after " + timeoutMillis + " ms");
+			}
+			// connected just now
+			return future.get();
+		} catch (InterruptedException e) {
+			if (state.compareAndSet(0, 2)) {
+				future.cancel(true);
+				throw e;
 			}
+			// connected just now
+			JMXConnector conn = future.get();
+			Thread.currentThread().interrupt();
+			return conn;
 		}
 	}
 
-	/**
-	 * Helper method for connecting to a Server. You need to close the resulting
-	 * connection.
-	 */
-	public static JMXConnector getServerConnection(Server server) throws Exception {
-		JMXServiceURL url = new JMXServiceURL(server.getUrl());
-
-		if (server.getProtocolProviderPackages() != null && server.getProtocolProviderPackages().contains("weblogic"))
-			return JMXConnectorFactory.connect(url, getWebLogicEnvironment(server));
-		else
-			return JMXConnectorFactory.connect(url, getEnvironment(server));
-
-	}
-
 	/**
 	 * Generates the proper username/password environment for JMX connections.
 	 */
@@ -391,6 +381,8 @@ public class JmxUtils {
 	public static void execute(JmxProcess process) throws Exception {
 
 		List<JMXConnector> conns = new ArrayList<JMXConnector>();
+		CollectionExecutor queryExecutor = new CollectionExecutor();
+		RunContext context = new RunContext(queryExecutor, null, null);
 
 		if (process.isServersMultiThreaded()) {
 			ExecutorService service = null;
@@ -398,11 +390,11 @@ public class JmxUtils {
 				service = Executors.newFixedThreadPool(process.getNumMultiThreadedServers());
 				for (Server server : process.getServers()) {
                     if (server.isLocal() && server.getLocalMBeanServer() != null) {
-                        service.execute(new ProcessServerThread(server, null));
+                        service.execute(new ProcessServerThread(server, null, context));
                     } else {
                         JMXConnector conn = JmxUtils.getServerConnection(server);
                         conns.add(conn);
-                        service.execute(new ProcessServerThread(server, conn));
+                        service.execute(new ProcessServerThread(server, conn, context));
                     }
 				}
 				service.shutdown();
@@ -416,22 +408,24 @@ public class JmxUtils {
 		} else {
 			for (Server server : process.getServers()) {
                 if (server.getLocalMBeanServer() != null) {
-                    processServer(server, null);
+                    processServer(server, null, context);
                 } else {
                     JMXConnector conn = JmxUtils.getServerConnection(server);
                     conns.add(conn);
-                    processServer(server, conn);
+                    processServer(server, conn, context);
                 }
 			}
 		}
 
 		for (JMXConnector conn : conns) {
 			try {
+				MBeanServerCache.release(conn);
 				conn.close();
 			} catch (Exception ex) {
 				log.error("Error closing connection.", ex);
 			}
 		}
+		queryExecutor.shutdown();
 	}
 
 	/**
@@ -440,15 +434,21 @@ public class JmxUtils {
 	public static class ProcessServerThread implements Runnable {
 		private Server server;
 		private JMXConnector conn;
+		private RunContext context;
 
 		public ProcessServerThread(Server server, JMXConnector conn) {
+			this(server, conn, new RunContext());
+		}
+
+		public ProcessServerThread(Server server, JMXConnector conn, RunContext context) {
 			this.server = server;
 			this.conn = conn;
+			this.context = context;
 		}
 
 		public void run() {
 			try {
-				processServer(this.server, this.conn);
+				processServer(this.server, this.conn, this.context);
 			} catch (Exception e) {
 				throw new RuntimeException(e);
 			}
@@ -459,15 +459,89 @@ public class JmxUtils {
 	 * Does the work for processing a Server object.
 	 */
 	public static void processServer(Server server, JMXConnector conn) throws Exception {
+		processServer(server, conn, new RunContext());
+	}
+
+	/**
+	 * Same as above, with what the context has, and the cached MBean metadata
+	 * of the connection. Each writer of the server is told when the run
+	 * begins and ends. The run is abandoned when one of the deadlines of the
+	 * context passes.
+	 */
+	public static void processServer(Server server, JMXConnector conn, RunContext context) throws Exception {
 
 		MBeanServerConnection mbeanServer;
+		MBeanServerCache cache;
 
-		if (server.isLocal())
+		if (server.isLocal()) {
 			mbeanServer = server.getLocalMBeanServer();
-		else
+			cache = MBeanServerCache.getInstance(mbeanServer, mbeanServer);
+		} else {
 			mbeanServer = conn.getMBeanServerConnection();
-		
-		JmxUtils.processQueriesForServer(mbeanServer, server);
+			cache = MBeanServerCache.getInstance(conn, mbeanServer);
+		}
+		if (server.getNameIndexRefreshSeconds() != null) {
+			cache.setNameIndexRefreshMillis(server.getNameIndexRefreshSeconds() * 1000L);
+		} else {
+			cache.setNameIndexRefreshMillis(0);
+		}
+
+		WriterDispatcher dispatcher = context.getDispatcher();
+		List<OutputWriter> writers = getOutputWriters(server);
+		for (OutputWriter writer : writers) {
+			beginCycle(writer, server, dispatcher);
+		}
+		try {
+			JmxUtils.processQueriesForServer(mbeanServer, server, context.withCache(cache));
+		} finally {
+			for (OutputWriter writer : writers) {
+				endCycle(writer, server, dispatcher);
+			}
+		}
+	}
+
+	/**
+	 * The writers of all the queries of a server, each one only once.
+	 */
+	public static List<OutputWriter> getOutputWriters(Server server) {
+		Map<OutputWriter, Boolean> writers = new IdentityHashMap<OutputWriter, Boolean>();
+		List<OutputWriter> result = new ArrayList<OutputWriter>();
+		for (Query query : server.getQueries()) {
+			if (query.getOutputWriters() != null) {
+				for (OutputWriter writer : query.getOutputWriters()) {
+					if (writers.put(writer, Boolean.TRUE) == null) {
+						result.add(writer);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/** */
+	private static void beginCycle(OutputWriter writer, Server server, WriterDispatcher dispatcher) {
+		if (dispatcher != null) {
+			dispatcher.beginCycle(writer, server);
+		} else if (writer instanceof BatchOutputWriter) {
+			try {
+				((BatchOutputWriter) writer).beginCycle(server);
+			} catch (Exception ex) {
+				log.error("Error beginning the run of server: " + server + " with writer: " + writer.getClass().getSimpleName(), ex);
+			}
+		}
+	}
+
+	/** */
+	private static void endCycle(OutputWriter writer, Server server, WriterDispatcher dispatcher) {
+		if (dispatcher != null) {
+			dispatcher.endCycle(writer, server);
+		} else if (writer instanceof BatchOutputWriter) {
+			try {
+				((BatchOutputWriter) writer).endCycle(server);
+			} catch (Exception ex) {
+				log.error("Error ending the run of server: " + server + " with writer: " + writer.getClass().getSimpleName(), ex);
+			}
+		}
 	}
 
 	/**
@@ -581,12 +655,24 @@ public class JmxUtils {
 	 * TODO: allow for more configuration options?
 	 */
 	public static Map<String, KeyedObjectPool> getDefaultPoolMap() {
+		return getDefaultPoolMap(JmxConnectionFactory.DEFAULT_VALIDATION_IDLE_MILLIS);
+	}
+
+	/**
+	 * Same as above, with the JMX connections checked with the server once
+	 * they have been idle for validationIdleMillis, in the background for the
+	 * ones sitting in the pool.
+	 */
+	public static Map<String, KeyedObjectPool> getDefaultPoolMap(long validationIdleMillis) {
 		Map<String, KeyedObjectPool> poolMap = new HashMap<String, KeyedObjectPool>();
 
 		GenericKeyedObjectPool pool = getObjectPool(new SocketFactory());
 		poolMap.put(Server.SOCKET_FACTORY_POOL, pool);
 
-		GenericKeyedObjectPool jmxPool = getObjectPool(new JmxConnectionFactory());
+		GenericKeyedObjectPool jmxPool = getObjectPool(new JmxConnectionFactory(validationIdleMillis));
+		jmxPool.setTestWhileIdle(true);
+		jmxPool.setNumTestsPerEvictionRun(-1);
+		jmxPool.setTimeBetweenEvictionRunsMillis(validationIdleMillis);
 		poolMap.put(Server.JMX_CONNECTION_FACTORY_POOL, jmxPool);
 
 		GenericKeyedObjectPool dsPool = getObjectPool(new DatagramSocketFactory());
@@ -637,11 +723,27 @@ public class JmxUtils {
 	 * @return the key string
 	 */
 	public static String getKeyString(Query query, Result result, Entry<String, Object> values, List<String> typeNames, String rootPrefix) {
+		return getKeyString(query, result.getAttributeName(), values.getKey(), result.getClassNameAlias(), result.getClassName(), result.getTypeName(),
+				typeNames, rootPrefix);
+	}
+
+	/**
+	 * Gets the key string of a value of a MetricBatch, the same one as for
+	 * the equivalent Result.
+	 */
+	public static String getKeyString(Query query, MetricId id, List<String> typeNames, String rootPrefix) {
+		return getKeyString(query, id.getAttributeName(), id.getKey(), query.getResultAlias(), id.getClassName(), id.getTypeName(), typeNames,
+				rootPrefix);
+	}
+
+	/** */
+	private static String getKeyString(Query query, String attributeName, String key, String classNameAlias, String className, String typeNameStr,
+			List<String> typeNames, String rootPrefix) {
 		String keyStr = null;
-		if (values.getKey().startsWith(result.getAttributeName())) {
-			keyStr = values.getKey();
+		if (key.startsWith(attributeName)) {
+			keyStr = key;
 		} else {
-			keyStr = result.getAttributeName() + "." + values.getKey();
+			keyStr = attributeName + "." + key;
 		}
 
 		String alias = null;
@@ -661,15 +763,15 @@ public class JmxUtils {
 		sb.append(".");
 
 		// Allow people to use something other than the classname as the output.
-		if (result.getClassNameAlias() != null) {
-			sb.append(result.getClassNameAlias());
+		if (classNameAlias != null) {
+			sb.append(classNameAlias);
 		} else {
-			sb.append(cleanupStr(result.getClassName()));
+			sb.append(cleanupStr(className));
 		}
 
 		sb.append(".");
 
-		String typeName = cleanupStr(getConcatedTypeNameValues(query, typeNames, result.getTypeName()));
+		String typeName = cleanupStr(getConcatedTypeNameValues(query, typeNames, typeNameStr));
 		if (typeName != null && typeName.length() > 0) {
 			sb.append(typeName);
 			sb.append(".");
@@ -680,25 +782,40 @@ public class JmxUtils {
 	}
 
 	public static String getKeyString2(Query query, Result result, Entry<String, Object> values, List<String> typeNames, String rootPrefix) {
+		return getKeyString2(query, result.getAttributeName(), values.getKey(), result.getClassNameAlias(), result.getClassName(), result.getTypeName(),
+				typeNames);
+	}
+
+	/**
+	 * Same as {@link #getKeyString2(Query, Result, Entry, List, String)} for a
+	 * value of a MetricBatch.
+	 */
+	public static String getKeyString2(Query query, MetricId id, List<String> typeNames) {
+		return getKeyString2(query, id.getAttributeName(), id.getKey(), query.getResultAlias(), id.getClassName(), id.getTypeName(), typeNames);
+	}
+
+	/** */
+	private static String getKeyString2(Query query, String attributeName, String key, String classNameAlias, String className, String typeNameStr,
+			List<String> typeNames) {
 		String keyStr = null;
-		if (values.getKey().startsWith(result.getAttributeName())) {
-			keyStr = values.getKey();
+		if (key.startsWith(attributeName)) {
+			keyStr = key;
 		} else {
-			keyStr = result.getAttributeName() + "." + values.getKey();
+			keyStr = attributeName + "." + key;
 		}
 
 		StringBuilder sb = new StringBuilder();
 
 		// Allow people to use something other than the classname as the output.
-		if (result.getClassNameAlias() != null) {
-			sb.append(result.getClassNameAlias());
+		if (classNameAlias != null) {
+			sb.append(classNameAlias);
 		} else {
-			sb.append(cleanupStr(result.getClassName()));
+			sb.append(cleanupStr(className));
 		}
 
 		sb.append(".");
 
-		String typeName = cleanupStr(getConcatedTypeNameValues(query, typeNames, result.getTypeName()));
+		String typeName = cleanupStr(getConcatedTypeNameValues(query, typeNames, typeNameStr));
 		if (typeName != null && typeName.length() > 0) {
 			sb.append(typeName);
 			sb.append(".");
@@ -0,0 +1,107 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * The keys of a query, compiled so that a key is checked with one hash lookup
+ * instead of a walk through the list.
+ *
+ * A key may also be a pattern:
+ * <ul>
+ * <li>a glob, where * is any sequence of characters and ? is any one
+ * character, ie: Cms*</li>
+ * <li>a regular expression between slashes, ie: /(used|max)/</li>
+ * </ul>
+ * The answer for a key which isn't listed as such is remembered, and so is
+ * the mask of each set of composite keys, so patterns are only matched the
+ * first time a key is seen.
+ */
+public class KeyFilter {
+
+	/** How many answers for keys matched against patterns are remembered. */
+	private static final int MAX_MATCHES = 4096;
+
+	private final Set<String> exact = new HashSet<String>();
+	private final List<String> globs = new ArrayList<String>();
+	private final List<Pattern> regexes = new ArrayList<Pattern>();
+	private final ConcurrentMap<String, Boolean> matches = new ConcurrentHashMap<String, Boolean>();
+	private final ConcurrentMap<String[], boolean[]> masks = new ConcurrentHashMap<String[], boolean[]>();
+
+	/**
+	 * @param keys
+	 *            the keys of the query
+	 */
+	public KeyFilter(List<String> keys) {
+		for (String key : keys) {
+			if (key == null) {
+				continue;
+			}
+			if ((key.length() > 1) && key.startsWith("/") && key.endsWith("/")) {
+				this.regexes.add(Pattern.compile(key.substring(1, key.length() - 1)));
+			} else if ((key.indexOf('*') >= 0) || (key.indexOf('?') >= 0)) {
+				this.globs.add(key);
+			} else {
+				this.exact.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Whether the key is wanted.
+	 */
+	public boolean contains(String key) {
+		if (this.exact.contains(key)) {
+			return true;
+		}
+		if (this.globs.isEmpty() && this.regexes.isEmpty()) {
+			return false;
+		}
+
+		Boolean matched = this.matches.get(key);
+		if (matched == null) {
+			matched = Boolean.valueOf(this.matchesPattern(key));
+			if (this.matches.size() < MAX_MATCHES) {
+				this.matches.put(key, matched);
+			}
+		}
+		return matched.booleanValue();
+	}
+
+	/** */
+	private boolean matchesPattern(String key) {
+		for (String glob : this.globs) {
+			if (ObjectNameIndex.matchesWildcard(glob, key)) {
+				return true;
+			}
+		}
+		for (Pattern regex : this.regexes) {
+			if (regex.matcher(key).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Which of the keys are wanted. The array is kept by identity, so it
+	 * should be one which lives as long as its type, like the keys of a
+	 * CompositeType, and the mask must not be changed.
+	 */
+	public boolean[] mask(String[] keys) {
+		boolean[] mask = this.masks.get(keys);
+		if (mask == null) {
+			mask = new boolean[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				mask[i] = this.contains(keys[i]);
+			}
+			this.masks.put(keys, mask);
+		}
+		return mask;
+	}
+}
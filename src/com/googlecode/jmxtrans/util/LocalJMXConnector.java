@@ -19,11 +19,14 @@ package com.googlecode.jmxtrans.util;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ListenerNotFoundException;
 import javax.management.MBeanServerConnection;
+import javax.management.NotificationBroadcasterSupport;
 import javax.management.NotificationFilter;
 import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
 import javax.security.auth.Subject;
 
@@ -32,15 +35,19 @@ import javax.security.auth.Subject;
  */
 public class LocalJMXConnector implements JMXConnector {
 	private final MBeanServerConnection serverConnection;
+	private final NotificationBroadcasterSupport broadcaster = new NotificationBroadcasterSupport();
+	private final AtomicLong sequenceNumber = new AtomicLong();
 
 	public LocalJMXConnector(MBeanServerConnection serverConnection) {
 		this.serverConnection = serverConnection;
 	}
 
 	public void connect() throws IOException {
+		this.sendConnectionNotification(JMXConnectionNotification.OPENED, "Connection opened");
 	}
 
 	public void connect(Map<String, ?> env) throws IOException {
+		this.connect();
 	}
 
 	public MBeanServerConnection getMBeanServerConnection() throws IOException {
@@ -52,21 +59,28 @@ public class LocalJMXConnector implements JMXConnector {
 	}
 
 	public void close() throws IOException {
+		this.sendConnectionNotification(JMXConnectionNotification.CLOSED, "Connection closed");
 	}
 
 	public void addConnectionNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
-		// TODO
+		this.broadcaster.addNotificationListener(listener, filter, handback);
 	}
 
 	public void removeConnectionNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
-		// TODO
+		this.broadcaster.removeNotificationListener(listener);
 	}
 
 	public void removeConnectionNotificationListener(NotificationListener l, NotificationFilter f, Object handback) throws ListenerNotFoundException {
-		// TODO
+		this.broadcaster.removeNotificationListener(l, f, handback);
 	}
 
 	public String getConnectionId() throws IOException {
 		return "LocalJMXConnector";
 	}
+
+	/** */
+	private void sendConnectionNotification(String type, String message) {
+		this.broadcaster.sendNotification(new JMXConnectionNotification(type, this, "LocalJMXConnector", this.sequenceNumber.incrementAndGet(),
+				message, null));
+	}
 }
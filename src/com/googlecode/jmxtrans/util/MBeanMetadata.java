@@ -0,0 +1,112 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.model.MetricId;
+
+/**
+ * What the worker code needs to know about an MBean besides its attribute
+ * values: the class name and the canonical key property list used to build
+ * the result names, and the attribute names for queries without attributes.
+ */
+public class MBeanMetadata {
+
+	private final ObjectName objectName;
+	private final MBeanInfo info;
+	private final String typeName;
+	private final String[] attributeNames;
+	private final long loadedAt;
+	private final ConcurrentMap<String, ConcurrentMap<String, MetricId>> metricIds = new ConcurrentHashMap<String, ConcurrentMap<String, MetricId>>();
+
+	public MBeanMetadata(ObjectName objectName, MBeanInfo info) {
+		this(objectName, info, getAttributeNames(info));
+	}
+
+	/**
+	 * Lets MBeans of the same class share one array of attribute names.
+	 */
+	public MBeanMetadata(ObjectName objectName, MBeanInfo info, String[] attributeNames) {
+		this.objectName = objectName;
+		this.info = info;
+		this.typeName = objectName.getCanonicalKeyPropertyListString();
+		this.attributeNames = attributeNames;
+		this.loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Fetches the metadata from the server. This is one remote call.
+	 */
+	public static MBeanMetadata load(MBeanServerConnection mbeanServer, ObjectName objectName) throws Exception {
+		return new MBeanMetadata(objectName, mbeanServer.getMBeanInfo(objectName));
+	}
+
+	/** */
+	public static String[] getAttributeNames(MBeanInfo info) {
+		MBeanAttributeInfo[] attrs = info.getAttributes();
+		String[] result = new String[attrs.length];
+		for (int i = 0; i < attrs.length; i++) {
+			result[i] = attrs[i].getName();
+		}
+		return result;
+	}
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	public MBeanInfo getInfo() {
+		return info;
+	}
+
+	public String getClassName() {
+		return info.getClassName();
+	}
+
+	/**
+	 * The canonical key property list, ie: name=PS Eden Space,type=MemoryPool
+	 */
+	public String getTypeName() {
+		return typeName;
+	}
+
+	/**
+	 * The names of all the attributes of the MBean. Don't change the array, it
+	 * may be shared.
+	 */
+	public String[] getAttributeNames() {
+		return attributeNames;
+	}
+
+	/**
+	 * The id of a value of this MBean, the same instance every time.
+	 */
+	public MetricId getMetricId(String attributeName, String key) {
+		ConcurrentMap<String, MetricId> byKey = this.metricIds.get(attributeName);
+		if (byKey == null) {
+			byKey = new ConcurrentHashMap<String, MetricId>();
+			ConcurrentMap<String, MetricId> existing = this.metricIds.putIfAbsent(attributeName, byKey);
+			if (existing != null) {
+				byKey = existing;
+			}
+		}
+		MetricId id = byKey.get(key);
+		if (id == null) {
+			id = new MetricId(this.getClassName(), this.typeName, attributeName, key);
+			MetricId existing = byKey.putIfAbsent(key, id);
+			if (existing != null) {
+				id = existing;
+			}
+		}
+		return id;
+	}
+
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+}
@@ -0,0 +1,357 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches what we learn about the MBeans of one connection so that steady state
+ * runs only need the getAttributes call.
+ *
+ * Metadata entries are dropped when the MBeanServerDelegate tells us that the
+ * MBean was (un)registered, and in any case once they are older than the ttl,
+ * for servers that don't let us listen to the delegate.
+ *
+ * The names matching each query pattern are kept up to date from the same
+ * notifications, and fully refreshed with queryNames once per ttl in case some
+ * were lost. Without the listener every lookup goes to the server.
+ *
+ * Servers with many queries can instead have all of their names fetched with
+ * a single queryNames call once per name index refresh interval, and the
+ * patterns matched locally against an {@link ObjectNameIndex}.
+ *
+ * There is one cache per connection, looked up with the JMXConnector (or the
+ * local MBeanServer) as the key. Call {@link #release(Object)} when the
+ * connection is closed.
+ */
+public class MBeanServerCache implements NotificationListener {
+
+	private static final Logger log = LoggerFactory.getLogger(MBeanServerCache.class);
+
+	public static final long DEFAULT_TTL_MILLIS = 1000 * 60 * 10;
+
+	private static final Map<Object, MBeanServerCache> caches = new HashMap<Object, MBeanServerCache>();
+
+	private static final AtomicLong metadataHits = new AtomicLong();
+	private static final AtomicLong metadataMisses = new AtomicLong();
+	private static final AtomicLong queryNamesHits = new AtomicLong();
+	private static final AtomicLong queryNamesMisses = new AtomicLong();
+	private static final AtomicLong notificationCount = new AtomicLong();
+	private static final AtomicLong nameIndexRefreshes = new AtomicLong();
+
+	private final MBeanServerConnection mbeanServer;
+	private final long ttlMillis;
+	private final ConcurrentMap<ObjectName, MBeanMetadata> metadata = new ConcurrentHashMap<ObjectName, MBeanMetadata>();
+	private final ConcurrentMap<ObjectName, ResolvedNames> resolvedNames = new ConcurrentHashMap<ObjectName, ResolvedNames>();
+	private final ConcurrentMap<String, String[]> attributeNamesByClass = new ConcurrentHashMap<String, String[]>();
+	private volatile boolean listening = false;
+
+	private volatile long nameIndexRefreshMillis = 0;
+	private volatile ObjectNameIndex nameIndex;
+	private volatile long nameIndexRefreshedAt;
+
+	public MBeanServerCache(MBeanServerConnection mbeanServer, long ttlMillis) {
+		this.mbeanServer = mbeanServer;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * Gets the cache for a connection, creating it the first time.
+	 */
+	public static MBeanServerCache getInstance(Object connectionKey, MBeanServerConnection mbeanServer) {
+		synchronized (caches) {
+			MBeanServerCache cache = caches.get(connectionKey);
+			if (cache == null) {
+				cache = new MBeanServerCache(mbeanServer, DEFAULT_TTL_MILLIS);
+				cache.startListening();
+				if (connectionKey instanceof JMXConnector) {
+					((JMXConnector) connectionKey).addConnectionNotificationListener(new ConnectionListener(cache), null, connectionKey);
+				}
+				caches.put(connectionKey, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Forgets the cache of a connection which is being closed.
+	 */
+	public static void release(Object connectionKey) {
+		MBeanServerCache cache;
+		synchronized (caches) {
+			cache = caches.remove(connectionKey);
+		}
+		if (cache != null) {
+			cache.stopListening();
+		}
+	}
+
+	/**
+	 * Subscribes to the (un)registration notifications of the
+	 * MBeanServerDelegate. If that fails we only rely on the ttl.
+	 */
+	public void startListening() {
+		MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+		filter.enableAllObjectNames();
+		try {
+			this.mbeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+			this.listening = true;
+		} catch (Exception ex) {
+			log.debug("Unable to listen to MBean registrations, relying on the cache ttl", ex);
+		}
+	}
+
+	/** */
+	public void stopListening() {
+		if (this.listening) {
+			this.listening = false;
+			try {
+				this.mbeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+			} catch (Exception ex) {
+				// the connection is probably gone already
+				log.debug("Error removing MBean registration listener", ex);
+			}
+		}
+	}
+
+	/**
+	 * Called by the MBeanServerDelegate.
+	 */
+	public void handleNotification(Notification notification, Object handback) {
+		if (notification instanceof MBeanServerNotification) {
+			notificationCount.incrementAndGet();
+			ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+			boolean registered = MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType());
+
+			MBeanMetadata previous = this.metadata.remove(name);
+			if (previous != null) {
+				this.attributeNamesByClass.remove(previous.getClassName());
+			}
+			ObjectNameIndex index = this.nameIndex;
+			if (index != null) {
+				if (registered) {
+					index.add(name);
+				} else {
+					index.remove(name);
+				}
+			}
+			for (ResolvedNames resolved : this.resolvedNames.values()) {
+				if (!registered) {
+					resolved.names.remove(name);
+				} else if (resolved.pattern.apply(name)) {
+					resolved.names.add(name);
+				}
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("Updated cache for: " + name + " (" + notification.getType() + ")");
+			}
+		}
+	}
+
+	/**
+	 * Same as MBeanServerConnection.queryNames(pattern, null), answered from
+	 * the cache while we are listening to the delegate.
+	 */
+	public Set<ObjectName> queryNames(ObjectName pattern) throws Exception {
+		if (this.nameIndexRefreshMillis > 0) {
+			Set<ObjectName> result = this.getNameIndex().query(pattern);
+			queryNamesHits.incrementAndGet();
+			return result;
+		}
+
+		if (!this.listening) {
+			queryNamesMisses.incrementAndGet();
+			return this.mbeanServer.queryNames(pattern, null);
+		}
+
+		ResolvedNames resolved = this.resolvedNames.get(pattern);
+		if ((resolved == null) || ((System.currentTimeMillis() - resolved.refreshedAt) > this.ttlMillis)) {
+			queryNamesMisses.incrementAndGet();
+			resolved = new ResolvedNames(pattern, this.mbeanServer.queryNames(pattern, null));
+			this.resolvedNames.put(pattern, resolved);
+		} else {
+			queryNamesHits.incrementAndGet();
+		}
+		return Collections.unmodifiableSet(resolved.names);
+	}
+
+	/**
+	 * Gets the index of all the names of the server, fetching them again when
+	 * the refresh interval has passed.
+	 */
+	private synchronized ObjectNameIndex getNameIndex() throws Exception {
+		ObjectNameIndex index = this.nameIndex;
+		if ((index == null) || ((System.currentTimeMillis() - this.nameIndexRefreshedAt) > this.nameIndexRefreshMillis)) {
+			nameIndexRefreshes.incrementAndGet();
+			index = new ObjectNameIndex(this.mbeanServer.queryNames(null, null));
+			this.nameIndexRefreshedAt = System.currentTimeMillis();
+			this.nameIndex = index;
+			if (log.isDebugEnabled()) {
+				log.debug("Indexed " + index.size() + " MBean names");
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * How often all the names are fetched to be matched locally. Zero or less
+	 * means each pattern is resolved on its own.
+	 */
+	public void setNameIndexRefreshMillis(long nameIndexRefreshMillis) {
+		if (nameIndexRefreshMillis <= 0) {
+			this.nameIndex = null;
+		}
+		this.nameIndexRefreshMillis = nameIndexRefreshMillis;
+	}
+
+	/**
+	 * Forgets everything, ie: because some notifications were lost.
+	 */
+	public void clear() {
+		this.metadata.clear();
+		this.resolvedNames.clear();
+		this.attributeNamesByClass.clear();
+		this.nameIndex = null;
+	}
+
+	/**
+	 * Gets the metadata of an MBean, only asking the server when we don't know
+	 * it yet or the entry has expired.
+	 */
+	public MBeanMetadata getMetadata(ObjectName name) throws Exception {
+		MBeanMetadata result = this.metadata.get(name);
+		if ((result == null) || this.isExpired(result)) {
+			metadataMisses.incrementAndGet();
+			MBeanInfo info = this.mbeanServer.getMBeanInfo(name);
+			result = new MBeanMetadata(name, info, this.getAttributeNames(info));
+			this.metadata.put(name, result);
+		} else {
+			metadataHits.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * The attribute names of an MBean, shared with the other MBeans of its
+	 * class when they have the same ones. The entry of a class is dropped when
+	 * one of its MBeans is (un)registered.
+	 */
+	private String[] getAttributeNames(MBeanInfo info) {
+		String[] names = MBeanMetadata.getAttributeNames(info);
+		String[] shared = this.attributeNamesByClass.putIfAbsent(info.getClassName(), names);
+		return ((shared != null) && Arrays.equals(shared, names)) ? shared : names;
+	}
+
+	/**
+	 * Forgets about an MBean, ie: because a call on it failed.
+	 */
+	public void invalidate(ObjectName name) {
+		this.metadata.remove(name);
+	}
+
+	/** */
+	public boolean isListening() {
+		return this.listening;
+	}
+
+	/** */
+	public MBeanServerConnection getMBeanServer() {
+		return this.mbeanServer;
+	}
+
+	/** */
+	private boolean isExpired(MBeanMetadata entry) {
+		return (System.currentTimeMillis() - entry.getLoadedAt()) > this.ttlMillis;
+	}
+
+	/** */
+	public static int getCacheCount() {
+		synchronized (caches) {
+			return caches.size();
+		}
+	}
+
+	/** */
+	public static long getMetadataHits() {
+		return metadataHits.get();
+	}
+
+	/** */
+	public static long getMetadataMisses() {
+		return metadataMisses.get();
+	}
+
+	/** */
+	public static long getQueryNamesHits() {
+		return queryNamesHits.get();
+	}
+
+	/** */
+	public static long getQueryNamesMisses() {
+		return queryNamesMisses.get();
+	}
+
+	/** */
+	public static long getNotificationCount() {
+		return notificationCount.get();
+	}
+
+	/** */
+	public static long getNameIndexRefreshes() {
+		return nameIndexRefreshes.get();
+	}
+
+	/**
+	 * The names currently matching a pattern.
+	 */
+	private static class ResolvedNames {
+		private final ObjectName pattern;
+		private final Set<ObjectName> names = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName, Boolean>());
+		private final long refreshedAt = System.currentTimeMillis();
+
+		public ResolvedNames(ObjectName pattern, Set<ObjectName> names) {
+			this.pattern = pattern;
+			this.names.addAll(names);
+		}
+	}
+
+	/**
+	 * Drops the cache when notifications were lost or the connection is gone.
+	 */
+	private static class ConnectionListener implements NotificationListener {
+		private final MBeanServerCache cache;
+
+		public ConnectionListener(MBeanServerCache cache) {
+			this.cache = cache;
+		}
+
+		public void handleNotification(Notification notification, Object handback) {
+			String type = notification.getType();
+			if (JMXConnectionNotification.NOTIFS_LOST.equals(type)) {
+				log.debug("Lost MBean registration notifications, clearing the cache");
+				this.cache.clear();
+			} else if (JMXConnectionNotification.CLOSED.equals(type) || JMXConnectionNotification.FAILED.equals(type)) {
+				release(handback);
+			}
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.management.ObjectName;
+
+/**
+ * All the MBean names of a server, indexed by domain and then by key property
+ * and value, so that ObjectName patterns can be matched locally instead of
+ * with one queryNames call per pattern.
+ *
+ * A pattern is matched by picking the smallest set of names sharing one of its
+ * exact key=value pairs (or the whole domain if it has none) and checking those
+ * with ObjectName.apply().
+ */
+public class ObjectNameIndex {
+
+	private final Map<String, DomainNode> domains = new HashMap<String, DomainNode>();
+	private int size = 0;
+
+	public ObjectNameIndex() {
+	}
+
+	public ObjectNameIndex(Collection<ObjectName> names) {
+		this.addAll(names);
+	}
+
+	/** */
+	public synchronized void addAll(Collection<ObjectName> names) {
+		for (ObjectName name : names) {
+			this.add(name);
+		}
+	}
+
+	/** */
+	public synchronized void add(ObjectName name) {
+		DomainNode node = this.domains.get(name.getDomain());
+		if (node == null) {
+			node = new DomainNode();
+			this.domains.put(name.getDomain(), node);
+		}
+		if (node.add(name)) {
+			this.size++;
+		}
+	}
+
+	/** */
+	public synchronized void remove(ObjectName name) {
+		DomainNode node = this.domains.get(name.getDomain());
+		if ((node != null) && node.remove(name)) {
+			this.size--;
+			if (node.names.isEmpty()) {
+				this.domains.remove(name.getDomain());
+			}
+		}
+	}
+
+	/** */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Same as MBeanServerConnection.queryNames(pattern, null) against the
+	 * indexed names.
+	 */
+	public synchronized Set<ObjectName> query(ObjectName pattern) {
+		if (!pattern.isPattern()) {
+			DomainNode node = this.domains.get(pattern.getDomain());
+			if ((node != null) && node.names.contains(pattern)) {
+				return Collections.singleton(pattern);
+			}
+			return Collections.emptySet();
+		}
+
+		Set<ObjectName> result = new HashSet<ObjectName>();
+		if (pattern.isDomainPattern()) {
+			for (Entry<String, DomainNode> entry : this.domains.entrySet()) {
+				if (matchesWildcard(pattern.getDomain(), entry.getKey())) {
+					entry.getValue().query(pattern, result);
+				}
+			}
+		} else {
+			DomainNode node = this.domains.get(pattern.getDomain());
+			if (node != null) {
+				node.query(pattern, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Matches a domain against a domain pattern, where * is any sequence of
+	 * characters and ? is any one character.
+	 */
+	static boolean matchesWildcard(String pattern, String str) {
+		int p = 0;
+		int s = 0;
+		int star = -1;
+		int mark = 0;
+		while (s < str.length()) {
+			if ((p < pattern.length()) && ((pattern.charAt(p) == '?') || (pattern.charAt(p) == str.charAt(s)))) {
+				p++;
+				s++;
+			} else if ((p < pattern.length()) && (pattern.charAt(p) == '*')) {
+				star = p++;
+				mark = s;
+			} else if (star != -1) {
+				p = star + 1;
+				s = ++mark;
+			} else {
+				return false;
+			}
+		}
+		while ((p < pattern.length()) && (pattern.charAt(p) == '*')) {
+			p++;
+		}
+		return p == pattern.length();
+	}
+
+	/**
+	 * The names of one domain, and for each key property and value the names
+	 * having it.
+	 */
+	private static class DomainNode {
+		private final Set<ObjectName> names = new HashSet<ObjectName>();
+		private final Map<String, Map<String, Set<ObjectName>>> properties = new HashMap<String, Map<String, Set<ObjectName>>>();
+
+		public boolean add(ObjectName name) {
+			if (!this.names.add(name)) {
+				return false;
+			}
+			for (Entry<String, String> property : name.getKeyPropertyList().entrySet()) {
+				Map<String, Set<ObjectName>> values = this.properties.get(property.getKey());
+				if (values == null) {
+					values = new HashMap<String, Set<ObjectName>>();
+					this.properties.put(property.getKey(), values);
+				}
+				Set<ObjectName> withValue = values.get(property.getValue());
+				if (withValue == null) {
+					withValue = new HashSet<ObjectName>();
+					values.put(property.getValue(), withValue);
+				}
+				withValue.add(name);
+			}
+			return true;
+		}
+
+		public boolean remove(ObjectName name) {
+			if (!this.names.remove(name)) {
+				return false;
+			}
+			for (Entry<String, String> property : name.getKeyPropertyList().entrySet()) {
+				Map<String, Set<ObjectName>> values = this.properties.get(property.getKey());
+				Set<ObjectName> withValue = values.get(property.getValue());
+				withValue.remove(name);
+				if (withValue.isEmpty()) {
+					values.remove(property.getValue());
+					if (values.isEmpty()) {
+						this.properties.remove(property.getKey());
+					}
+				}
+			}
+			return true;
+		}
+
+		public void query(ObjectName pattern, Set<ObjectName> result) {
+			Set<ObjectName> candidates = this.names;
+			for (Entry<String, String> property : pattern.getKeyPropertyList().entrySet()) {
+				if (pattern.isPropertyValuePattern(property.getKey())) {
+					continue;
+				}
+				Map<String, Set<ObjectName>> values = this.properties.get(property.getKey());
+				Set<ObjectName> withValue = (values != null) ? values.get(property.getValue()) : null;
+				if (withValue == null) {
+					return;
+				}
+				if (withValue.size() < candidates.size()) {
+					candidates = withValue;
+				}
+			}
+
+			for (ObjectName name : candidates) {
+				if (pattern.apply(name)) {
+					result.add(name);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of an attribute asked for with dotted attribute names, ie:
+ * HeapMemoryUsage.used or LastGcInfo.memoryUsageAfterGc.*
+ *
+ * Each path is matched against the name of a value below the attribute: the
+ * keys of the composites and the rows of the tables leading to it. A * matches
+ * any one part, and a path selects everything below the value it names.
+ */
+public class PathSelector {
+
+	public static final String[] ROOT = new String[0];
+
+	private final List<String[]> paths = new ArrayList<String[]>();
+
+	/**
+	 * Adds a path, given as the dotted name which follows the attribute name.
+	 */
+	public void addPath(String path) {
+		this.paths.add(path.split("\\."));
+	}
+
+	/**
+	 * Whether anything below the given name may be selected, in which case it
+	 * is worth looking at.
+	 */
+	public boolean mayMatch(String[] name) {
+		for (String[] path : this.paths) {
+			if (matches(path, name, null, Math.min(path.length, name.length))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether the value named by parent followed by key is selected.
+	 */
+	public boolean matches(String[] parent, String key) {
+		for (String[] path : this.paths) {
+			if ((path.length <= (parent.length + 1)) && matches(path, parent, key, path.length)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Appends parts to a name.
+	 */
+	public static String[] append(String[] name, String... parts) {
+		String[] result = new String[name.length + parts.length];
+		System.arraycopy(name, 0, result, 0, name.length);
+		System.arraycopy(parts, 0, result, name.length, parts.length);
+		return result;
+	}
+
+	/** */
+	private static boolean matches(String[] path, String[] parent, String key, int length) {
+		for (int i = 0; i < length; i++) {
+			String part = (i < parent.length) ? parent[i] : key;
+			if (!"*".equals(path[i]) && !path[i].equals(part)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (String[] path : this.paths) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			for (int i = 0; i < path.length; i++) {
+				if (i > 0) {
+					sb.append('.');
+				}
+				sb.append(path[i]);
+			}
+		}
+		return "PathSelector [" + sb + "]";
+	}
+}
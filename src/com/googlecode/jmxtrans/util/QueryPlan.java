@@ -0,0 +1,204 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.ColumnarOutputWriter;
+import com.googlecode.jmxtrans.OutputWriter;
+import com.googlecode.jmxtrans.model.Query;
+
+/**
+ * What the worker code needs from a Query, worked out once instead of on every
+ * run: the parsed ObjectName, the attribute names as an array and the keys as
+ * a {@link KeyFilter}.
+ *
+ * A query without attributes asks each MBean for all of its attributes, which
+ * come from {@link MBeanMetadata#getAttributeNames()}, so the Query itself is
+ * never changed.
+ *
+ * An attribute may also be a dotted path into a composite or tabular
+ * attribute, ie: HeapMemoryUsage.used. Since attribute names can have dots
+ * too, the path is split after the longest part which is an attribute of the
+ * MBean. This is worked out once per MBean class.
+ *
+ * When every writer of the query is a {@link ColumnarOutputWriter}, the values
+ * are collected into a MetricBatch sized after the previous one.
+ *
+ * The plan is kept on the Query and compiled again when the Query changes.
+ */
+public class QueryPlan {
+
+	private final Query query;
+	private final ObjectName objectName;
+	private final String[] attributes;
+	private final boolean hasPaths;
+	private final KeyFilter keys;
+	private final boolean columnar;
+	private volatile int batchCapacity = 16;
+	private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<String, Resolution>();
+
+	private QueryPlan(Query query) throws MalformedObjectNameException {
+		this.query = query;
+		this.objectName = new ObjectName(query.getObj());
+
+		List<String> attr = query.getAttr();
+		this.attributes = ((attr != null) && (attr.size() > 0)) ? attr.toArray(new String[attr.size()]) : null;
+
+		boolean dotted = false;
+		if (this.attributes != null) {
+			for (String name : this.attributes) {
+				dotted |= (name.indexOf('.') >= 0);
+			}
+		}
+		this.hasPaths = dotted;
+
+		List<String> keyList = query.getKeys();
+		this.keys = (keyList != null) ? new KeyFilter(keyList) : null;
+
+		List<OutputWriter> writers = query.getOutputWriters();
+		boolean allColumnar = (writers != null) && !writers.isEmpty();
+		if (writers != null) {
+			for (OutputWriter writer : writers) {
+				allColumnar &= (writer instanceof ColumnarOutputWriter);
+			}
+		}
+		this.columnar = allColumnar;
+	}
+
+	/**
+	 * Gets the plan of a query, compiling it the first time.
+	 */
+	public static QueryPlan get(Query query) throws MalformedObjectNameException {
+		QueryPlan plan = query.getPlan();
+		if (plan == null) {
+			plan = new QueryPlan(query);
+			query.setPlan(plan);
+		}
+		return plan;
+	}
+
+	/** */
+	public Query getQuery() {
+		return query;
+	}
+
+	/**
+	 * The obj of the query, which may be a pattern.
+	 */
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * The attributes to ask the given MBean for.
+	 */
+	public String[] getAttributes(MBeanMetadata metadata) {
+		if (this.attributes == null) {
+			return metadata.getAttributeNames();
+		}
+		return this.hasPaths ? this.resolve(metadata).attributes : this.attributes;
+	}
+
+	/**
+	 * The paths wanted below an attribute of the given MBean, or null when all
+	 * of it is wanted.
+	 */
+	public PathSelector getSelector(MBeanMetadata metadata, String attributeName) {
+		return this.hasPaths ? this.resolve(metadata).selectors.get(attributeName) : null;
+	}
+
+	/** */
+	private Resolution resolve(MBeanMetadata metadata) {
+		String[] names = metadata.getAttributeNames();
+		Resolution resolution = this.resolutions.get(metadata.getClassName());
+		if ((resolution == null) || ((resolution.names != names) && !Arrays.equals(resolution.names, names))) {
+			resolution = new Resolution(this.attributes, names);
+			this.resolutions.put(metadata.getClassName(), resolution);
+		}
+		return resolution;
+	}
+
+	/**
+	 * Whether the values should go into a MetricBatch instead of Result
+	 * objects.
+	 */
+	public boolean isColumnar() {
+		return columnar;
+	}
+
+	/**
+	 * How big the MetricBatch of an MBean needs to be, going by the largest
+	 * one seen so far.
+	 */
+	public int getBatchCapacity() {
+		return batchCapacity;
+	}
+
+	/** */
+	public void updateBatchCapacity(int size) {
+		if (size > this.batchCapacity) {
+			this.batchCapacity = size;
+		}
+	}
+
+	/**
+	 * The keys to keep, or null for all of them.
+	 */
+	public KeyFilter getKeys() {
+		return keys;
+	}
+
+	/**
+	 * The attributes to ask an MBean for and the paths wanted below them.
+	 */
+	private static class Resolution {
+		private final String[] names;
+		private final String[] attributes;
+		private final Map<String, PathSelector> selectors = new HashMap<String, PathSelector>();
+
+		public Resolution(String[] requested, String[] names) {
+			this.names = names;
+			Set<String> known = new HashSet<String>(Arrays.asList(names));
+
+			Set<String> attributes = new LinkedHashSet<String>();
+			Set<String> whole = new HashSet<String>();
+			for (String name : requested) {
+				String attribute = name;
+				String path = null;
+				if (!known.contains(name)) {
+					for (int dot = name.lastIndexOf('.'); dot > 0; dot = name.lastIndexOf('.', dot - 1)) {
+						if (known.contains(name.substring(0, dot))) {
+							attribute = name.substring(0, dot);
+							path = name.substring(dot + 1);
+							break;
+						}
+					}
+				}
+
+				attributes.add(attribute);
+				if (path == null) {
+					whole.add(attribute);
+				} else {
+					PathSelector selector = this.selectors.get(attribute);
+					if (selector == null) {
+						selector = new PathSelector();
+						this.selectors.put(attribute, selector);
+					}
+					selector.addPath(path);
+				}
+			}
+			this.selectors.keySet().removeAll(whole);
+			this.attributes = attributes.toArray(new String[attributes.size()]);
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package com.googlecode.jmxtrans.util;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.Attribute;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.Result;
+
+/**
+ * Turns attribute values into Result objects.
+ *
+ * Composite values are read with an extractor compiled the first time their
+ * CompositeType is seen, which knows the keys in order and which of them may
+ * hold composites or tables. Plain values are not copied: the Result gets a
+ * {@link CompositeValueMap} over the composite, which only reads them when a
+ * writer does.
+ *
+ * When only some paths of an attribute are asked for, tables and values which
+ * are not selected are skipped without building anything for them. The keys
+ * of the query are applied the same way: a value whose key isn't wanted is
+ * never read, and a composite without any wanted key gives no Result at all.
+ *
+ * The values go either into Result objects or straight into a
+ * {@link MetricBatch}.
+ *
+ * The results are named as they always have been:
+ * <ul>
+ * <li>a composite gives one Result named after the attribute, with a value per
+ * key</li>
+ * <li>a composite nested in a composite replaces its parent</li>
+ * <li>each row of a table gives the results of its composite, named after the
+ * attribute, the key of the table and the index of the row</li>
+ * </ul>
+ */
+public class ResultFlattener {
+
+	private static final Logger log = LoggerFactory.getLogger(ResultFlattener.class);
+
+	private static final ConcurrentMap<CompositeType, CompositeExtractor> extractors = new ConcurrentHashMap<CompositeType, CompositeExtractor>();
+
+	private ResultFlattener() {
+	}
+
+	/**
+	 * Adds the results for an attribute of an MBean to the list.
+	 *
+	 * @param selector
+	 *            the paths wanted below the attribute, or null for all of it
+	 */
+	public static void flatten(List<Result> resList, MBeanMetadata metadata, Attribute attribute, QueryPlan plan, PathSelector selector) {
+		flatten(new ResultSink(resList, metadata, plan), attribute, selector);
+	}
+
+	/**
+	 * Adds the values of an attribute of an MBean to the batch, without
+	 * building Result objects.
+	 *
+	 * @param selector
+	 *            the paths wanted below the attribute, or null for all of it
+	 */
+	public static void flatten(MetricBatch batch, MBeanMetadata metadata, Attribute attribute, QueryPlan plan, PathSelector selector) {
+		flatten(new MetricSink(batch, metadata, plan), attribute, selector);
+	}
+
+	/** */
+	private static void flatten(Sink sink, Attribute attribute, PathSelector selector) {
+		Object value = attribute.getValue();
+		if (value == null) {
+			return;
+		}
+
+		String attributeName = attribute.getName();
+		KeyFilter keyFilter = sink.plan.getKeys();
+		if (value instanceof CompositeData) {
+			flatten(sink, attributeName, (CompositeData) value, selector, PathSelector.ROOT);
+		} else if (value instanceof CompositeData[]) {
+			for (CompositeData cd : (CompositeData[]) value) {
+				flatten(sink, attributeName, cd, selector, PathSelector.ROOT);
+			}
+		} else if (value instanceof ObjectName[]) {
+			List<String> keys = new ArrayList<String>();
+			List<Object> values = new ArrayList<Object>();
+			for (ObjectName obj : (ObjectName[]) value) {
+				String key = obj.getCanonicalName();
+				if (((selector == null) || selector.matches(PathSelector.ROOT, key)) && ((keyFilter == null) || keyFilter.contains(key))) {
+					keys.add(key);
+					values.add(obj.getKeyPropertyListString());
+				}
+			}
+			sink.values(attributeName, keys, values, selector == null);
+		} else if (value.getClass().isArray()) {
+			// OMFG: this is nutty. some of the items in the array can be
+			// primitive! great interview question!
+			List<String> keys = new ArrayList<String>();
+			List<Object> values = new ArrayList<Object>();
+			for (int i = 0; i < Array.getLength(value); i++) {
+				if ((selector == null) || selector.matches(PathSelector.ROOT, String.valueOf(i))) {
+					String key = attributeName + "." + i;
+					if ((keyFilter == null) || keyFilter.contains(key)) {
+						keys.add(key);
+						values.add(Array.get(value, i));
+					}
+				}
+			}
+			sink.values(attributeName, keys, values, selector == null);
+		} else if (value instanceof TabularDataSupport) {
+			flatten(sink, attributeName, (TabularDataSupport) value, selector, PathSelector.ROOT);
+			if (selector == null) {
+				sink.values(attributeName, Collections.<String> emptyList(), Collections.emptyList(), true);
+			}
+		} else if ((selector == null) && ((keyFilter == null) || keyFilter.contains(attributeName))) {
+			sink.values(attributeName, Collections.singletonList(attributeName), Collections.singletonList(value), true);
+		}
+	}
+
+	/**
+	 * The values of a composite. This is a recursive function.
+	 */
+	private static void flatten(Sink sink, String attributeName, CompositeData cds, PathSelector selector, String[] path) {
+		CompositeExtractor extractor = getExtractor(cds.getCompositeType());
+		KeyFilter keyFilter = sink.plan.getKeys();
+		boolean[] keyMask = (keyFilter != null) ? keyFilter.mask(extractor.keys) : null;
+
+		// which keys end up in the values, null for all of them
+		boolean[] included = keyMask;
+		if (selector != null) {
+			included = new boolean[extractor.keys.length];
+		}
+
+		boolean selected = (selector == null);
+		boolean anyIncluded = (included == null);
+		for (int i = 0; i < extractor.keys.length; i++) {
+			String key = extractor.keys[i];
+			boolean wanted = (selector == null) || selector.matches(path, key);
+			if (extractor.kinds[i] != CompositeExtractor.SIMPLE) {
+				Object value = cds.get(key);
+				if ((extractor.kinds[i] == CompositeExtractor.TABULAR) && (value instanceof TabularDataSupport)) {
+					String[] tablePath = (selector != null) ? PathSelector.append(path, key) : null;
+					if ((selector == null) || selector.mayMatch(tablePath)) {
+						flatten(sink, attributeName + "." + key, (TabularDataSupport) value, selector, tablePath);
+					}
+				} else if ((extractor.kinds[i] == CompositeExtractor.COMPOSITE) && (value instanceof CompositeDataSupport)) {
+					// now recursively go through everything.
+					flatten(sink, attributeName, (CompositeData) value, selector, path);
+					return; // because we don't want to add to the list yet.
+				}
+			}
+			selected |= wanted;
+			if (selector != null) {
+				included[i] = wanted && ((keyMask == null) || keyMask[i]);
+			}
+			anyIncluded |= (included == null) || included[i];
+		}
+		if (selected && anyIncluded) {
+			sink.composite(attributeName, cds, extractor, included);
+		}
+	}
+
+	/**
+	 * The values of each row of a table.
+	 */
+	private static void flatten(Sink sink, String attributeName, TabularDataSupport tds, PathSelector selector, String[] path) {
+		for (Entry<Object, Object> entry : tds.entrySet()) {
+			Object entryKeys = entry.getKey();
+			Object entryValue = entry.getValue();
+			if (!(entryKeys instanceof List) || !(entryValue instanceof CompositeData)) {
+				log.warn("Skipping row of " + attributeName + " with unexpected key " + entryKeys + " or value " + entryValue);
+				continue;
+			}
+
+			// ie: attributeName=LastGcInfo.Par Survivor Space
+			// i haven't seen this be smaller or larger than List<1>, but
+			// might as well loop it.
+			StringBuilder sb = new StringBuilder(attributeName);
+			for (Object entryKey : (List<?>) entryKeys) {
+				sb.append(".");
+				sb.append(entryKey);
+			}
+			String rowName = sb.toString();
+
+			String[] rowPath = null;
+			if (selector != null) {
+				// split like the selector, in case the index has dots
+				rowPath = PathSelector.append(path, rowName.substring(attributeName.length() + 1).split("\\."));
+				if (!selector.mayMatch(rowPath)) {
+					continue;
+				}
+			}
+			flatten(sink, rowName, (CompositeData) entryValue, selector, rowPath);
+		}
+	}
+
+	/** */
+	private static CompositeExtractor getExtractor(CompositeType type) {
+		CompositeExtractor extractor = extractors.get(type);
+		if (extractor == null) {
+			extractor = new CompositeExtractor(type);
+			CompositeExtractor existing = extractors.putIfAbsent(type, extractor);
+			if (existing != null) {
+				extractor = existing;
+			}
+		}
+		return extractor;
+	}
+
+	/** */
+	public static int getExtractorCount() {
+		return extractors.size();
+	}
+
+	/**
+	 * Where the flattened values go.
+	 */
+	private abstract static class Sink {
+		protected final MBeanMetadata metadata;
+		protected final QueryPlan plan;
+
+		protected Sink(MBeanMetadata metadata, QueryPlan plan) {
+			this.metadata = metadata;
+			this.plan = plan;
+		}
+
+		/**
+		 * The included keys of a composite, or all of them if included is
+		 * null.
+		 */
+		public abstract void composite(String attributeName, CompositeData cds, CompositeExtractor extractor, boolean[] included);
+
+		/**
+		 * The values of one Result, which is kept even without values if
+		 * keepEmpty is set.
+		 */
+		public abstract void values(String attributeName, List<String> keys, List<?> values, boolean keepEmpty);
+	}
+
+	/**
+	 * Builds the Result objects.
+	 */
+	private static class ResultSink extends Sink {
+		private final List<Result> resList;
+
+		public ResultSink(List<Result> resList, MBeanMetadata metadata, QueryPlan plan) {
+			super(metadata, plan);
+			this.resList = resList;
+		}
+
+		@Override
+		public void composite(String attributeName, CompositeData cds, CompositeExtractor extractor, boolean[] included) {
+			Result r = this.newResult(attributeName);
+			r.setValues(new CompositeValueMap(cds, extractor.keys, extractor.types, included));
+			this.resList.add(r);
+		}
+
+		@Override
+		public void values(String attributeName, List<String> keys, List<?> values, boolean keepEmpty) {
+			Result r = this.newResult(attributeName);
+			for (int i = 0; i < keys.size(); i++) {
+				r.addValue(keys.get(i), values.get(i));
+			}
+			if (keepEmpty || (r.getValues() != null)) {
+				this.resList.add(r);
+			}
+		}
+
+		/**
+		 * Builds up the base Result object
+		 */
+		private Result newResult(String attributeName) {
+			Result r = new Result(attributeName);
+			r.setQuery(this.plan.getQuery());
+			r.setKeyFilter(this.plan.getKeys());
+			r.setClassName(this.metadata.getClassName());
+			r.setTypeName(this.metadata.getTypeName());
+			return r;
+		}
+	}
+
+	/**
+	 * Fills a MetricBatch.
+	 */
+	private static class MetricSink extends Sink {
+		private final MetricBatch batch;
+
+		public MetricSink(MetricBatch batch, MBeanMetadata metadata, QueryPlan plan) {
+			super(metadata, plan);
+			this.batch = batch;
+		}
+
+		@Override
+		public void composite(String attributeName, CompositeData cds, CompositeExtractor extractor, boolean[] included) {
+			this.batch.startResult();
+			for (int i = 0; i < extractor.keys.length; i++) {
+				if ((included == null) || included[i]) {
+					String key = extractor.keys[i];
+					this.batch.add(this.metadata.getMetricId(attributeName, key), cds.get(key));
+				}
+			}
+		}
+
+		@Override
+		public void values(String attributeName, List<String> keys, List<?> values, boolean keepEmpty) {
+			this.batch.startResult();
+			for (int i = 0; i < keys.size(); i++) {
+				this.batch.add(this.metadata.getMetricId(attributeName, keys.get(i)), values.get(i));
+			}
+		}
+	}
+
+	/**
+	 * The keys of a CompositeType in order, and whether each of them holds a
+	 * composite, a table or a plain value.
+	 */
+	private static class CompositeExtractor {
+		private static final int SIMPLE = 0;
+		private static final int COMPOSITE = 1;
+		private static final int TABULAR = 2;
+
+		private static final List<SimpleType<?>> NUMBER_TYPES = Arrays.<SimpleType<?>> asList(SimpleType.BYTE, SimpleType.SHORT,
+				SimpleType.INTEGER, SimpleType.LONG, SimpleType.FLOAT, SimpleType.DOUBLE, SimpleType.BIGINTEGER, SimpleType.BIGDECIMAL);
+
+		private final String[] keys;
+		private final int[] kinds;
+		private final byte[] types;
+
+		public CompositeExtractor(CompositeType type) {
+			this.keys = type.keySet().toArray(new String[type.keySet().size()]);
+			this.kinds = new int[this.keys.length];
+			this.types = new byte[this.keys.length];
+			for (int i = 0; i < this.keys.length; i++) {
+				OpenType<?> itemType = type.getType(this.keys[i]);
+				if (itemType instanceof CompositeType) {
+					this.kinds[i] = COMPOSITE;
+				} else if (itemType instanceof TabularType) {
+					this.kinds[i] = TABULAR;
+				} else {
+					this.kinds[i] = SIMPLE;
+				}
+
+				if (SimpleType.STRING.equals(itemType)) {
+					this.types[i] = CompositeValueMap.STRING;
+				} else if (NUMBER_TYPES.contains(itemType)) {
+					this.types[i] = CompositeValueMap.NUMBER;
+				} else {
+					this.types[i] = CompositeValueMap.OTHER;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.googlecode.jmxtrans.util;
+
+/**
+ * What a server run is done with, besides its connection: the cached MBean
+ * metadata of the connection, the shared executor of the queries, the
+ * dispatcher of the OutputWriters and the deadlines of the run. Any of them
+ * may be null:
+ * <ul>
+ * <li>cache: the MBeans are asked for their metadata every time.</li>
+ * <li>executor: the queries run one at a time on the calling thread.</li>
+ * <li>dispatcher: the writers run on the calling thread.</li>
+ * <li>deadline: the remote calls aren't watched.</li>
+ * </ul>
+ */
+public class RunContext {
+
+	private final MBeanServerCache cache;
+	private final CollectionExecutor executor;
+	private final WriterDispatcher dispatcher;
+	private final RunDeadline deadline;
+
+	/**
+	 * Runs everything on the calling thread, without a cache or deadlines.
+	 */
+	public RunContext() {
+		this(null, null, null, null);
+	}
+
+	/** */
+	public RunContext(CollectionExecutor executor, WriterDispatcher dispatcher, RunDeadline deadline) {
+		this(null, executor, dispatcher, deadline);
+	}
+
+	/** */
+	public RunContext(MBeanServerCache cache, CollectionExecutor executor, WriterDispatcher dispatcher, RunDeadline deadline) {
+		this.cache = cache;
+		this.executor = executor;
+		this.dispatcher = dispatcher;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * The same context with the cache of the connection.
+	 */
+	public RunContext withCache(MBeanServerCache cache) {
+		return new RunContext(cache, this.executor, this.dispatcher, this.deadline);
+	}
+
+	/** */
+	public MBeanServerCache getCache() {
+		return this.cache;
+	}
+
+	/** */
+	public CollectionExecutor getExecutor() {
+		return this.executor;
+	}
+
+	/** */
+	public WriterDispatcher getDispatcher() {
+		return this.dispatcher;
+	}
+
+	/** */
+	public RunDeadline getDeadline() {
+		return this.deadline;
+	}
+}
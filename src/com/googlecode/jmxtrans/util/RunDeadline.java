@@ -0,0 +1,203 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.concurrent.TimeoutException;
+
+import javax.management.remote.JMXConnector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Server;
+
+/**
+ * The deadlines of one run of a server:
+ * <ul>
+ * <li>the whole run, from the server's timeoutSeconds</li>
+ * <li>each remote call, from the query's timeoutSeconds or else the server's
+ * callTimeoutSeconds, or else its readTimeoutSeconds</li>
+ * </ul>
+ * When one of them passes, the thread waiting on it is interrupted and the
+ * connection is closed, which makes the stuck RMI call fail. The rest of the
+ * run is then abandoned: every later call fails right away, and the
+ * connection must be destroyed instead of going back to the pool.
+ */
+public class RunDeadline {
+
+	private static final Logger log = LoggerFactory.getLogger(RunDeadline.class);
+
+	private final Watchdog watchdog;
+	private final Server server;
+	private final String target;
+	private final Expiry runExpiry;
+	private final Watchdog.Watch runWatch;
+	private volatile JMXConnector conn;
+	private volatile boolean expired = false;
+
+	/**
+	 * Starts the deadline of the run, if the server has one.
+	 */
+	public RunDeadline(Watchdog watchdog, Server server) {
+		this.watchdog = watchdog;
+		this.server = server;
+		this.target = getTarget(server);
+
+		Integer timeout = server.getTimeoutSeconds();
+		if ((timeout != null) && (timeout > 0)) {
+			this.runExpiry = new Expiry("run", timeout * 1000L);
+			this.runWatch = watchdog.watch(timeout * 1000L, this.runExpiry);
+		} else {
+			this.runExpiry = null;
+			this.runWatch = null;
+		}
+	}
+
+	/**
+	 * What the timeouts are counted under: the host and port of the server.
+	 */
+	public static String getTarget(Server server) {
+		return server.isLocal() ? "local" : server.getHost() + ":" + server.getPort();
+	}
+
+	/**
+	 * The connection to close when a deadline passes.
+	 */
+	public void setConnector(JMXConnector conn) {
+		this.conn = conn;
+		if (this.expired) {
+			this.closeConnector();
+		}
+	}
+
+	/**
+	 * How long each remote call for the query may take, in millis, or 0 for
+	 * as long as it takes.
+	 */
+	public long getCallTimeoutMillis(Query query) {
+		Integer timeout = query.getTimeoutSeconds();
+		if (timeout == null) {
+			timeout = this.server.getCallTimeoutSeconds();
+		}
+		if (timeout == null) {
+			timeout = this.server.getReadTimeoutSeconds();
+		}
+		return ((timeout != null) && (timeout > 0)) ? timeout * 1000L : 0;
+	}
+
+	/**
+	 * Starts the deadline of a remote call, failing if the run was
+	 * abandoned.
+	 *
+	 * @return what to give to {@link #endCall(Call)}
+	 */
+	public Call startCall(long timeoutMillis) throws TimeoutException {
+		this.check();
+		if (timeoutMillis <= 0) {
+			return null;
+		}
+		Expiry expiry = new Expiry("call", timeoutMillis);
+		Watchdog.Watch watch = this.watchdog.watch(timeoutMillis, expiry);
+		return (watch != null) ? new Call(watch, expiry) : null;
+	}
+
+	/**
+	 * Ends the deadline of a remote call.
+	 */
+	public void endCall(Call call) {
+		if (call != null) {
+			call.watch.done();
+			call.expiry.end();
+		}
+	}
+
+	/**
+	 * Fails once a deadline has passed.
+	 */
+	public void check() throws TimeoutException {
+		if (this.expired) {
+			throw new TimeoutException("Abandoned the run of server: " + this.target);
+		}
+	}
+
+	/**
+	 * Whether a deadline has passed, in which case the connection is broken.
+	 */
+	public boolean isExpired() {
+		return this.expired;
+	}
+
+	/**
+	 * Ends the deadline of the run.
+	 *
+	 * @return true if every deadline was met
+	 */
+	public boolean finish() {
+		if (this.runWatch != null) {
+			this.runWatch.done();
+			this.runExpiry.end();
+		}
+		return !this.expired;
+	}
+
+	/** */
+	private void closeConnector() {
+		JMXConnector c = this.conn;
+		if (c != null) {
+			try {
+				c.close();
+			} catch (Exception e) {
+				log.debug("Error closing the connection of: " + this.target, e);
+			}
+		}
+	}
+
+	/**
+	 * A remote call being watched.
+	 */
+	public static class Call {
+		private final Watchdog.Watch watch;
+		private final Expiry expiry;
+
+		private Call(Watchdog.Watch watch, Expiry expiry) {
+			this.watch = watch;
+			this.expiry = expiry;
+		}
+	}
+
+	/**
+	 * Abandons the run when a deadline passes. The interrupt is only sent if
+	 * the thread is still waiting, and cleared when it's done waiting.
+	 */
+	private class Expiry implements Runnable {
+		private final String what;
+		private final long timeoutMillis;
+		private final Thread owner = Thread.currentThread();
+		private boolean ended = false;
+		private boolean interrupted = false;
+
+		public Expiry(String what, long timeoutMillis) {
+			this.what = what;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		public void run() {
+			expired = true;
+			watchdog.recordTimeout(target);
+			log.warn("A " + this.what + " of server: " + target + " took more than " + this.timeoutMillis + " ms, abandoning it");
+			synchronized (this) {
+				if (!this.ended) {
+					this.interrupted = true;
+					this.owner.interrupt();
+				}
+			}
+			closeConnector();
+		}
+
+		public synchronized void end() {
+			this.ended = true;
+			if (this.interrupted) {
+				Thread.interrupted();
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.Random;
+
+import com.googlecode.jmxtrans.model.Server;
+
+/**
+ * Spreads the runs of the servers across the run period, and measures how
+ * evenly they end up spread.
+ *
+ * Each server gets a phase: a point in the period worked out from the hash of
+ * its host and port, so it is the same on every start and reload, plus an
+ * optional random jitter. Its first run is at the next time which is that far
+ * into a period, so 2000 servers don't all connect in the same second.
+ *
+ * The start of every run is counted in one of a number of buckets across the
+ * period. The counts of the last full period show how even the load is: a
+ * peak to average ratio of 1 means every bucket had the same number of runs.
+ */
+public class RunSpread {
+
+	public static final int DEFAULT_BUCKETS = 60;
+
+	private final Random random = new Random();
+	private final int numBuckets;
+	private volatile long periodMillis;
+
+	private long windowStart = -1;
+	private int[] current;
+	private int[] last;
+
+	/** */
+	public RunSpread(long periodMillis) {
+		this(periodMillis, DEFAULT_BUCKETS);
+	}
+
+	/** */
+	public RunSpread(long periodMillis, int numBuckets) {
+		this.periodMillis = Math.max(1, periodMillis);
+		this.numBuckets = numBuckets;
+		this.current = new int[numBuckets];
+	}
+
+	/**
+	 * The phase of a server, between 0 and the period, plus up to
+	 * jitterMillis of random.
+	 */
+	public long getPhaseMillis(Server server, long jitterMillis) {
+		String target = RunDeadline.getTarget(server);
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < target.length(); i++) {
+			hash ^= target.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		long phase = (hash & Long.MAX_VALUE) % this.periodMillis;
+		return (phase + this.getJitterMillis(jitterMillis)) % this.periodMillis;
+	}
+
+	/**
+	 * A random delay below jitterMillis.
+	 */
+	public long getJitterMillis(long jitterMillis) {
+		if (jitterMillis <= 0) {
+			return 0;
+		}
+		synchronized (this.random) {
+			return (long) (this.random.nextDouble() * jitterMillis);
+		}
+	}
+
+	/**
+	 * When the first run of a server should be: the next time which is its
+	 * phase into a period.
+	 */
+	public long getStartTime(Server server, long jitterMillis, long now) {
+		long phase = this.getPhaseMillis(server, jitterMillis);
+		return now + ((phase - (now % this.periodMillis)) + this.periodMillis) % this.periodMillis;
+	}
+
+	/**
+	 * Counts a run which started at the given time.
+	 *
+	 * The times are read before the lock is taken, so one from just before
+	 * the start of the period can come after one from just after it. It is
+	 * counted in the last period, or dropped when older than that, instead of
+	 * going back a period.
+	 */
+	public synchronized void record(long timeMillis) {
+		long period = this.periodMillis;
+		long start = timeMillis - (timeMillis % period);
+		if (start < this.windowStart) {
+			if ((start == this.windowStart - period) && (this.last != null)) {
+				this.last[(int) ((timeMillis - start) * this.numBuckets / period)]++;
+			}
+			return;
+		}
+		if (start != this.windowStart) {
+			// a period with no runs at all between the two leaves nothing
+			this.last = (start - this.windowStart == period) ? this.current : null;
+			this.current = new int[this.numBuckets];
+			this.windowStart = start;
+		}
+		this.current[(int) ((timeMillis - start) * this.numBuckets / period)]++;
+	}
+
+	/**
+	 * Changes the period, starting the counts over.
+	 */
+	public synchronized void setPeriodMillis(long periodMillis) {
+		if (periodMillis != this.periodMillis) {
+			this.periodMillis = Math.max(1, periodMillis);
+			this.windowStart = -1;
+			this.last = null;
+		}
+	}
+
+	/** */
+	public long getPeriodMillis() {
+		return this.periodMillis;
+	}
+
+	/**
+	 * The runs started in each bucket of the last full period, empty until
+	 * there is one.
+	 */
+	public synchronized int[] getBucketCounts() {
+		return (this.last != null) ? this.last.clone() : new int[0];
+	}
+
+	/**
+	 * The runs started in the last full period.
+	 */
+	public int getRunCount() {
+		int total = 0;
+		for (int count : this.getBucketCounts()) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * The most runs started in one bucket of the last full period.
+	 */
+	public int getPeakBucketCount() {
+		int peak = 0;
+		for (int count : this.getBucketCounts()) {
+			peak = Math.max(peak, count);
+		}
+		return peak;
+	}
+
+	/**
+	 * The busiest bucket against the average of the last full period: 1 when
+	 * the runs are spread evenly, the number of buckets when they all start
+	 * together, 0 with no runs.
+	 */
+	public double getPeakToAverage() {
+		int[] counts = this.getBucketCounts();
+		int total = 0;
+		int peak = 0;
+		for (int count : counts) {
+			total += count;
+			peak = Math.max(peak, count);
+		}
+		return (total > 0) ? (double) peak * counts.length / total : 0;
+	}
+}
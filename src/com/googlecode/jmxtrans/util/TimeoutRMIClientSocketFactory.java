@@ -0,0 +1,86 @@
+package com.googlecode.jmxtrans.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.rmi.server.RMIClientSocketFactory;
+
+/**
+ * Makes the RMI sockets to a server with a connect timeout and a read
+ * timeout, so that a server which doesn't answer fails the connection instead
+ * of holding the thread forever. 0 means no timeout, like the JDK default.
+ *
+ * RMI sets the read timeout of its sockets to
+ * sun.rmi.transport.tcp.responseTimeout (by default none) once they are
+ * connected, so the sockets keep their read timeout as the longest they will
+ * take.
+ */
+public class TimeoutRMIClientSocketFactory implements RMIClientSocketFactory, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Where JNDI takes the socket factory for the lookup in the RMI registry. */
+	public static final String JNDI_SOCKET_FACTORY = "com.sun.jndi.rmi.factory.socket";
+
+	/** Where the JMX RMI connector takes the client socket factory. */
+	public static final String RMI_CLIENT_SOCKET_FACTORY = "jmx.remote.rmi.client.socket.factory";
+
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+
+	public TimeoutRMIClientSocketFactory(int connectTimeoutMillis, int readTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	public Socket createSocket(String host, int port) throws IOException {
+		Socket socket = new TimeoutSocket(this.readTimeoutMillis);
+		try {
+			socket.connect(new InetSocketAddress(host, port), this.connectTimeoutMillis);
+			socket.setSoTimeout(this.readTimeoutMillis);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return socket;
+	}
+
+	/**
+	 * RMI shares the connections made by equal factories.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof TimeoutRMIClientSocketFactory)) {
+			return false;
+		}
+		TimeoutRMIClientSocketFactory other = (TimeoutRMIClientSocketFactory) o;
+		return (this.connectTimeoutMillis == other.connectTimeoutMillis) && (this.readTimeoutMillis == other.readTimeoutMillis);
+	}
+
+	/** */
+	@Override
+	public int hashCode() {
+		return (31 * this.connectTimeoutMillis) + this.readTimeoutMillis;
+	}
+
+	/**
+	 * A socket whose read timeout can only be made shorter.
+	 */
+	private static class TimeoutSocket extends Socket {
+		private final int maxTimeoutMillis;
+
+		public TimeoutSocket(int maxTimeoutMillis) {
+			this.maxTimeoutMillis = maxTimeoutMillis;
+		}
+
+		@Override
+		public synchronized void setSoTimeout(int timeout) throws SocketException {
+			if ((this.maxTimeoutMillis > 0) && ((timeout == 0) || (timeout > this.maxTimeoutMillis))) {
+				timeout = this.maxTimeoutMillis;
+			}
+			super.setSoTimeout(timeout);
+		}
+	}
+}
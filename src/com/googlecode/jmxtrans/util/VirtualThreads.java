@@ -0,0 +1,86 @@
+package com.googlecode.jmxtrans.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Virtual threads, when the JDK we run on has them (21 and later). A blocked
+ * virtual thread doesn't hold an OS thread, so a server waiting on its RMI
+ * calls costs next to nothing and thousands of them can be polled at once.
+ *
+ * jmxtrans is built for older JDKs, so the API is looked up by reflection.
+ */
+public class VirtualThreads {
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+	private static final Method ofVirtual;
+	private static final Method name;
+	private static final Method factory;
+	private static final Method newThreadPerTaskExecutor;
+
+	static {
+		Method[] methods = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			methods = new Method[] { Thread.class.getMethod("ofVirtual"), builder.getMethod("name", String.class, long.class),
+					builder.getMethod("factory"), Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class) };
+		} catch (Exception e) {
+			log.debug("No virtual threads in this JDK: " + e);
+		}
+		ofVirtual = (methods != null) ? methods[0] : null;
+		name = (methods != null) ? methods[1] : null;
+		factory = (methods != null) ? methods[2] : null;
+		newThreadPerTaskExecutor = (methods != null) ? methods[3] : null;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Whether this JDK has virtual threads.
+	 */
+	public static boolean isSupported() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * A factory of virtual threads named prefix0, prefix1... or null when the
+	 * JDK doesn't have them.
+	 */
+	public static ThreadFactory newThreadFactory(String prefix) {
+		if (!isSupported()) {
+			return null;
+		}
+		try {
+			Object builder = ofVirtual.invoke(null);
+			builder = name.invoke(builder, prefix, 0L);
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (Exception e) {
+			log.warn("Could not create virtual threads", e);
+			return null;
+		}
+	}
+
+	/**
+	 * An executor which starts a new virtual thread for each task, or null
+	 * when the JDK doesn't have them.
+	 */
+	public static ExecutorService newExecutor(String prefix) {
+		ThreadFactory threadFactory = newThreadFactory(prefix);
+		if (threadFactory == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+		} catch (Exception e) {
+			log.warn("Could not create virtual threads", e);
+			return null;
+		}
+	}
+}
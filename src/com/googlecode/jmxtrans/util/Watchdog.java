@@ -0,0 +1,342 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the deadlines of the server runs and of their remote calls, and runs
+ * the expiry action of whichever one overruns, see {@link RunDeadline}.
+ *
+ * One thread waits for the earliest deadline. The expiry actions, which close
+ * connections and so may block themselves, run on a few threads of their own
+ * with a bounded queue, and on the watchdog thread when that is full. No more
+ * than maxWatches deadlines are watched at a time; past that, calls simply
+ * run without one.
+ *
+ * The deadlines are kept in a heap in which each watch knows its place, so a
+ * watch which is done is taken out right away and only the calls still
+ * running count against maxWatches.
+ *
+ * Timeouts are counted per target, ie: host:port.
+ */
+public class Watchdog {
+
+	private static final Logger log = LoggerFactory.getLogger(Watchdog.class);
+
+	public static final int DEFAULT_MAX_WATCHES = 100000;
+
+	private static final int EXPIRY_THREADS = 4;
+	private static final int EXPIRY_QUEUE_SIZE = 1000;
+
+	private static final int RUNNING = 0;
+	private static final int DONE = 1;
+	private static final int EXPIRED = 2;
+
+	private final int maxWatches;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition earliestChanged = this.lock.newCondition();
+	/** A min heap of the watches by deadline, each knowing its index */
+	private Watch[] heap = new Watch[64];
+	private int watchCount = 0;
+	private final ThreadPoolExecutor expiryExecutor;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	private final AtomicLong unwatched = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> timeoutsByTarget = new ConcurrentHashMap<String, AtomicLong>();
+
+	/** */
+	public Watchdog() {
+		this(DEFAULT_MAX_WATCHES);
+	}
+
+	/** */
+	public Watchdog(int maxWatches) {
+		this.maxWatches = maxWatches;
+		this.expiryExecutor = new ThreadPoolExecutor(EXPIRY_THREADS, EXPIRY_THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+				EXPIRY_QUEUE_SIZE), new WatchdogThreadFactory("jmxtrans-watchdog-expiry-"), new ThreadPoolExecutor.CallerRunsPolicy());
+		this.expiryExecutor.allowCoreThreadTimeOut(true);
+
+		this.thread = new WatchdogThreadFactory("jmxtrans-watchdog-").newThread(new Runnable() {
+			public void run() {
+				watchLoop();
+			}
+		});
+		this.thread.start();
+	}
+
+	/**
+	 * Starts watching a deadline.
+	 *
+	 * @return the watch, which must be ended with {@link Watch#done()}, or
+	 *         null if too many deadlines are watched already
+	 */
+	public Watch watch(long timeoutMillis, Runnable onExpiry) {
+		Watch watch = new Watch(this, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), onExpiry);
+		this.lock.lock();
+		try {
+			if (this.watchCount >= this.maxWatches) {
+				this.unwatched.incrementAndGet();
+				return null;
+			}
+			if (this.watchCount == this.heap.length) {
+				this.heap = Arrays.copyOf(this.heap, this.watchCount * 2);
+			}
+			int i = this.watchCount++;
+			this.heap[i] = watch;
+			watch.index = i;
+			this.siftUp(i);
+			if (watch.index == 0) {
+				this.earliestChanged.signal();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return watch;
+	}
+
+	/**
+	 * Takes a watch which is done out of the heap.
+	 */
+	private void remove(Watch watch) {
+		this.lock.lock();
+		try {
+			int i = watch.index;
+			if (i < 0) {
+				return;
+			}
+			watch.index = -1;
+			int last = --this.watchCount;
+			if (i != last) {
+				this.heap[i] = this.heap[last];
+				this.heap[i].index = i;
+				this.heap[last] = null;
+				this.siftDown(i);
+				this.siftUp(i);
+			} else {
+				this.heap[last] = null;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/** */
+	private void siftUp(int i) {
+		Watch watch = this.heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (this.heap[parent].deadlineNanos - watch.deadlineNanos <= 0) {
+				break;
+			}
+			this.heap[i] = this.heap[parent];
+			this.heap[i].index = i;
+			i = parent;
+		}
+		this.heap[i] = watch;
+		watch.index = i;
+	}
+
+	/** */
+	private void siftDown(int i) {
+		Watch watch = this.heap[i];
+		int half = this.watchCount >>> 1;
+		while (i < half) {
+			int child = (2 * i) + 1;
+			int right = child + 1;
+			if ((right < this.watchCount) && (this.heap[right].deadlineNanos - this.heap[child].deadlineNanos < 0)) {
+				child = right;
+			}
+			if (watch.deadlineNanos - this.heap[child].deadlineNanos <= 0) {
+				break;
+			}
+			this.heap[i] = this.heap[child];
+			this.heap[i].index = i;
+			i = child;
+		}
+		this.heap[i] = watch;
+		watch.index = i;
+	}
+
+	/**
+	 * Waits for the earliest deadline and takes its watch out of the heap.
+	 */
+	private Watch takeExpired() throws InterruptedException {
+		this.lock.lockInterruptibly();
+		try {
+			while (true) {
+				if (this.watchCount == 0) {
+					this.earliestChanged.await();
+					continue;
+				}
+				Watch first = this.heap[0];
+				long delay = first.deadlineNanos - System.nanoTime();
+				if (delay <= 0) {
+					this.remove(first);
+					return first;
+				}
+				this.earliestChanged.awaitNanos(delay);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/** */
+	private void watchLoop() {
+		while (this.running) {
+			Watch watch;
+			try {
+				watch = this.takeExpired();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (watch.state.compareAndSet(RUNNING, EXPIRED)) {
+				try {
+					this.expiryExecutor.execute(watch.onExpiry);
+				} catch (RuntimeException e) {
+					log.warn("Error expiring a deadline", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts a timeout of a target.
+	 */
+	public void recordTimeout(String target) {
+		this.timeouts.incrementAndGet();
+		AtomicLong count = this.timeoutsByTarget.get(target);
+		if (count == null) {
+			count = new AtomicLong();
+			AtomicLong existing = this.timeoutsByTarget.putIfAbsent(target, count);
+			if (existing != null) {
+				count = existing;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Stops watching. Deadlines still pending never expire.
+	 */
+	public void shutdown() {
+		this.running = false;
+		this.thread.interrupt();
+		this.expiryExecutor.shutdown();
+	}
+
+	/**
+	 * How many deadlines are being watched.
+	 */
+	public int getWatchCount() {
+		this.lock.lock();
+		try {
+			return this.watchCount;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * How many deadlines weren't watched because there were too many.
+	 */
+	public long getUnwatchedCount() {
+		return this.unwatched.get();
+	}
+
+	/**
+	 * How many deadlines were overrun, for all targets.
+	 */
+	public long getTimeoutCount() {
+		return this.timeouts.get();
+	}
+
+	/**
+	 * How many deadlines were overrun, for one target.
+	 */
+	public long getTimeoutCount(String target) {
+		AtomicLong count = this.timeoutsByTarget.get(target);
+		return (count != null) ? count.get() : 0;
+	}
+
+	/**
+	 * The timeout counts of the targets which had any, sorted by target.
+	 */
+	public Map<String, Long> getTimeoutCounts() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : this.timeoutsByTarget.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	/**
+	 * One deadline, which is taken out of the heap when it is done or
+	 * expires.
+	 */
+	public static class Watch {
+		private final Watchdog watchdog;
+		private final long deadlineNanos;
+		private final Runnable onExpiry;
+		private final AtomicInteger state = new AtomicInteger(RUNNING);
+		/** Where it is in the heap, -1 once out of it, guarded by the lock */
+		private int index = -1;
+
+		private Watch(Watchdog watchdog, long deadlineNanos, Runnable onExpiry) {
+			this.watchdog = watchdog;
+			this.deadlineNanos = deadlineNanos;
+			this.onExpiry = onExpiry;
+		}
+
+		/**
+		 * Ends the watch.
+		 *
+		 * @return true if it ended before the deadline
+		 */
+		public boolean done() {
+			if (this.state.compareAndSet(RUNNING, DONE)) {
+				this.watchdog.remove(this);
+				return true;
+			}
+			return this.state.get() == DONE;
+		}
+
+		/** */
+		public boolean isExpired() {
+			return this.state.get() == EXPIRED;
+		}
+
+	}
+
+	/** */
+	private static class WatchdogThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		public WatchdogThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, this.prefix + this.count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks at a fixed period off a hashed timing wheel, for the servers
+ * which don't need the cron expressions of Quartz. Scheduling, firing and
+ * cancelling a task costs about the same whether there are ten of them or
+ * fifty thousand, without a job store, its lock or its trigger bookkeeping.
+ *
+ * The wheel is an array of buckets, one per tick. A task due n ticks from now
+ * goes into bucket (now + n) mod the size of the wheel, with the number of
+ * whole turns left before it is due. One thread moves to the next bucket
+ * every tick, hands the tasks which are due to the executor and puts them
+ * back one period later. The periods are kept at a fixed rate, so a run which
+ * is late doesn't push the next ones back. When the wheel fell behind by more
+ * than a period, ie: after a long GC pause, the periods missed are skipped
+ * and counted as misfires rather than run back to back, like Quartz does.
+ *
+ * {@link #cancelAll()} drops every task at once, ie: when the json is
+ * reloaded.
+ */
+public class WheelScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(WheelScheduler.class);
+
+	public static final long DEFAULT_TICK_MILLIS = 10;
+	public static final int DEFAULT_WHEEL_SIZE = 4096;
+	public static final int DEFAULT_NUM_THREADS = 10;
+
+	private final long tickMillis;
+	private final List<List<Task>> wheel;
+	private final int mask;
+	private final Queue<Task> added = new ConcurrentLinkedQueue<Task>();
+	private final Executor executor;
+	private final ThreadPoolExecutor ownExecutor;
+	private final Thread thread;
+	private volatile boolean running = true;
+	private volatile int generation = 0;
+
+	private final long startMillis;
+	private long tick = 0;
+
+	private final AtomicInteger taskCount = new AtomicInteger();
+	private final AtomicLong firedCount = new AtomicLong();
+	private final AtomicLong totalLatenessMillis = new AtomicLong();
+	private final AtomicLong misfireCount = new AtomicLong();
+	private volatile long maxLatenessMillis = 0;
+
+	/**
+	 * A wheel running the tasks on a pool of its own.
+	 */
+	public WheelScheduler(int numThreads) {
+		this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, null, numThreads);
+	}
+
+	/**
+	 * A wheel running the tasks on the given executor, ie: virtual threads.
+	 */
+	public WheelScheduler(Executor executor) {
+		this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, executor, 0);
+	}
+
+	/**
+	 * @param wheelSize
+	 *            rounded up to a power of two
+	 */
+	public WheelScheduler(long tickMillis, int wheelSize, Executor executor, int numThreads) {
+		this.tickMillis = Math.max(1, tickMillis);
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.wheel = new ArrayList<List<Task>>(size);
+		for (int i = 0; i < size; i++) {
+			this.wheel.add(new ArrayList<Task>());
+		}
+		this.mask = size - 1;
+
+		if (executor != null) {
+			this.ownExecutor = null;
+			this.executor = executor;
+		} else {
+			this.ownExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new WheelThreadFactory("jmxtrans-wheel-job-"));
+			this.ownExecutor.allowCoreThreadTimeOut(true);
+			this.executor = this.ownExecutor;
+		}
+
+		this.startMillis = System.currentTimeMillis();
+		this.thread = new WheelThreadFactory("jmxtrans-wheel-").newThread(new Runnable() {
+			public void run() {
+				turn();
+			}
+		});
+		this.thread.start();
+	}
+
+	/**
+	 * Runs the task every periodMillis, the first time at startTimeMillis.
+	 */
+	public Task schedule(Runnable runnable, long startTimeMillis, long periodMillis) {
+		Task task = new Task(runnable, startTimeMillis, Math.max(this.tickMillis, periodMillis), this.generation);
+		this.taskCount.incrementAndGet();
+		this.added.add(task);
+		return task;
+	}
+
+	/**
+	 * Drops every task scheduled so far.
+	 */
+	public void cancelAll() {
+		this.generation++;
+		this.taskCount.set(0);
+	}
+
+	/**
+	 * Stops the wheel and waits a bit for the running tasks.
+	 */
+	public void shutdown() {
+		this.running = false;
+		this.thread.interrupt();
+		if (this.ownExecutor != null) {
+			this.ownExecutor.shutdown();
+			try {
+				if (!this.ownExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+					this.ownExecutor.shutdownNow();
+				}
+			} catch (InterruptedException ie) {
+				this.ownExecutor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/** */
+	private void turn() {
+		List<Task> due = new ArrayList<Task>();
+		while (this.running) {
+			long sleep = this.startMillis + ((this.tick + 1) * this.tickMillis) - System.currentTimeMillis();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep);
+				} catch (InterruptedException e) {
+					continue;
+				}
+			}
+			this.tick++;
+
+			Task task;
+			while ((task = this.added.poll()) != null) {
+				this.place(task);
+			}
+
+			int currentGeneration = this.generation;
+			List<Task> bucket = this.wheel.get((int) (this.tick & this.mask));
+			int kept = 0;
+			for (int i = 0; i < bucket.size(); i++) {
+				task = bucket.get(i);
+				if (task.cancelled || (task.generation != currentGeneration)) {
+					continue;
+				}
+				if (task.rounds > 0) {
+					task.rounds--;
+					bucket.set(kept++, task);
+				} else {
+					due.add(task);
+				}
+			}
+			bucket.subList(kept, bucket.size()).clear();
+
+			for (Task t : due) {
+				this.fire(t);
+				this.advance(t);
+				this.place(t);
+			}
+			due.clear();
+		}
+	}
+
+	/**
+	 * Moves the deadline of a task which just fired to its next period which
+	 * is still to come, counting the ones skipped as misfires.
+	 */
+	private void advance(Task task) {
+		task.deadline += task.periodMillis;
+		long behind = System.currentTimeMillis() - task.deadline;
+		if (behind > 0) {
+			long missed = (behind / task.periodMillis) + 1;
+			task.deadline += missed * task.periodMillis;
+			this.misfireCount.addAndGet(missed);
+		}
+	}
+
+	/**
+	 * Puts the task in the bucket of its deadline, or of the next tick if it
+	 * is already due.
+	 */
+	private void place(Task task) {
+		if (task.cancelled || (task.generation != this.generation)) {
+			return;
+		}
+		long ticks = (task.deadline - this.startMillis + this.tickMillis - 1) / this.tickMillis;
+		if (ticks <= this.tick) {
+			ticks = this.tick + 1;
+		}
+		task.rounds = (ticks - this.tick - 1) / this.wheel.size();
+		this.wheel.get((int) (ticks & this.mask)).add(task);
+	}
+
+	/** */
+	private void fire(Task task) {
+		long lateness = Math.max(0, System.currentTimeMillis() - task.deadline);
+		this.firedCount.incrementAndGet();
+		this.totalLatenessMillis.addAndGet(lateness);
+		if (lateness > this.maxLatenessMillis) {
+			this.maxLatenessMillis = lateness;
+		}
+		try {
+			this.executor.execute(task.runnable);
+		} catch (RejectedExecutionException e) {
+			log.debug("Not running a task, shutting down");
+		}
+	}
+
+	/**
+	 * How many tasks are scheduled.
+	 */
+	public int getTaskCount() {
+		return this.taskCount.get();
+	}
+
+	/**
+	 * How many times tasks were handed to the executor.
+	 */
+	public long getFiredCount() {
+		return this.firedCount.get();
+	}
+
+	/**
+	 * How late the tasks were handed to the executor on average, at most a
+	 * tick when the wheel keeps up.
+	 */
+	public long getAverageLatenessMillis() {
+		long fired = this.firedCount.get();
+		return (fired > 0) ? this.totalLatenessMillis.get() / fired : 0;
+	}
+
+	/** */
+	public long getMaxLatenessMillis() {
+		return this.maxLatenessMillis;
+	}
+
+	/**
+	 * How many periods of the tasks were skipped because the wheel fell
+	 * behind, ie: its thread was starved or the JVM paused.
+	 */
+	public long getMisfireCount() {
+		return this.misfireCount.get();
+	}
+
+	/**
+	 * A periodic task on the wheel.
+	 */
+	public class Task {
+		private final Runnable runnable;
+		private final long periodMillis;
+		private final int generation;
+		private long deadline;
+		private long rounds;
+		private volatile boolean cancelled = false;
+
+		private Task(Runnable runnable, long deadline, long periodMillis, int generation) {
+			this.runnable = runnable;
+			this.deadline = deadline;
+			this.periodMillis = periodMillis;
+			this.generation = generation;
+		}
+
+		/**
+		 * Stops running the task.
+		 */
+		public synchronized void cancel() {
+			if (!this.cancelled) {
+				this.cancelled = true;
+				// those of an earlier generation were already counted out
+				if (this.generation == WheelScheduler.this.generation) {
+					taskCount.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	/** */
+	private static class WheelThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		public WheelThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, this.prefix + this.count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
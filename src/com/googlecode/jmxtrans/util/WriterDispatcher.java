@@ -0,0 +1,419 @@
+package com.googlecode.jmxtrans.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jmxtrans.BatchOutputWriter;
+import com.googlecode.jmxtrans.OutputWriter;
+import com.googlecode.jmxtrans.jmx.ManagedWriterQueue;
+import com.googlecode.jmxtrans.model.ResultBatch;
+import com.googlecode.jmxtrans.model.Server;
+
+/**
+ * Hands the results to the OutputWriters on threads of their own, so that a
+ * slow or stalled writer doesn't hold up the queries.
+ *
+ * Each writer gets a bounded queue and a single sender thread, which stops
+ * when the writer has been idle for a minute. The writer is therefore only
+ * ever called by one thread at a time, in the order the batches came in. What
+ * happens when a queue is full depends on the {@link OverflowPolicy}.
+ *
+ * The begin and end of each server run are queued as well, so that a writer
+ * sees them in order with the batches. They are never dropped.
+ */
+public class WriterDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(WriterDispatcher.class);
+
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	/**
+	 * What to do with a batch when the queue of its writer is full.
+	 */
+	public enum OverflowPolicy {
+		/** Wait for room in the queue, slowing the queries down */
+		BLOCK,
+		/** Throw away the oldest waiting batch */
+		DROP_OLDEST,
+		/** Throw away the new batch */
+		DROP_NEWEST
+	}
+
+	private final Map<OutputWriter, WriterQueue> queues = new IdentityHashMap<OutputWriter, WriterQueue>();
+	private final AtomicInteger queueCount = new AtomicInteger(0);
+	private volatile int queueSize;
+	private volatile OverflowPolicy overflowPolicy;
+	private boolean shutdown = false;
+
+	/** */
+	public WriterDispatcher() {
+		this(DEFAULT_QUEUE_SIZE, OverflowPolicy.BLOCK);
+	}
+
+	/** */
+	public WriterDispatcher(int queueSize, OverflowPolicy overflowPolicy) {
+		this.queueSize = queueSize;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Queues the batch for each of the writers of its query.
+	 */
+	public void dispatch(ResultBatch batch) {
+		List<OutputWriter> writers = batch.getQuery().getOutputWriters();
+		if (writers != null) {
+			for (OutputWriter writer : writers) {
+				this.dispatch(writer, batch);
+			}
+		}
+	}
+
+	/**
+	 * Queues the batch for one writer.
+	 */
+	public void dispatch(OutputWriter writer, ResultBatch batch) {
+		WriterQueue queue = this.getQueue(writer);
+		if (queue != null) {
+			queue.offer(batch);
+		}
+	}
+
+	/**
+	 * Queues the beginning of a run of the server's queries.
+	 */
+	public void beginCycle(OutputWriter writer, Server server) {
+		this.cycle(writer, server, true);
+	}
+
+	/**
+	 * Queues the end of a run of the server's queries.
+	 */
+	public void endCycle(OutputWriter writer, Server server) {
+		this.cycle(writer, server, false);
+	}
+
+	/** */
+	private void cycle(OutputWriter writer, Server server, boolean begin) {
+		if (writer instanceof BatchOutputWriter) {
+			WriterQueue queue = this.getQueue(writer);
+			if (queue != null) {
+				queue.executor.execute(new Cycle((BatchOutputWriter) writer, server, begin));
+			}
+		}
+	}
+
+	/**
+	 * Gets the queue of a writer, creating it the first time. Null once shut
+	 * down.
+	 */
+	private synchronized WriterQueue getQueue(OutputWriter writer) {
+		if (this.shutdown) {
+			return null;
+		}
+		WriterQueue queue = this.queues.get(writer);
+		if (queue == null) {
+			String name = writer.getClass().getSimpleName() + "-" + this.queueCount.incrementAndGet();
+			queue = new WriterQueue(this, writer, name, this.queueSize);
+			try {
+				JmxUtils.registerJMX(queue.mbean);
+			} catch (Exception ex) {
+				log.debug("Unable to register the queue of writer: " + name, ex);
+			}
+			this.queues.put(writer, queue);
+		}
+		return queue;
+	}
+
+	/**
+	 * Sends what is still queued, waiting a bit for it, and stops the sender
+	 * threads.
+	 */
+	public void shutdown() {
+		List<WriterQueue> stopping;
+		synchronized (this) {
+			this.shutdown = true;
+			stopping = new ArrayList<WriterQueue>(this.queues.values());
+			this.queues.clear();
+		}
+		for (WriterQueue queue : stopping) {
+			queue.executor.shutdown();
+		}
+		for (WriterQueue queue : stopping) {
+			try {
+				if (!queue.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+					log.warn("Gave up waiting for writer: " + queue.name + ", dropping " + queue.executor.getQueue().size() + " batches");
+					queue.executor.shutdownNow();
+				}
+			} catch (InterruptedException ie) {
+				queue.executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			try {
+				JmxUtils.unregisterJMX(queue.mbean);
+			} catch (Exception ex) {
+				log.debug("Unable to unregister the queue of writer: " + queue.name, ex);
+			}
+		}
+	}
+
+	/**
+	 * The size of the queues created from now on.
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/** */
+	public int getQueueSize() {
+		return this.queueSize;
+	}
+
+	/** */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/** */
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+	/**
+	 * The queue and sender thread of one writer, with its counters.
+	 */
+	public static class WriterQueue implements RejectedExecutionHandler {
+		private final WriterDispatcher dispatcher;
+		private final OutputWriter writer;
+		private final String name;
+		private final ThreadPoolExecutor executor;
+		private final ManagedWriterQueue mbean;
+
+		private final AtomicLong dispatched = new AtomicLong();
+		private final AtomicLong written = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicLong totalLatencyMillis = new AtomicLong();
+		private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+		public WriterQueue(WriterDispatcher dispatcher, OutputWriter writer, String name, int queueSize) {
+			this.dispatcher = dispatcher;
+			this.writer = writer;
+			this.name = name;
+			this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(Math.max(1, queueSize)),
+					new SenderThreadFactory(name), this);
+			this.executor.allowCoreThreadTimeOut(true);
+			this.mbean = new ManagedWriterQueue(this);
+		}
+
+		/** */
+		public void offer(ResultBatch batch) {
+			this.dispatched.incrementAndGet();
+			this.executor.execute(new Send(this, batch));
+		}
+
+		/**
+		 * Called by the executor when the queue is full. Cycle markers are
+		 * never dropped, they wait for room instead.
+		 */
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				if (task instanceof Send) {
+					this.dropped.incrementAndGet();
+				}
+				return;
+			}
+			OverflowPolicy policy = this.dispatcher.getOverflowPolicy();
+			if ((policy == OverflowPolicy.DROP_OLDEST) && this.dropOldest(executor)) {
+				executor.execute(task);
+			} else if ((policy == OverflowPolicy.DROP_NEWEST) && (task instanceof Send)) {
+				this.dropped.incrementAndGet();
+			} else {
+				this.put(task, executor);
+			}
+		}
+
+		/**
+		 * Removes the oldest batch from the queue, skipping cycle markers.
+		 */
+		private boolean dropOldest(ThreadPoolExecutor executor) {
+			for (Iterator<Runnable> it = executor.getQueue().iterator(); it.hasNext();) {
+				if (it.next() instanceof Send) {
+					it.remove();
+					this.dropped.incrementAndGet();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Waits for room in the queue.
+		 */
+		private void put(Runnable task, ThreadPoolExecutor executor) {
+			try {
+				executor.getQueue().put(task);
+				// in case the sender thread timed out meanwhile
+				executor.prestartCoreThread();
+			} catch (InterruptedException ie) {
+				if (task instanceof Send) {
+					this.dropped.incrementAndGet();
+				}
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for writer: " + this.name, ie);
+			}
+		}
+
+		/**
+		 * Runs the writer, on the sender thread.
+		 */
+		private void send(ResultBatch batch, long queuedAt) {
+			try {
+				JmxUtils.writeBatch(this.writer, batch);
+				this.written.incrementAndGet();
+			} catch (Exception ex) {
+				this.failed.incrementAndGet();
+				log.error("Error writing results of query: " + batch.getQuery() + " with writer: " + this.name, ex);
+			}
+
+			long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedAt);
+			this.totalLatencyMillis.addAndGet(latency);
+			long max;
+			while (latency > (max = this.maxLatencyMillis.get())) {
+				if (this.maxLatencyMillis.compareAndSet(max, latency)) {
+					break;
+				}
+			}
+		}
+
+		/** */
+		public String getName() {
+			return this.name;
+		}
+
+		/** */
+		public int getQueueDepth() {
+			return this.executor.getQueue().size();
+		}
+
+		/** */
+		public long getDispatchedCount() {
+			return this.dispatched.get();
+		}
+
+		/** */
+		public long getWrittenCount() {
+			return this.written.get();
+		}
+
+		/** */
+		public long getFailedCount() {
+			return this.failed.get();
+		}
+
+		/** */
+		public long getDroppedCount() {
+			return this.dropped.get();
+		}
+
+		/**
+		 * From the time a batch was queued until the writer was done with it.
+		 */
+		public long getAverageLatencyMillis() {
+			long count = this.written.get() + this.failed.get();
+			return (count > 0) ? (this.totalLatencyMillis.get() / count) : 0;
+		}
+
+		/** */
+		public long getMaxLatencyMillis() {
+			return this.maxLatencyMillis.get();
+		}
+
+		/**
+		 * How many values the writer didn't get because they didn't change.
+		 */
+		public long getSuppressedCount() {
+			if (this.writer instanceof BaseOutputWriter) {
+				ChangeFilter filter = ((BaseOutputWriter) this.writer).getChangeFilter();
+				if (filter != null) {
+					return filter.getSuppressedCount();
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * One batch waiting in a queue.
+	 */
+	private static class Send implements Runnable {
+		private final WriterQueue queue;
+		private final ResultBatch batch;
+		private final long queuedAt = System.nanoTime();
+
+		public Send(WriterQueue queue, ResultBatch batch) {
+			this.queue = queue;
+			this.batch = batch;
+		}
+
+		public void run() {
+			this.queue.send(this.batch, this.queuedAt);
+		}
+	}
+
+	/**
+	 * The begin or end of a server run, waiting in a queue.
+	 */
+	private static class Cycle implements Runnable {
+		private final BatchOutputWriter writer;
+		private final Server server;
+		private final boolean begin;
+
+		public Cycle(BatchOutputWriter writer, Server server, boolean begin) {
+			this.writer = writer;
+			this.server = server;
+			this.begin = begin;
+		}
+
+		public void run() {
+			try {
+				if (this.begin) {
+					this.writer.beginCycle(this.server);
+				} else {
+					this.writer.endCycle(this.server);
+				}
+			} catch (Exception ex) {
+				log.error("Error " + (this.begin ? "beginning" : "ending") + " the run of server: " + this.server + " with writer: "
+						+ this.writer.getClass().getSimpleName(), ex);
+			}
+		}
+	}
+
+	/** */
+	private static class SenderThreadFactory implements ThreadFactory {
+		private final String name;
+
+		public SenderThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "jmxtrans-writer-" + this.name);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -37,6 +37,12 @@ public class EqualsTests {
 		Assert.assertEquals(s1, s2);
 		Assert.assertTrue(s1.equals(s2));
 		Assert.assertNotSame(s1, s3);
+
+		// a new timeout needs new connections
+		s2.setReadTimeoutSeconds(Integer.valueOf(5));
+		Assert.assertFalse(s1.equals(s2));
+		s1.setReadTimeoutSeconds(Integer.valueOf(5));
+		Assert.assertEquals(s1.hashCode(), s2.hashCode());
 	}
 
 	public void testQuery() {
@@ -0,0 +1,118 @@
+package com.googlecode.jmxtrans.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import com.googlecode.jmxtrans.util.ObjectNameIndex;
+
+/**
+ * Compares resolving many query patterns with one queryNames call each against
+ * fetching all the names once and matching the patterns with an
+ * ObjectNameIndex. The server is reached over a loopback RMI connector.
+ *
+ * Run with: java com.googlecode.jmxtrans.benchmark.ObjectNameIndexBenchmark
+ * [numMBeans] [numPatterns] [rounds]
+ */
+public class ObjectNameIndexBenchmark {
+
+	public interface DummyMBean {
+		int getValue();
+	}
+
+	public static class Dummy implements DummyMBean {
+		public int getValue() {
+			return 1;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int numMBeans = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int numPatterns = (args.length > 1) ? Integer.parseInt(args[1]) : 150;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+		MBeanServer mbs = MBeanServerFactory.newMBeanServer();
+		for (int i = 0; i < numMBeans; i++) {
+			mbs.registerMBean(new Dummy(), new ObjectName("bench" + (i % 10) + ":type=Type" + (i % 50) + ",name=Name" + i));
+		}
+
+		JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://localhost"),
+				null, mbs);
+		connectorServer.start();
+		JMXConnector connector = JMXConnectorFactory.connect(connectorServer.getAddress());
+		MBeanServerConnection conn = connector.getMBeanServerConnection();
+
+		List<ObjectName> patterns = new ArrayList<ObjectName>();
+		for (int i = 0; i < numPatterns; i++) {
+			if (i % 3 == 0) {
+				patterns.add(new ObjectName("bench" + (i % 10) + ":type=Type" + (i % 50) + ",*"));
+			} else if (i % 3 == 1) {
+				patterns.add(new ObjectName("bench*:type=Type" + (i % 50) + ",*"));
+			} else {
+				patterns.add(new ObjectName("bench" + (i % 10) + ":type=Type" + (i % 50) + ",name=Name" + i));
+			}
+		}
+
+		// warm up both paths
+		long remoteMatches = runRemote(conn, patterns);
+		long localMatches = runLocal(conn, patterns);
+		if (remoteMatches != localMatches) {
+			throw new IllegalStateException("Remote matched " + remoteMatches + " names, local matched " + localMatches);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			runRemote(conn, patterns);
+		}
+		long remoteNanos = (System.nanoTime() - start) / rounds;
+
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			runLocal(conn, patterns);
+		}
+		long localNanos = (System.nanoTime() - start) / rounds;
+
+		start = System.nanoTime();
+		ObjectNameIndex index = new ObjectNameIndex(conn.queryNames(null, null));
+		for (int i = 0; i < rounds; i++) {
+			for (ObjectName pattern : patterns) {
+				index.query(pattern);
+			}
+		}
+		long matchOnlyNanos = (System.nanoTime() - start) / rounds;
+
+		System.out.println(numMBeans + " MBeans, " + numPatterns + " patterns, " + localMatches + " matches per cycle");
+		System.out.println("remote queryNames per pattern : " + (remoteNanos / 1000) + " us/cycle, " + numPatterns + " remote calls");
+		System.out.println("fetch all + local index       : " + (localNanos / 1000) + " us/cycle, 1 remote call");
+		System.out.println("local index matching only     : " + (matchOnlyNanos / 1000) + " us/cycle, 0 remote calls");
+
+		connector.close();
+		connectorServer.stop();
+	}
+
+	private static long runRemote(MBeanServerConnection conn, List<ObjectName> patterns) throws Exception {
+		long matches = 0;
+		for (ObjectName pattern : patterns) {
+			matches += conn.queryNames(pattern, null).size();
+		}
+		return matches;
+	}
+
+	private static long runLocal(MBeanServerConnection conn, List<ObjectName> patterns) throws Exception {
+		ObjectNameIndex index = new ObjectNameIndex(conn.queryNames(null, null));
+		long matches = 0;
+		for (ObjectName pattern : patterns) {
+			matches += index.query(pattern).size();
+		}
+		return matches;
+	}
+}
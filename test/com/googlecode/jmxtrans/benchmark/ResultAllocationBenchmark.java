@@ -0,0 +1,105 @@
+package com.googlecode.jmxtrans.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.util.JmxUtils;
+import com.googlecode.jmxtrans.util.MBeanMetadata;
+import com.googlecode.jmxtrans.util.QueryPlan;
+import com.googlecode.jmxtrans.util.ResultFlattener;
+
+/**
+ * Measures the bytes allocated to turn the LastGcInfo of the garbage
+ * collectors into Results and read their numeric values the way the writers
+ * do, with the values read through the lazy views and with them copied into
+ * TreeMaps as they used to be.
+ *
+ * Needs a JVM whose ThreadMXBean has getThreadAllocatedBytes(), ie: HotSpot.
+ *
+ * Run with: java com.googlecode.jmxtrans.benchmark.ResultAllocationBenchmark
+ * [iterations]
+ */
+public class ResultAllocationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+		System.gc();
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		Query query = new Query("java.lang:type=GarbageCollector,*", "LastGcInfo");
+		QueryPlan plan = QueryPlan.get(query);
+
+		List<MBeanMetadata> metadata = new ArrayList<MBeanMetadata>();
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (ObjectName name : mbs.queryNames(plan.getObjectName(), null)) {
+			Object value = mbs.getAttribute(name, "LastGcInfo");
+			if (value != null) {
+				metadata.add(MBeanMetadata.load(mbs, name));
+				attributes.add(new Attribute("LastGcInfo", value));
+			}
+		}
+		if (attributes.isEmpty()) {
+			System.out.println("No garbage collector has a LastGcInfo");
+			return;
+		}
+
+		// warm up
+		run(plan, metadata, attributes, iterations, true);
+		run(plan, metadata, attributes, iterations, false);
+
+		long start = allocatedBytes();
+		long lazyCount = run(plan, metadata, attributes, iterations, true);
+		long lazyBytes = allocatedBytes() - start;
+
+		start = allocatedBytes();
+		long eagerCount = run(plan, metadata, attributes, iterations, false);
+		long eagerBytes = allocatedBytes() - start;
+
+		System.out.println(attributes.size() + " LastGcInfo attributes, " + (lazyCount / iterations) + " numeric values per cycle");
+		System.out.println("lazy views  : " + (lazyBytes / iterations) + " bytes/cycle");
+		System.out.println("TreeMap copy: " + (eagerBytes / iterations) + " bytes/cycle (" + (eagerCount / iterations) + " values)");
+	}
+
+	private static long run(QueryPlan plan, List<MBeanMetadata> metadata, List<Attribute> attributes, int iterations, boolean lazy) {
+		long count = 0;
+		for (int n = 0; n < iterations; n++) {
+			for (int i = 0; i < attributes.size(); i++) {
+				List<Result> results = new ArrayList<Result>();
+				ResultFlattener.flatten(results, metadata.get(i), attributes.get(i), plan, null);
+				for (Result result : results) {
+					if (lazy) {
+						for (Entry<String, Object> entry : result.getNumericValues().entrySet()) {
+							count += (entry.getValue() != null) ? 1 : 0;
+						}
+					} else if (result.getValues() != null) {
+						Map<String, Object> copy = new TreeMap<String, Object>(result.getValues());
+						for (Entry<String, Object> entry : copy.entrySet()) {
+							if (JmxUtils.isNumeric(entry.getValue())) {
+								count++;
+							}
+						}
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	private static long allocatedBytes() throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+		return (Long) method.invoke(threads, Thread.currentThread().getId());
+	}
+}
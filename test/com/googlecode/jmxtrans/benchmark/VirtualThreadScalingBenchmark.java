@@ -0,0 +1,120 @@
+package com.googlecode.jmxtrans.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.MBeanServerConnection;
+
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.util.JmxUtils;
+import com.googlecode.jmxtrans.util.VirtualThreads;
+
+/**
+ * How many servers can be polled within a fixed period, with the server runs
+ * on a pool of platform threads (the Quartz pool has 10) against virtual
+ * threads. Each server is the local MBeanServer behind a connection which
+ * sleeps on every call, like a thread blocked on RMI does.
+ *
+ * The number of servers is doubled until a round takes longer than the
+ * period. Virtual threads need JDK 21 or later.
+ *
+ * Run with: java com.googlecode.jmxtrans.benchmark.VirtualThreadScalingBenchmark
+ * [periodMillis] [callLatencyMillis] [platformThreads] [maxServers]
+ */
+public class VirtualThreadScalingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		long periodMillis = (args.length > 0) ? Long.parseLong(args[0]) : 10000;
+		long latencyMillis = (args.length > 1) ? Long.parseLong(args[1]) : 20;
+		int platformThreads = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+		int maxServers = (args.length > 3) ? Integer.parseInt(args[3]) : 65536;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		MBeanServerConnection connection = slowConnection(latencyMillis);
+
+		System.out.println(cores + " cores, " + periodMillis + " ms period, " + latencyMillis + " ms per remote call");
+
+		ExecutorService platform = Executors.newFixedThreadPool(platformThreads);
+		report(platformThreads + " platform threads", scale(platform, connection, periodMillis, maxServers), cores);
+		platform.shutdown();
+
+		ExecutorService virtual = VirtualThreads.newExecutor("bench-");
+		if (virtual == null) {
+			System.out.println("virtual threads              : not supported by this JDK");
+		} else {
+			report("virtual threads", scale(virtual, connection, periodMillis, maxServers), cores);
+			virtual.shutdown();
+		}
+	}
+
+	/**
+	 * The most servers which were all polled within the period.
+	 */
+	private static int scale(ExecutorService executor, MBeanServerConnection connection, long periodMillis, int maxServers) throws Exception {
+		// warm up
+		round(executor, connection, 16);
+
+		int best = 0;
+		for (int numServers = 16; numServers <= maxServers; numServers *= 2) {
+			long millis = round(executor, connection, numServers);
+			System.out.println("  " + numServers + " servers in " + millis + " ms");
+			if (millis > periodMillis) {
+				break;
+			}
+			best = numServers;
+		}
+		return best;
+	}
+
+	/**
+	 * Polls the servers once, returning how long it took.
+	 */
+	private static long round(ExecutorService executor, final MBeanServerConnection connection, int numServers) throws Exception {
+		List<Callable<Object>> runs = new ArrayList<Callable<Object>>(numServers);
+		for (int i = 0; i < numServers; i++) {
+			final Server server = new Server("host" + i, "1099");
+			server.addQuery(new Query("java.lang:type=Memory", "HeapMemoryUsage"));
+			runs.add(new Callable<Object>() {
+				public Object call() throws Exception {
+					JmxUtils.processQueriesForServer(connection, server);
+					return null;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		executor.invokeAll(runs);
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/** */
+	private static void report(String mode, int numServers, int cores) {
+		System.out.println(String.format("%-29s: %d servers per period, %.1f per core", mode, numServers, (double) numServers / cores));
+	}
+
+	/**
+	 * The platform MBeanServer, sleeping before each call.
+	 */
+	private static MBeanServerConnection slowConnection(final long latencyMillis) {
+		return (MBeanServerConnection) Proxy.newProxyInstance(VirtualThreadScalingBenchmark.class.getClassLoader(),
+				new Class<?>[] { MBeanServerConnection.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						Thread.sleep(latencyMillis);
+						try {
+							return method.invoke(ManagementFactory.getPlatformMBeanServer(), args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+}
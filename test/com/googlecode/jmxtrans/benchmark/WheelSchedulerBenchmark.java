@@ -0,0 +1,173 @@
+package com.googlecode.jmxtrans.benchmark;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.quartz.Job;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.Scheduler;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+import org.quartz.TriggerUtils;
+import org.quartz.impl.StdSchedulerFactory;
+
+import com.googlecode.jmxtrans.util.WheelScheduler;
+
+/**
+ * The cost of scheduling the server runs on Quartz, set up like
+ * quartz.server.properties (RAMJobStore, 10 threads), against the timing
+ * wheel, for 1k, 10k and 50k servers run every period:
+ * <ul>
+ * <li>how long it takes to schedule them all</li>
+ * <li>how many runs fire over a few periods, and how late they start on
+ * average and at worst</li>
+ * <li>how long it takes to drop them all, like a reload of the json does</li>
+ * </ul>
+ * The runs themselves do nothing, so all of the time is scheduling overhead.
+ * They are spread across the period, like staggered servers are.
+ *
+ * Run with: java com.googlecode.jmxtrans.benchmark.WheelSchedulerBenchmark
+ * [periodMillis] [periods] [jobCounts,...]
+ */
+public class WheelSchedulerBenchmark {
+
+	private static final AtomicLong runs = new AtomicLong();
+	private static final AtomicLong totalLatenessMillis = new AtomicLong();
+	private static final AtomicLong maxLatenessMillis = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		long periodMillis = (args.length > 0) ? Long.parseLong(args[0]) : 1000;
+		int periods = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		String[] counts = ((args.length > 2) ? args[2] : "1000,10000,50000").split(",");
+
+		System.out.println(periodMillis + " ms period, " + periods + " periods");
+		for (String count : counts) {
+			int numJobs = Integer.parseInt(count.trim());
+			System.out.println(numJobs + " jobs");
+			quartz(numJobs, periodMillis, periods);
+			wheel(numJobs, periodMillis, periods);
+		}
+	}
+
+	/** */
+	private static void quartz(int numJobs, long periodMillis, int periods) throws Exception {
+		Properties props = new Properties();
+		props.setProperty("org.quartz.scheduler.instanceName", "Benchmark" + numJobs);
+		props.setProperty("org.quartz.scheduler.skipUpdateCheck", "true");
+		props.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+		props.setProperty("org.quartz.threadPool.threadCount", "10");
+		props.setProperty("org.quartz.jobStore.misfireThreshold", "60000");
+		props.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+		StdSchedulerFactory factory = new StdSchedulerFactory();
+		factory.initialize(props);
+		Scheduler scheduler = factory.getScheduler();
+		scheduler.start();
+
+		reset();
+		long now = System.currentTimeMillis() + 1000;
+		long start = System.nanoTime();
+		for (int i = 0; i < numJobs; i++) {
+			JobDetail jd = new JobDetail("job" + i, "ServerJob", LatenessJob.class);
+			Trigger trigger = TriggerUtils.makeImmediateTrigger(SimpleTrigger.REPEAT_INDEFINITELY, periodMillis);
+			trigger.setName("trigger" + i);
+			trigger.setStartTime(new Date(now + ((i * periodMillis) / numJobs)));
+			scheduler.scheduleJob(jd, trigger);
+		}
+		long scheduleMillis = (System.nanoTime() - start) / 1000000;
+
+		Thread.sleep(1000 + (periods * periodMillis));
+		long fired = runs.get();
+		long lateness = (fired > 0) ? totalLatenessMillis.get() / fired : 0;
+
+		start = System.nanoTime();
+		for (String group : scheduler.getJobGroupNames()) {
+			for (String name : scheduler.getJobNames(group)) {
+				scheduler.deleteJob(name, group);
+			}
+		}
+		long deleteMillis = (System.nanoTime() - start) / 1000000;
+		scheduler.shutdown(true);
+
+		report("quartz", scheduleMillis, fired, (long) numJobs * periods, lateness, deleteMillis);
+	}
+
+	/** */
+	private static void wheel(int numJobs, long periodMillis, int periods) throws Exception {
+		WheelScheduler wheel = new WheelScheduler(10);
+
+		reset();
+		long now = System.currentTimeMillis() + 1000;
+		long start = System.nanoTime();
+		for (int i = 0; i < numJobs; i++) {
+			long first = now + ((i * periodMillis) / numJobs);
+			wheel.schedule(new LatenessRun(first, periodMillis), first, periodMillis);
+		}
+		long scheduleMillis = (System.nanoTime() - start) / 1000000;
+
+		Thread.sleep(1000 + (periods * periodMillis));
+		long fired = runs.get();
+		long lateness = (fired > 0) ? totalLatenessMillis.get() / fired : 0;
+
+		start = System.nanoTime();
+		wheel.cancelAll();
+		long deleteMillis = (System.nanoTime() - start) / 1000000;
+		wheel.shutdown();
+
+		report("wheel", scheduleMillis, fired, (long) numJobs * periods, lateness, deleteMillis);
+	}
+
+	/** */
+	private static void reset() {
+		runs.set(0);
+		totalLatenessMillis.set(0);
+		maxLatenessMillis.set(0);
+	}
+
+	/** */
+	private static void record(long scheduledMillis) {
+		long lateness = Math.max(0, System.currentTimeMillis() - scheduledMillis);
+		runs.incrementAndGet();
+		totalLatenessMillis.addAndGet(lateness);
+		long max;
+		while (lateness > (max = maxLatenessMillis.get())) {
+			if (maxLatenessMillis.compareAndSet(max, lateness)) {
+				break;
+			}
+		}
+	}
+
+	/** */
+	private static void report(String scheduler, long scheduleMillis, long fired, long expected, long lateness, long deleteMillis) {
+		System.out.println(String.format("  %-7s: scheduled in %6d ms, %7d of %7d runs, %6d ms late on average, %6d ms at worst, dropped in %5d ms",
+				scheduler, scheduleMillis, fired, expected, lateness, maxLatenessMillis.get(), deleteMillis));
+	}
+
+	/**
+	 * Records how late Quartz started it.
+	 */
+	public static class LatenessJob implements Job {
+		public void execute(JobExecutionContext context) {
+			record(context.getScheduledFireTime().getTime());
+		}
+	}
+
+	/**
+	 * Records how late the wheel started it.
+	 */
+	private static class LatenessRun implements Runnable {
+		private final long periodMillis;
+		private long scheduledMillis;
+
+		public LatenessRun(long firstMillis, long periodMillis) {
+			this.scheduledMillis = firstMillis;
+			this.periodMillis = periodMillis;
+		}
+
+		public void run() {
+			record(this.scheduledMillis);
+			this.scheduledMillis += this.periodMillis;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.googlecode.jmxtrans.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.junit.Test;
+import org.quartz.JobDataMap;
+
+import com.googlecode.jmxtrans.model.Server;
+
+public class ServerJobTests {
+
+	@Test
+	public void testSkipWhileRunning() throws Exception {
+		Server server = new Server("localhost", "1099");
+		server.setLocal(true);
+		HeldExecutor held = new HeldExecutor();
+		ServerRunStats stats = new ServerRunStats();
+
+		JobDataMap map = new JobDataMap();
+		map.put(Server.class.getName(), server);
+		map.put(Server.JMX_CONNECTION_FACTORY_POOL, new GenericKeyedObjectPool());
+		map.put(ServerJob.SERVER_RUN_EXECUTOR, held);
+		map.put(ServerRunStats.class.getName(), stats);
+
+		// the first run is held, so the next two are skipped
+		ServerJob.execute(map);
+		ServerJob.execute(map);
+		ServerJob.execute(map);
+		assertEquals(1, held.tasks.size());
+		assertEquals(2, stats.getSkippedCount());
+
+		Thread.sleep(20);
+		held.tasks.remove(0).run();
+		assertEquals(1, stats.getOverrunCount());
+		assertTrue(stats.getMaxOverrunMillis() >= 10);
+
+		// and once it's done the server runs again
+		ServerJob.execute(map);
+		assertEquals(1, held.tasks.size());
+		held.tasks.remove(0).run();
+		assertEquals(2, stats.getSkippedCount());
+		assertEquals(1, stats.getOverrunCount());
+	}
+
+	/**
+	 * Keeps the tasks until the test runs them.
+	 */
+	private static class HeldExecutor extends AbstractExecutorService {
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable command) {
+			this.tasks.add(command);
+		}
+
+		public void shutdown() {
+		}
+
+		public List<Runnable> shutdownNow() {
+			return this.tasks;
+		}
+
+		public boolean isShutdown() {
+			return false;
+		}
+
+		public boolean isTerminated() {
+			return false;
+		}
+
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.googlecode.jmxtrans.model;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricBatchTests {
+
+	@Test
+	public void testValues() {
+		Object[] values = { 1L, 2, (short) 3, (byte) 4, 1.1f, 2.2d, new BigDecimal("3.3"), "12", "x", true, null };
+
+		MetricBatch batch = new MetricBatch(2);
+		for (int i = 0; i < values.length; i++) {
+			batch.add(new MetricId("Class", "type=Test", "Attr", "k" + i), values[i]);
+		}
+
+		assertEquals(values.length, batch.size());
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], batch.getValue(i));
+			sb.setLength(0);
+			assertEquals(String.valueOf(values[i]), batch.appendValue(sb, i).toString());
+		}
+		assertTrue(batch.isIntegral(1));
+		assertEquals(2L, batch.getLong(1));
+		assertTrue(batch.isFloatingPoint(5));
+		assertEquals(2.2d, batch.getDouble(5), 0);
+		assertTrue(batch.isNumeric(6));
+		assertTrue(batch.isNumeric(7));
+		assertFalse(batch.isNumeric(8));
+		assertFalse(batch.isNumeric(9));
+		assertFalse(batch.isNumeric(10));
+	}
+
+	@Test
+	public void testKinds() {
+		Object[] values = { 7, 1.5f, new BigDecimal("3.25"), new BigInteger("42"), "12", "12.5", "", "99999999999999999999", "-1", true };
+		byte[] kinds = { MetricBatch.KIND_INTEGER, MetricBatch.KIND_FLOAT, MetricBatch.KIND_FLOAT, MetricBatch.KIND_INTEGER,
+				MetricBatch.KIND_INTEGER, MetricBatch.KIND_FLOAT, MetricBatch.KIND_INTEGER, MetricBatch.KIND_FLOAT, MetricBatch.KIND_NONE,
+				MetricBatch.KIND_NONE };
+
+		MetricBatch batch = new MetricBatch();
+		for (int i = 0; i < values.length; i++) {
+			batch.add(new MetricId("Class", "type=Test", "Attr", "k" + i), values[i]);
+		}
+
+		for (int i = 0; i < values.length; i++) {
+			assertEquals("value " + values[i], kinds[i], batch.getKind(i));
+		}
+		assertEquals(3.25d, batch.getDouble(2), 0);
+		assertEquals(42L, batch.getLong(3));
+		assertEquals(12L, batch.getLong(4));
+		assertEquals(12.5d, batch.getDouble(5), 0);
+		assertEquals(0L, batch.getLong(6));
+		assertEquals(1e20d, batch.getDouble(7), 0);
+		assertEquals("12", batch.getValue(4));
+	}
+
+	@Test
+	public void testToResults() {
+		MetricBatch batch = new MetricBatch();
+		batch.add(new MetricId("Class", "type=Test", "HeapMemoryUsage", "used"), 1L);
+		batch.add(new MetricId("Class", "type=Test", "HeapMemoryUsage", "max"), 2L);
+		batch.add(new MetricId("Class", "type=Test", "Uptime", "Uptime"), 3L);
+
+		Query query = new Query("test:type=Test");
+		List<Result> results = batch.toResults(query);
+		assertEquals(2, results.size());
+		assertEquals("HeapMemoryUsage", results.get(0).getAttributeName());
+		assertEquals("{max=2, used=1}", results.get(0).getValues().toString());
+		assertEquals(batch.getEpoch(), results.get(1).getEpoch());
+		assertEquals(query, results.get(1).getQuery());
+	}
+
+	@Test
+	public void testToResultsKeepsRepeatedKeys() {
+		// ie: a CompositeData[] attribute, one Result per element
+		MetricBatch batch = new MetricBatch();
+		for (int i = 0; i < 2; i++) {
+			batch.startResult();
+			batch.add(new MetricId("Class", "type=Test", "Threads", "id"), (long) i);
+			batch.add(new MetricId("Class", "type=Test", "Threads", "cpu"), 10L + i);
+		}
+
+		List<Result> results = batch.toResults(new Query("test:type=Test"));
+		assertEquals(2, results.size());
+		assertEquals("{cpu=10, id=0}", results.get(0).getValues().toString());
+		assertEquals("{cpu=11, id=1}", results.get(1).getValues().toString());
+		assertEquals(2, MetricBatch.fromResults(results).toResults(new Query("test:type=Test")).size());
+
+		MetricBatch ids = batch.select(new boolean[] { true, false, true, false });
+		assertEquals(batch.getEpoch(), ids.getEpoch());
+		assertEquals(2, ids.toResults(new Query("test:type=Test")).size());
+	}
+}
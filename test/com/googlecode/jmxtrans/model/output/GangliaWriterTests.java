@@ -1,11 +1,17 @@
 package com.googlecode.jmxtrans.model.output;
 
 import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.Server;
 import com.googlecode.jmxtrans.util.ValidationException;
 import info.ganglia.gmetric4j.gmetric.GMetric;
 import info.ganglia.gmetric4j.gmetric.GMetricSlope;
+import info.ganglia.gmetric4j.gmetric.GMetricType;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static junit.framework.Assert.assertEquals;
 
 /**
@@ -66,4 +72,43 @@ public class GangliaWriterTests {
         assertEquals(24, writer.dmax);
         assertEquals("dummy", writer.groupName);
     }
+
+    /** Test a writer shared by the queries of two servers. */
+    @Test
+    public void testSharedBetweenServers() throws Exception {
+        final List<String> spoofedHostNames = new ArrayList<String>();
+        final GangliaWriter writer = new GangliaWriter() {
+            @Override
+            protected void announce(String spoofedHostName, String name, String value, GMetricType type) {
+                spoofedHostNames.add(spoofedHostName);
+            }
+        };
+        writer.addSetting(GangliaWriter.HOST, "192.168.1.144");
+
+        final Query one = serverQuery("10.0.0.1:one");
+        final Query two = serverQuery("10.0.0.2:two");
+        writer.validateSetup(one);
+        writer.doWrite(one);
+        writer.doWrite(two);
+
+        assertEquals(2, spoofedHostNames.size());
+        assertEquals("10.0.0.1:one", spoofedHostNames.get(0));
+        assertEquals("10.0.0.2:two", spoofedHostNames.get(1));
+    }
+
+    /** A query with one value of a server with the given alias. */
+    private static Query serverQuery(final String alias) throws Exception {
+        final Server server = new Server("localhost", "1099");
+        server.setAlias(alias);
+        final Query query = new Query("java.lang:type=Memory");
+        server.addQuery(query);
+        query.setServer(server);
+        final Result result = new Result("HeapMemoryUsage");
+        result.setQuery(query);
+        result.setClassName("sun.management.MemoryImpl");
+        result.addValue("used", 42L);
+        query.setResults(new ArrayList<Result>());
+        query.getResults().add(result);
+        return query;
+    }
 }
@@ -1,12 +1,17 @@
 package com.googlecode.jmxtrans.util;
 
 import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 
 /**
@@ -96,6 +101,30 @@ public class BaseOutputWriterTests {
 		assertEquals("MISSING", outputWriter.getStringSetting("str", "MISSING"));
 	}
 
+	@Test
+	public void testBatchAdapter() throws Exception {
+		Query query = new Query("java.lang:type=Memory", "HeapMemoryUsage");
+		query.setResultAlias("memory");
+		List<Result> results = new ArrayList<Result>();
+		results.add(new Result("HeapMemoryUsage"));
+
+		final List<Query> written = new ArrayList<Query>();
+		BaseOutputWriter outputWriter = new TestBaseOuputWriter() {
+			@Override
+			public void doWrite(Query query) throws Exception {
+				written.add(query);
+			}
+		};
+		outputWriter.doWrite(new ResultBatch(query, results));
+
+		assertEquals(1, written.size());
+		assertNotSame(query, written.get(0));
+		assertEquals(query, written.get(0));
+		assertEquals(results, written.get(0).getResults());
+		// the configured query is left alone
+		assertNull(query.getResults());
+	}
+
 	private class TestBaseOuputWriter extends BaseOutputWriter {
 		@Override
 		public void doWrite(Query query) throws Exception {
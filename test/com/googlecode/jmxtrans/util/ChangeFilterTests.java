@@ -0,0 +1,97 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.googlecode.jmxtrans.model.MetricBatch;
+import com.googlecode.jmxtrans.model.MetricId;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
+
+public class ChangeFilterTests {
+
+	private static final MetricId MAX = new MetricId("Class", "type=Memory", "HeapMemoryUsage", "max");
+	private static final MetricId USED = new MetricId("Class", "type=Memory", "HeapMemoryUsage", "used");
+
+	@Test
+	public void testUnchangedValuesAreSentOnHeartbeat() {
+		ChangeFilter filter = new ChangeFilter(3);
+		Query query = new Query("java.lang:type=Memory");
+
+		ResultBatch first = batch(query, 100L, 1L);
+		assertSame(first, filter.filter(first));
+
+		MetricBatch second = filter.filter(batch(query, 100L, 2L)).getMetrics();
+		assertEquals(1, second.size());
+		assertSame(USED, second.getId(0));
+		assertEquals(2L, second.getLong(0));
+
+		assertEquals(0, filter.filter(batch(query, 100L, 2L)).getMetrics().size());
+
+		// max is sent again three runs after it was last sent
+		MetricBatch fourth = filter.filter(batch(query, 100L, 2L)).getMetrics();
+		assertEquals(1, fourth.size());
+		assertSame(MAX, fourth.getId(0));
+
+		assertEquals(4L, filter.getSuppressedCount());
+		assertEquals(4L, filter.getSentCount());
+	}
+
+	@Test
+	public void testQueriesAreKeptApart() {
+		ChangeFilter filter = new ChangeFilter(10);
+		Query query = new Query("java.lang:type=Memory");
+		Query other = new Query("java.lang:type=Memory");
+
+		filter.filter(batch(query, 100L, 1L));
+		assertEquals(2, filter.filter(batch(other, 100L, 1L)).getMetrics().size());
+	}
+
+	@Test
+	public void testResultsAreFilteredInPlace() {
+		ChangeFilter filter = new ChangeFilter(10);
+		Query query = new Query("java.lang:type=Memory");
+		filter.filter(results(query, 1L, 1L));
+
+		ResultBatch filtered = filter.filter(results(query, 1L, 2L));
+		assertEquals(1234L, filtered.getEpoch());
+		List<Result> results = filtered.getResults();
+		assertEquals(1, results.size());
+		assertEquals("NonHeapMemoryUsage", results.get(0).getAttributeName());
+		assertEquals(1234L, results.get(0).getEpoch());
+		assertEquals("{used=2}", results.get(0).getValues().toString());
+	}
+
+	/** */
+	private static ResultBatch results(Query query, long heapUsed, long nonHeapUsed) {
+		List<Result> results = new ArrayList<Result>();
+		results.add(result(query, "HeapMemoryUsage", heapUsed));
+		results.add(result(query, "NonHeapMemoryUsage", nonHeapUsed));
+		return new ResultBatch(query, results, 1234L);
+	}
+
+	/** */
+	private static Result result(Query query, String attributeName, long used) {
+		Result result = new Result(attributeName);
+		result.setQuery(query);
+		result.setClassName("Class");
+		result.setTypeName("type=Memory");
+		result.setEpoch(1234L);
+		result.addValue("used", used);
+		return result;
+	}
+
+	/** */
+	private static ResultBatch batch(Query query, long max, long used) {
+		MetricBatch metrics = new MetricBatch();
+		metrics.add(MAX, max);
+		metrics.add(USED, used);
+		return new ResultBatch(query, metrics);
+	}
+}
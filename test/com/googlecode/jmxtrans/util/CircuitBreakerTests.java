@@ -0,0 +1,61 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.googlecode.jmxtrans.model.Server;
+
+public class CircuitBreakerTests {
+
+	@Test
+	public void testTransitions() throws Exception {
+		CircuitBreakers breakers = new CircuitBreakers(2, 50, 200, 0);
+		CircuitBreaker breaker = breakers.get(new Server("host1", "1099"));
+		assertTrue(breaker == breakers.get(new Server("host1", "1099")));
+
+		// opens after two failures in a row
+		assertTrue(breaker.allowRun());
+		breaker.recordFailure();
+		assertTrue(breaker.allowRun());
+		breaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(50, breaker.getBackoffMillis());
+		assertFalse(breaker.allowRun());
+		assertEquals("{host1:1099=OPEN}", breakers.getStates().toString());
+
+		// one trial once the backoff is over, and a failed one doubles it
+		Thread.sleep(60);
+		assertTrue(breaker.allowRun());
+		assertFalse(breaker.allowRun());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.recordFailure();
+		assertEquals(100, breaker.getBackoffMillis());
+		assertFalse(breaker.allowRun());
+
+		// a trial which works closes it
+		Thread.sleep(110);
+		assertTrue(breaker.allowRun());
+		breaker.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRun());
+
+		assertEquals(2, breakers.getOpenedCount());
+		assertEquals(2, breakers.getHalfOpenedCount());
+		assertEquals(1, breakers.getClosedCount());
+		assertEquals(3, breakers.getSkippedCount());
+		assertEquals(0, breakers.getOpenCount());
+	}
+
+	@Test
+	public void testBackoff() {
+		CircuitBreakers breakers = new CircuitBreakers(1, 1000, 8000, 0.2);
+		for (int i = 0; i < 100; i++) {
+			long backoff = breakers.getBackoffMillis(3);
+			assertTrue((backoff >= 3200) && (backoff <= 4800));
+			assertTrue(breakers.getBackoffMillis(40) <= 9600);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CollectionExecutorTests {
+
+	@Test
+	public void testInvokeAllRespectsConcurrency() throws Exception {
+		CollectionExecutor executor = new CollectionExecutor(8);
+		try {
+			final AtomicInteger running = new AtomicInteger();
+			final AtomicInteger maxRunning = new AtomicInteger();
+			final AtomicInteger done = new AtomicInteger();
+
+			List<Runnable> tasks = new ArrayList<Runnable>();
+			for (int i = 0; i < 40; i++) {
+				tasks.add(new Runnable() {
+					public void run() {
+						int now = running.incrementAndGet();
+						synchronized (maxRunning) {
+							if (now > maxRunning.get()) {
+								maxRunning.set(now);
+							}
+						}
+						try {
+							Thread.sleep(5);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						running.decrementAndGet();
+						done.incrementAndGet();
+					}
+				});
+			}
+
+			executor.invokeAll(tasks, 3);
+
+			assertEquals(40, done.get());
+			assertTrue(maxRunning.get() <= 3);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailingTaskDoesNotStopOthers() throws Exception {
+		CollectionExecutor executor = new CollectionExecutor(2);
+		try {
+			final AtomicInteger done = new AtomicInteger();
+			List<Runnable> tasks = new ArrayList<Runnable>();
+			for (int i = 0; i < 10; i++) {
+				final int n = i;
+				tasks.add(new Runnable() {
+					public void run() {
+						if (n % 3 == 0) {
+							throw new IllegalStateException("boom");
+						}
+						done.incrementAndGet();
+					}
+				});
+			}
+
+			executor.invokeAll(tasks, 4);
+
+			assertEquals(6, done.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
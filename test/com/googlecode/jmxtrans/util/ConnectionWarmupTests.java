@@ -0,0 +1,48 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.junit.Test;
+
+import com.googlecode.jmxtrans.model.Server;
+
+public class ConnectionWarmupTests {
+
+	@Test
+	public void testWarm() throws Exception {
+		GenericKeyedObjectPool pool = new GenericKeyedObjectPool(new BaseKeyedPoolableObjectFactory() {
+			@Override
+			public Object makeObject(Object key) throws Exception {
+				String host = ((Server) key).getHost();
+				if (host.equals("down")) {
+					throw new Exception("Connection refused");
+				} else if (host.equals("hung")) {
+					Thread.sleep(10000);
+				}
+				return new Object();
+			}
+		});
+		Server up = new Server("up", "1099");
+		Server down = new Server("down", "1099");
+		Server hung = new Server("hung", "1099");
+
+		ConnectionWarmup warmup = new ConnectionWarmup(2, 500);
+		long start = System.currentTimeMillis();
+		assertEquals(1, warmup.warm(pool, Arrays.asList(up, down, hung)));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, pool.getNumIdle(up));
+		assertEquals(1, warmup.getConnectedCount());
+		assertEquals(1, warmup.getFailedCount());
+		assertEquals(1, warmup.getTimedOutCount());
+		assertEquals("[up:1099]", warmup.getConnectLatencies().keySet().toString());
+
+		// the server which has a connection isn't connected to again
+		assertEquals(0, warmup.warm(pool, Arrays.asList(up, new Server("up", "1099"))));
+		assertEquals(1, pool.getNumIdle(up));
+	}
+}
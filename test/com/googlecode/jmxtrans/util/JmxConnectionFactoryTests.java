@@ -0,0 +1,66 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import org.junit.Test;
+
+public class JmxConnectionFactoryTests {
+
+	@Test
+	public void testValidation() throws Exception {
+		final AtomicInteger pings = new AtomicInteger();
+		final NotificationListener[] listener = new NotificationListener[1];
+		JMXConnector conn = (JMXConnector) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { JMXConnector.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getConnectionId")) {
+							pings.incrementAndGet();
+							return "id";
+						} else if (method.getName().equals("addConnectionNotificationListener")) {
+							listener[0] = (NotificationListener) args[0];
+						} else if (method.getName().equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						} else if (method.getName().equals("equals")) {
+							return proxy == args[0];
+						}
+						return null;
+					}
+				});
+
+		JmxConnectionFactory factory = new JmxConnectionFactory(100);
+		JmxConnectionFactory.track(conn);
+
+		// a fresh connection is handed out without asking the server
+		assertTrue(factory.validateObject(null, conn));
+		assertEquals(0, pings.get());
+
+		// after an error it is asked once
+		JmxConnectionFactory.markSuspect(conn);
+		assertTrue(factory.validateObject(null, conn));
+		assertTrue(factory.validateObject(null, conn));
+		assertEquals(1, pings.get());
+
+		// and once it has been idle long enough
+		Thread.sleep(150);
+		assertTrue(factory.validateObject(null, conn));
+		assertEquals(2, pings.get());
+
+		// a connection which failed is dropped without asking
+		listener[0].handleNotification(new JMXConnectionNotification(JMXConnectionNotification.FAILED, this, "id", 1, null, null), null);
+		assertFalse(factory.validateObject(null, conn));
+		assertEquals(2, pings.get());
+
+		factory.destroyObject(null, conn);
+	}
+}
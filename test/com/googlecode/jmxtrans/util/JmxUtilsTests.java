@@ -1,9 +1,31 @@
 package com.googlecode.jmxtrans.util;
 
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.ResultBatch;
+import com.googlecode.jmxtrans.model.Server;
 import org.junit.Test;
 
+import javax.management.MBeanServerConnection;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Zack Radick Date: 1/20/12
@@ -24,4 +46,176 @@ public class JmxUtilsTests {
 		assertTrue(JmxUtils.isNumeric(".2"));
 		assertFalse(JmxUtils.isNumeric("."));
 	}
+
+	@Test
+	public void testQueryWithoutAttributesIsNotChanged() throws Exception {
+		// matches MBeans of different classes
+		Query query = new Query("java.lang:type=*");
+		List<ResultBatch> batches = JmxUtils.processQuery(ManagementFactory.getPlatformMBeanServer(), query);
+		assertNull(query.getAttr());
+
+		Set<String> classNames = new HashSet<String>();
+		for (ResultBatch batch : batches) {
+			if (!batch.isEmpty()) {
+				classNames.add(batch.getResults().get(0).getClassName());
+			}
+		}
+		assertTrue(classNames.size() > 1);
+		assertEquals(batches.size(), ManagementFactory.getPlatformMBeanServer().queryNames(QueryPlan.get(query).getObjectName(), null).size());
+	}
+
+	@Test
+	public void testServerRunIsOneCycle() throws Exception {
+		CycleWriter writer = new CycleWriter();
+		Server server = new Server("localhost", "0");
+		server.setLocal(true);
+		Query memory = new Query("java.lang:type=Memory", "HeapMemoryUsage");
+		memory.addOutputWriter(writer);
+		server.addQuery(memory);
+		Query runtime = new Query("java.lang:type=Runtime", "Uptime");
+		runtime.addOutputWriter(writer);
+		server.addQuery(runtime);
+
+		JmxUtils.processServer(server, null);
+
+		assertEquals(4, writer.events.size());
+		assertEquals("begin", writer.events.get(0));
+		assertEquals("write", writer.events.get(1));
+		assertEquals("write", writer.events.get(2));
+		assertEquals("end", writer.events.get(3));
+	}
+
+	@Test
+	public void testOverlappingQueriesFetchOnce() throws Exception {
+		final List<String> calls = new ArrayList<String>();
+		MBeanServerConnection connection = (MBeanServerConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { MBeanServerConnection.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						calls.add(method.getName());
+						try {
+							return method.invoke(ManagementFactory.getPlatformMBeanServer(), args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+
+		FetchPlanner planner = new FetchPlanner(connection, new RunContext());
+		planner.add(new Query("java.lang:type=Memory", "HeapMemoryUsage"));
+		Query both = new Query("java.lang:type=Memory", "NonHeapMemoryUsage");
+		both.addAttr("HeapMemoryUsage");
+		planner.add(both);
+		planner.add(new Query("java.lang:type=Runtime", "Uptime"));
+		List<ResultBatch> batches = new ArrayList<ResultBatch>();
+		planner.execute(batches);
+
+		assertEquals(2, planner.getFetches().size());
+		assertEquals(2, Collections.frequency(calls, "getAttributes"));
+		assertEquals(3, batches.size());
+		assertEquals(1, batches.get(0).getResults().size());
+		assertEquals("NonHeapMemoryUsage", batches.get(1).getResults().get(0).getAttributeName());
+		assertEquals("HeapMemoryUsage", batches.get(1).getResults().get(1).getAttributeName());
+		assertEquals("Uptime", batches.get(2).getResults().get(0).getAttributeName());
+	}
+
+	@Test
+	public void testBadQueryIsSkipped() throws Exception {
+		FetchPlanner planner = new FetchPlanner(ManagementFactory.getPlatformMBeanServer(), new RunContext());
+		planner.add(new Query("java.lang:type=Memory", "HeapMemoryUsage"));
+		planner.add(new Query("not a pattern", "Anything"));
+		planner.add(new Query("java.lang:type=Runtime", "Uptime"));
+		List<ResultBatch> batches = new ArrayList<ResultBatch>();
+		planner.execute(batches);
+
+		assertEquals(2, batches.size());
+	}
+
+	@Test
+	public void testMultiThreadedFetchFailureIsThrown() throws Exception {
+		MBeanServerConnection connection = (MBeanServerConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { MBeanServerConnection.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getAttributes")) {
+							throw new IOException("connection reset");
+						}
+						try {
+							return method.invoke(ManagementFactory.getPlatformMBeanServer(), args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+
+		Server server = new Server("localhost", "1099");
+		server.setNumQueryThreads(2);
+		server.addQuery(new Query("java.lang:type=Memory", "HeapMemoryUsage"));
+		server.addQuery(new Query("java.lang:type=Runtime", "Uptime"));
+		CollectionExecutor executor = new CollectionExecutor(2);
+		try {
+			JmxUtils.processQueriesForServer(connection, server, new RunContext(executor, null, null));
+			fail("The failed fetches were swallowed");
+		} catch (IOException e) {
+			assertEquals("connection reset", e.getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConnectTimeouts() throws Exception {
+		// accepts the connections and never answers
+		ServerSocket silent = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		try {
+			Server server = new Server("127.0.0.1", String.valueOf(silent.getLocalPort()));
+			server.setConnectTimeoutSeconds(1);
+			assertConnectFails(server);
+
+			server.setConnectTimeoutSeconds(null);
+			server.setReadTimeoutSeconds(1);
+			assertConnectFails(server);
+		} finally {
+			silent.close();
+		}
+	}
+
+	/** */
+	private static void assertConnectFails(Server server) {
+		long start = System.currentTimeMillis();
+		try {
+			JmxUtils.getServerConnection(server).close();
+			fail("Connected to a server which never answers");
+		} catch (Exception e) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	/** */
+	private static class CycleWriter extends BaseOutputWriter {
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void beginCycle(Server server) {
+			this.events.add("begin");
+		}
+
+		@Override
+		public void doWrite(ResultBatch batch) {
+			this.events.add("write");
+		}
+
+		@Override
+		public void endCycle(Server server) {
+			this.events.add("end");
+		}
+
+		@Override
+		public void doWrite(Query query) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void validateSetup(Query query) throws ValidationException {
+		}
+	}
 }
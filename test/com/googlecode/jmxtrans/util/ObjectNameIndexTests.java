@@ -0,0 +1,57 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class ObjectNameIndexTests {
+
+	@Test
+	public void testMatchesQueryNames() throws Exception {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		ObjectNameIndex index = new ObjectNameIndex(mbs.queryNames(null, null));
+
+		String[] patterns = { "*:*", "java.lang:*", "java.lang:type=Memory", "java.lang:type=MemoryPool,*", "java.lang:type=MemoryPool,name=*",
+				"*:type=GarbageCollector,*", "java.*:*", "java.l?ng:type=Threading", "java.lang:type=Mem*,*", "java.lang:type=Nope,*",
+				"nope:*" };
+		for (String pattern : patterns) {
+			ObjectName oName = new ObjectName(pattern);
+			assertEquals(pattern, mbs.queryNames(oName, null), index.query(oName));
+		}
+	}
+
+	@Test
+	public void testAddRemove() throws Exception {
+		ObjectNameIndex index = new ObjectNameIndex();
+		ObjectName a = new ObjectName("test:type=Foo,name=a");
+		ObjectName b = new ObjectName("test:type=Foo,name=b");
+		index.add(a);
+		index.add(b);
+		index.add(a);
+		assertEquals(2, index.size());
+		assertEquals(2, index.query(new ObjectName("test:type=Foo,*")).size());
+
+		index.remove(a);
+		assertEquals(1, index.size());
+		assertFalse(index.query(new ObjectName("test:*")).contains(a));
+		assertTrue(index.query(new ObjectName("test:name=b,*")).contains(b));
+		assertTrue(index.query(new ObjectName("test:name=a,*")).isEmpty());
+	}
+
+	@Test
+	public void testMatchesWildcard() {
+		assertTrue(ObjectNameIndex.matchesWildcard("*", "java.lang"));
+		assertTrue(ObjectNameIndex.matchesWildcard("java.*", "java.lang"));
+		assertTrue(ObjectNameIndex.matchesWildcard("j?va.lang", "java.lang"));
+		assertTrue(ObjectNameIndex.matchesWildcard("*.lang", "java.lang"));
+		assertFalse(ObjectNameIndex.matchesWildcard("java.*.x", "java.lang"));
+		assertFalse(ObjectNameIndex.matchesWildcard("java", "java.lang"));
+	}
+}
@@ -0,0 +1,132 @@
+package com.googlecode.jmxtrans.util;
+
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the dotted attribute paths against the platform MBeans.
+ */
+public class ResultFlattenerTests {
+
+	@Test
+	public void testCompositeLeaf() throws Exception {
+		List<Result> results = run(new Query("java.lang:type=Memory", "HeapMemoryUsage.used"));
+		assertEquals(1, results.size());
+		assertEquals("HeapMemoryUsage", results.get(0).getAttributeName());
+		assertEquals(1, results.get(0).getValues().size());
+		assertTrue(results.get(0).getValues().containsKey("used"));
+	}
+
+	@Test
+	public void testWholeAttributeWins() throws Exception {
+		Query query = new Query("java.lang:type=Memory", "HeapMemoryUsage.used");
+		query.addAttr("HeapMemoryUsage");
+		List<Result> results = run(query);
+		assertEquals(1, results.size());
+		assertEquals(4, results.get(0).getValues().size());
+	}
+
+	@Test
+	public void testTableRows() throws Exception {
+		System.gc();
+		List<Result> all = run(new Query("java.lang:type=GarbageCollector,*", "LastGcInfo"));
+		List<Result> rows = run(new Query("java.lang:type=GarbageCollector,*", "LastGcInfo.memoryUsageAfterGc.*"));
+
+		List<String> expected = new ArrayList<String>();
+		for (Result r : all) {
+			if (r.getAttributeName().startsWith("LastGcInfo.memoryUsageAfterGc.")) {
+				expected.add(r.getTypeName() + " " + r.getAttributeName());
+			}
+		}
+		List<String> actual = new ArrayList<String>();
+		for (Result r : rows) {
+			actual.add(r.getTypeName() + " " + r.getAttributeName());
+		}
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testKeys() throws Exception {
+		Query query = new Query("java.lang:type=Memory", "HeapMemoryUsage");
+		query.addAttr("NonHeapMemoryUsage");
+		query.addKey("used");
+		query.addKey("m?x");
+		List<Result> results = run(query);
+		assertEquals(2, results.size());
+		assertEquals("[max, used]", results.get(0).getValues().keySet().toString());
+		assertEquals("[max, used]", results.get(1).getValues().keySet().toString());
+
+		// no result for a composite without any of the keys
+		query = new Query("java.lang:type=Memory", "HeapMemoryUsage");
+		query.addKey("/comm.*/");
+		assertEquals("[committed]", run(query).get(0).getValues().keySet().toString());
+		query = new Query("java.lang:type=Memory", "HeapMemoryUsage");
+		query.addKey("other");
+		assertTrue(run(query).isEmpty());
+	}
+
+	@Test
+	public void testSelector() {
+		PathSelector selector = new PathSelector();
+		selector.addPath("memoryUsageAfterGc.*.used");
+		assertTrue(selector.mayMatch(new String[] { "memoryUsageAfterGc" }));
+		assertFalse(selector.mayMatch(new String[] { "memoryUsageBeforeGc" }));
+		assertFalse(selector.matches(PathSelector.ROOT, "memoryUsageAfterGc"));
+		assertTrue(selector.matches(new String[] { "memoryUsageAfterGc", "PS Eden Space" }, "used"));
+		assertFalse(selector.matches(new String[] { "memoryUsageAfterGc", "PS Eden Space" }, "max"));
+	}
+
+	@Test
+	public void testNumericValues() throws Exception {
+		String[] keys = { "a", "b", "c", "d", "e" };
+		CompositeType type = new CompositeType("test", "test", keys, keys, new OpenType<?>[] { SimpleType.STRING, SimpleType.STRING,
+				SimpleType.LONG, SimpleType.BOOLEAN, SimpleType.LONG });
+		CompositeDataSupport data = new CompositeDataSupport(type, keys, new Object[] { "12", "x", 3L, true, null });
+
+		Query query = new Query("test:type=Test");
+		MBeanMetadata metadata = new MBeanMetadata(new ObjectName("test:type=Test"), new MBeanInfo("Test", null, null, null, null, null));
+		List<Result> results = new ArrayList<Result>();
+		ResultFlattener.flatten(results, metadata, new Attribute("test", data), QueryPlan.get(query), null);
+
+		assertEquals(1, results.size());
+		Map<String, Object> values = results.get(0).getValues();
+		assertEquals("{a=12, b=x, c=3, d=true, e=null}", values.toString());
+
+		Map<String, Object> numeric = results.get(0).getNumericValues();
+		assertEquals("{a=12, c=3}", numeric.toString());
+		assertEquals(2, numeric.size());
+		assertTrue(numeric.containsKey("c"));
+		assertFalse(numeric.containsKey("d"));
+
+		// adding a value copies the view
+		results.get(0).addValue("f", 1);
+		assertEquals("{a=12, b=x, c=3, d=true, e=null, f=1}", results.get(0).getValues().toString());
+	}
+
+	private static List<Result> run(Query query) throws Exception {
+		List<Result> results = new ArrayList<Result>();
+		for (ResultBatch batch : JmxUtils.processQuery(ManagementFactory.getPlatformMBeanServer(), query)) {
+			results.addAll(batch.getResults());
+		}
+		return results;
+	}
+}
@@ -0,0 +1,117 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServerConnection;
+
+import org.junit.Test;
+
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Server;
+
+public class RunDeadlineTests {
+
+	@Test
+	public void testFinishedWatchesDontCount() throws Exception {
+		final int[] expired = new int[1];
+		Runnable onExpiry = new Runnable() {
+			public void run() {
+				synchronized (expired) {
+					expired[0]++;
+				}
+			}
+		};
+		Watchdog watchdog = new Watchdog(3);
+		try {
+			Watchdog.Watch[] watches = new Watchdog.Watch[3];
+			for (int i = 0; i < 1000; i++) {
+				for (int j = 0; j < watches.length; j++) {
+					watches[j] = watchdog.watch(60000 - j, onExpiry);
+				}
+				for (int j = 0; j < watches.length; j++) {
+					assertTrue(watches[(i + j) % 3].done());
+				}
+			}
+			assertEquals(0, watchdog.getWatchCount());
+			assertEquals(0, watchdog.getUnwatchedCount());
+
+			Watchdog.Watch late = watchdog.watch(100, onExpiry);
+			Watchdog.Watch early = watchdog.watch(50, onExpiry);
+			Thread.sleep(500);
+			assertFalse(late.done());
+			assertFalse(early.done());
+			assertEquals(0, watchdog.getWatchCount());
+			synchronized (expired) {
+				assertEquals(2, expired[0]);
+			}
+		} finally {
+			watchdog.shutdown();
+		}
+	}
+
+	@Test
+	public void testStuckCallIsAbandoned() throws Exception {
+		Watchdog watchdog = new Watchdog();
+		try {
+			Server server = new Server("localhost", "0");
+			server.setLocal(true);
+			Query query = new Query("java.lang:type=Memory", "HeapMemoryUsage");
+			query.setTimeoutSeconds(1);
+
+			RunDeadline deadline = new RunDeadline(watchdog, server);
+			FetchPlanner planner = new FetchPlanner(stuckConnection(), new RunContext(null, null, deadline));
+			planner.add(query);
+			long start = System.currentTimeMillis();
+			try {
+				planner.execute(null);
+				fail();
+			} catch (Exception e) {
+				// the call was interrupted
+			}
+			assertTrue(System.currentTimeMillis() - start < 10000);
+			assertFalse(Thread.interrupted());
+			assertTrue(deadline.isExpired());
+			assertFalse(deadline.finish());
+			assertEquals(1, watchdog.getTimeoutCount("local"));
+
+			// the rest of the run fails right away
+			try {
+				planner.add(query);
+				fail();
+			} catch (TimeoutException e) {
+				// abandoned
+			}
+		} finally {
+			watchdog.shutdown();
+		}
+	}
+
+	/**
+	 * The platform MBeanServer, where getAttributes never returns.
+	 */
+	private static MBeanServerConnection stuckConnection() {
+		return (MBeanServerConnection) Proxy.newProxyInstance(RunDeadlineTests.class.getClassLoader(),
+				new Class<?>[] { MBeanServerConnection.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getAttributes")) {
+							Thread.sleep(60000);
+						}
+						try {
+							return method.invoke(ManagementFactory.getPlatformMBeanServer(), args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+}
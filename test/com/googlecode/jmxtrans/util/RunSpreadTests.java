@@ -0,0 +1,82 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.googlecode.jmxtrans.model.Server;
+
+public class RunSpreadTests {
+
+	@Test
+	public void testStartTimes() {
+		RunSpread spread = new RunSpread(60000);
+		Server server = new Server("host1", "1099");
+		long phase = spread.getPhaseMillis(server, 0);
+		assertEquals(phase, new RunSpread(60000).getPhaseMillis(new Server("host1", "1099"), 0));
+		assertTrue((phase >= 0) && (phase < 60000));
+
+		long now = 1000L * 60000 + 30000;
+		long start = spread.getStartTime(server, 0, now);
+		assertTrue((start >= now) && (start < now + 60000));
+		assertEquals(phase, start % 60000);
+
+		// the jitter moves the phase by less than itself
+		long jittered = spread.getPhaseMillis(server, 5000);
+		assertTrue(((jittered - phase + 60000) % 60000) < 5000);
+
+		// 2000 servers spread fairly evenly over a period
+		long periodStart = 1000L * 60000;
+		for (int i = 0; i < 2000; i++) {
+			spread.record(periodStart + spread.getPhaseMillis(new Server("host" + i, "1099"), 0));
+		}
+		spread.record(periodStart + 60000);
+		assertEquals(2000, spread.getRunCount());
+		assertTrue(spread.getPeakToAverage() < 1.5);
+	}
+
+	@Test
+	public void testPeakToAverage() {
+		RunSpread spread = new RunSpread(60000, 60);
+		long start = 1000L * 60000;
+
+		// first period, all at once
+		for (int i = 0; i < 120; i++) {
+			spread.record(start + 10);
+		}
+		// second period, two per second
+		for (int i = 0; i < 120; i++) {
+			spread.record(start + 60000 + i * 500);
+		}
+		spread.record(start + 120000);
+		assertEquals(120, spread.getRunCount());
+		assertEquals(2, spread.getPeakBucketCount());
+		assertEquals(1.0, spread.getPeakToAverage(), 0.001);
+
+		// a period without runs
+		spread.record(start + 240000);
+		assertEquals(0, spread.getRunCount());
+	}
+
+	@Test
+	public void testOutOfOrderRecords() {
+		RunSpread spread = new RunSpread(60000, 60);
+		long start = 1000L * 60000;
+
+		for (int i = 0; i < 99; i++) {
+			spread.record(start + i * 600);
+		}
+		// the last run of the first period comes after the second one began
+		spread.record(start + 60001);
+		spread.record(start + 59999);
+		assertEquals(100, spread.getRunCount());
+		assertEquals(1, spread.getBucketCounts()[59]);
+
+		// far too late to count
+		spread.record(start - 1);
+		spread.record(start + 60002);
+		spread.record(start + 120000);
+		assertEquals(2, spread.getRunCount());
+	}
+}
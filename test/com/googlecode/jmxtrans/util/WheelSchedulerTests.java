@@ -0,0 +1,99 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WheelSchedulerTests {
+
+	private static final Executor CALLER = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Test
+	public void testPeriodicRuns() throws Exception {
+		// a small wheel, so the period takes more than one turn of it
+		WheelScheduler wheel = new WheelScheduler(5, 4, CALLER, 0);
+		try {
+			final CountDownLatch latch = new CountDownLatch(5);
+			long start = System.currentTimeMillis();
+			WheelScheduler.Task task = wheel.schedule(new Runnable() {
+				public void run() {
+					latch.countDown();
+				}
+			}, start + 50, 40);
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			assertTrue(System.currentTimeMillis() - start >= 50 + (4 * 40));
+			assertEquals(1, wheel.getTaskCount());
+
+			task.cancel();
+			assertEquals(0, wheel.getTaskCount());
+			long fired = wheel.getFiredCount();
+			Thread.sleep(150);
+			assertTrue(wheel.getFiredCount() <= fired + 1);
+		} finally {
+			wheel.shutdown();
+		}
+	}
+
+	@Test
+	public void testMissedPeriodsAreSkipped() throws Exception {
+		WheelScheduler wheel = new WheelScheduler(5, 64, CALLER, 0);
+		try {
+			final AtomicInteger runs = new AtomicInteger();
+			// as if the wheel had stalled for a second
+			WheelScheduler.Task task = wheel.schedule(new Runnable() {
+				public void run() {
+					runs.incrementAndGet();
+				}
+			}, System.currentTimeMillis() - 1000, 100);
+			Thread.sleep(50);
+			assertEquals(1, runs.get());
+			assertTrue(wheel.getMisfireCount() >= 10);
+
+			wheel.cancelAll();
+			task.cancel();
+			assertEquals(0, wheel.getTaskCount());
+		} finally {
+			wheel.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancelAll() throws Exception {
+		WheelScheduler wheel = new WheelScheduler(5, 64, CALLER, 0);
+		try {
+			final AtomicInteger runs = new AtomicInteger();
+			Runnable count = new Runnable() {
+				public void run() {
+					runs.incrementAndGet();
+				}
+			};
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < 100; i++) {
+				wheel.schedule(count, now + 100, 100);
+			}
+			wheel.cancelAll();
+			assertEquals(0, wheel.getTaskCount());
+
+			final CountDownLatch latch = new CountDownLatch(1);
+			wheel.schedule(new Runnable() {
+				public void run() {
+					latch.countDown();
+				}
+			}, now + 150, 1000);
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			assertEquals(0, runs.get());
+		} finally {
+			wheel.shutdown();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.googlecode.jmxtrans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultBatch;
+import com.googlecode.jmxtrans.util.WriterDispatcher.OverflowPolicy;
+
+public class WriterDispatcherTests {
+
+	@Test
+	public void testDropOldest() throws Exception {
+		ResultBatch[] batches = newBatches(4);
+		List<ResultBatch> written = this.dispatch(OverflowPolicy.DROP_OLDEST, batches);
+		assertEquals(2, written.size());
+		assertSame(batches[0], written.get(0));
+		assertSame(batches[3], written.get(1));
+	}
+
+	@Test
+	public void testDropNewest() throws Exception {
+		ResultBatch[] batches = newBatches(4);
+		List<ResultBatch> written = this.dispatch(OverflowPolicy.DROP_NEWEST, batches);
+		assertEquals(2, written.size());
+		assertSame(batches[0], written.get(0));
+		assertSame(batches[1], written.get(1));
+	}
+
+	/**
+	 * Dispatches the batches to a writer stuck on the first one, with room
+	 * for one more in its queue.
+	 */
+	private List<ResultBatch> dispatch(OverflowPolicy policy, ResultBatch[] batches) throws Exception {
+		WriterDispatcher dispatcher = new WriterDispatcher(1, policy);
+		BlockingWriter writer = new BlockingWriter();
+		try {
+			dispatcher.dispatch(writer, batches[0]);
+			assertTrue(writer.started.await(10, TimeUnit.SECONDS));
+			for (int i = 1; i < batches.length; i++) {
+				dispatcher.dispatch(writer, batches[i]);
+			}
+		} finally {
+			writer.release.countDown();
+			dispatcher.shutdown();
+		}
+		return writer.written;
+	}
+
+	/** */
+	private static ResultBatch[] newBatches(int count) {
+		Query query = new Query("test:type=Test");
+		ResultBatch[] batches = new ResultBatch[count];
+		for (int i = 0; i < count; i++) {
+			batches[i] = new ResultBatch(query, Collections.<Result> emptyList());
+		}
+		return batches;
+	}
+
+	/** */
+	private static class BlockingWriter extends BaseOutputWriter {
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final List<ResultBatch> written = Collections.synchronizedList(new ArrayList<ResultBatch>());
+
+		@Override
+		public void doWrite(ResultBatch batch) throws Exception {
+			this.written.add(batch);
+			this.started.countDown();
+			this.release.await();
+		}
+
+		@Override
+		public void doWrite(Query query) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void validateSetup(Query query) throws ValidationException {
+		}
+	}
+}